@@ -0,0 +1,60 @@
+package com.example.realchatapplication.benchmark;
+
+import com.example.realchatapplication.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON for one chat message, which happens for every STOMP frame and history entry. The mapper
+ * is built the way Spring Boot builds the application's, so {@code LocalDateTime} is written as
+ * an ISO-8601 string through the Java time module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private ChatMessage message;
+
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        message = new ChatMessage("66f1c2a9e4b0a1d2c3e4f5a0", "alice", "bob",
+                "Are we still on for the design review at three? I moved the notes into the shared folder.",
+                "#4f46e5", LocalDateTime.of(2025, 3, 14, 15, 9, 26, 535_000_000),
+                ChatMessage.MessageType.PRIVATE_MESSAGE, null, null, ChatMessage.conversationIdOf("alice", "bob"));
+        json = objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public ChatMessage deserialize() throws IOException {
+        return objectMapper.readValue(json, ChatMessage.class);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.realchatapplication.benchmark;
+
+import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.model.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+
+// Objects shaped like the ones the application handles, built without a Spring context
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static User user() {
+        User user = new User();
+        user.setId("66f1c2a9e4b0a1d2c3e4f501");
+        user.setUsername("alice");
+        user.setEmail("alice@example.com");
+        user.setPassword("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z5b5Nw7y1H2G3kL8mQvYc1S.");
+        user.setOnline(true);
+        user.setColor("#4f46e5");
+        user.setImageUrl("https://cdn.example.com/profile/alice/original.jpg");
+        user.setImageVariants(Map.of(
+                "48", "https://cdn.example.com/profile/alice/48.webp",
+                "128", "https://cdn.example.com/profile/alice/128.webp",
+                "512", "https://cdn.example.com/profile/alice/512.webp"));
+        return user;
+    }
+
+    // A JwtService as configured by application.properties, with a random 256-bit key
+    static JwtService jwtService() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        JwtService jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", Base64.getEncoder().encodeToString(key));
+        ReflectionTestUtils.setField(jwtService, "jwtexpiration", 3_600_000L);
+        return jwtService;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.realchatapplication.benchmark;
+
+import com.example.realchatapplication.jwt.JwtAuthenticationFilter;
+import com.example.realchatapplication.jwt.JwtAuthenticator;
+import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.jwt.VerifiedTokenCache;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import com.example.realchatapplication.service.UserDirectoryCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link JwtAuthenticationFilter} adds to every authenticated REST request once the token
+ * has been seen: a SHA-256 of the token, the verified-token and user cache lookups and the
+ * security context. The signature check on a token's first request is
+ * {@link JwtServiceBenchmark#validateToken()}. The user repository is a stub; a warm user
+ * cache never reaches it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    private JwtAuthenticationFilter filter;
+
+    private MockHttpServletRequest bearerRequest;
+
+    private MockHttpServletRequest cookieRequest;
+
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() throws ServletException, IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        User user = Fixtures.user();
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+
+        JwtService jwtService = Fixtures.jwtService();
+        filter = new JwtAuthenticationFilter(new JwtAuthenticator(jwtService, new VerifiedTokenCache(meterRegistry, 50_000),
+                new UserDirectoryCache(userRepository, meterRegistry, 10_000, Duration.ofMinutes(10), 1_000, Duration.ofSeconds(30)),
+                meterRegistry));
+
+        String token = jwtService.generateToken(user);
+        bearerRequest = new MockHttpServletRequest("GET", "/api/conversations");
+        bearerRequest.addHeader("Authorization", "Bearer " + token);
+        cookieRequest = new MockHttpServletRequest("GET", "/api/conversations");
+        cookieRequest.setCookies(new Cookie("JWT", token));
+        response = new MockHttpServletResponse();
+
+        // Verify the token and load the user once, as the first real request would
+        if (filter(bearerRequest) == null) {
+            throw new IllegalStateException("Benchmark token was not accepted");
+        }
+    }
+
+    @Benchmark
+    public Authentication bearerToken() throws ServletException, IOException {
+        return filter(bearerRequest);
+    }
+
+    @Benchmark
+    public Authentication cookieToken() throws ServletException, IOException {
+        return filter(cookieRequest);
+    }
+
+    private Authentication filter(MockHttpServletRequest request) throws ServletException, IOException {
+        try {
+            filter.doFilter(request, response, NO_OP_CHAIN);
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
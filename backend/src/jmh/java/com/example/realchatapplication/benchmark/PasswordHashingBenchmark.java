@@ -0,0 +1,61 @@
+package com.example.realchatapplication.benchmark;
+
+import com.example.realchatapplication.config.SecurityConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the password encoder at a few settings of {@code chat.auth.password.*}: {@code matches}
+ * is what a login pays, {@code encode} what a signup, password change or rehash pays. One hashing
+ * worker handles about 1000 / matches-ms logins per second, so this is the number to weigh
+ * against {@code chat.auth.hashing.workers} when raising the cost. Parameters are
+ * {@code bcrypt:strength} or {@code argon2:memoryKb:iterations}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"bcrypt:10", "bcrypt:12", "argon2:16384:2", "argon2:65536:3"})
+    public String encoder;
+
+    private PasswordEncoder passwordEncoder;
+
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        String[] settings = encoder.split(":");
+        passwordEncoder = settings[0].equals("bcrypt")
+                ? SecurityConfig.passwordEncoder("bcrypt", Integer.parseInt(settings[1]), 16384, 2, 1)
+                : SecurityConfig.passwordEncoder("argon2", 10, Integer.parseInt(settings[1]), Integer.parseInt(settings[2]), 1);
+        hash = passwordEncoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return passwordEncoder.matches(PASSWORD, hash);
+    }
+
+    @Benchmark
+    public String encode() {
+        return passwordEncoder.encode(PASSWORD);
+    }
+}
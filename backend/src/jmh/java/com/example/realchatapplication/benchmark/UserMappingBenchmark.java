@@ -0,0 +1,64 @@
+package com.example.realchatapplication.benchmark;
+
+import com.example.realchatapplication.dto.UserDTO;
+import com.example.realchatapplication.dto.UserSummaryDTO;
+import com.example.realchatapplication.mapper.UserMapper;
+import com.example.realchatapplication.mapper.UserMapperImpl;
+import com.example.realchatapplication.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code User} to its DTOs, as done on login, profile reads and updates, and for every row of
+ * the user directory: the generated {@link UserMapper} against the same copy written by hand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserMappingBenchmark {
+
+    private UserMapper userMapper;
+
+    private User user;
+
+    @Setup
+    public void setUp() {
+        userMapper = new UserMapperImpl();
+        user = Fixtures.user();
+    }
+
+    @Benchmark
+    public UserDTO userDTO() {
+        return userMapper.toUserDTO(user, true);
+    }
+
+    @Benchmark
+    public UserSummaryDTO summary() {
+        return userMapper.toSummary(user, true);
+    }
+
+    @Benchmark
+    public UserDTO handWritten() {
+        UserDTO dto = new UserDTO();
+        dto.setId(user.getId());
+        dto.setUsername(user.getUsername());
+        dto.setEmail(user.getEmail());
+        dto.setOnline(true);
+        dto.setImageUrl(user.getImageUrl());
+        dto.setImageVariants(user.getImageVariants());
+        return dto;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.realchatapplication.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One latency series in microseconds. Any thread may record; the reporting thread takes an
+ * interval histogram at each report and folds it into the total once measurement has started.
+ */
+final class LatencyStats {
+
+    private final String name;
+
+    private final Recorder recorder = new Recorder(3);
+
+    private final Histogram total = new Histogram(3);
+
+    private Histogram interval;
+
+    LatencyStats(String name) {
+        this.name = name;
+    }
+
+    void recordNanos(long nanos) {
+        recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    // Only the reporting thread calls this and the methods below
+    Histogram nextInterval(boolean measured) {
+        interval = recorder.getIntervalHistogram(interval);
+        if (measured) {
+            total.add(interval);
+        }
+        return interval;
+    }
+
+    Histogram total() {
+        return total;
+    }
+
+    String summary() {
+        return String.format("%-18s %10d %10.2f %10.2f %10.2f %10.2f %10.2f", name, total.getTotalCount(),
+                millis(total, 50), millis(total, 99), millis(total, 99.9), millis(total, 99.99),
+                total.getMaxValue() / 1000.0);
+    }
+
+    static String header() {
+        return String.format("%-18s %10s %10s %10s %10s %10s %10s", "latency (ms)", "count", "p50", "p99", "p99.9",
+                "p99.99", "max");
+    }
+
+    // Full distribution, in milliseconds, in the .hgrm format HdrHistogram's plotter reads
+    void writeDistribution(File directory) throws FileNotFoundException {
+        try (PrintStream out = new PrintStream(new File(directory, name + ".hgrm"))) {
+            total.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
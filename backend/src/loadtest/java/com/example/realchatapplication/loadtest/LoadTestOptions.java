@@ -0,0 +1,80 @@
+package com.example.realchatapplication.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of one load run, from {@code --name=value} arguments. Any other {@code --x.y=value}
+ * argument is handed to the application under test, so server settings can be compared with
+ * the same load (for example {@code --chat.persistence.mode=write-behind}).
+ *
+ * @param users             STOMP sessions, one per user
+ * @param connectRate       new sessions per second during the connect storm; 0 opens them all at once
+ * @param messageRate       private messages per second, across all users
+ * @param typingRate        typing events per second, across all users
+ * @param conversations     distinct pairs of users that talk to each other
+ * @param skew              Zipf exponent of conversation popularity; 0 spreads traffic evenly
+ * @param senderThreads     threads pacing the message load
+ * @param warmup            load before measurement starts
+ * @param duration          measured load
+ * @param reportInterval    how often progress is printed
+ * @param reportDirectory   where the full latency distributions are written
+ * @param seed              seed for the conversation pairs and the traffic pattern
+ * @param applicationArgs   passed to the application under test
+ */
+record LoadTestOptions(int users, double connectRate, double messageRate, double typingRate, int conversations,
+                       double skew, int senderThreads, Duration warmup, Duration duration, Duration reportInterval,
+                       String reportDirectory, long seed, List<String> applicationArgs) {
+
+    static LoadTestOptions parse(String[] args) {
+        int users = 1000;
+        double connectRate = 200;
+        double messageRate = 500;
+        double typingRate = 100;
+        Integer conversations = null;
+        double skew = 1.0;
+        int senderThreads = 2;
+        Duration warmup = Duration.ofSeconds(10);
+        Duration duration = Duration.ofSeconds(60);
+        Duration reportInterval = Duration.ofSeconds(5);
+        String reportDirectory = "target/loadtest";
+        long seed = 42;
+        List<String> applicationArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "users" -> users = Integer.parseInt(value);
+                case "connect-rate" -> connectRate = Double.parseDouble(value);
+                case "message-rate" -> messageRate = Double.parseDouble(value);
+                case "typing-rate" -> typingRate = Double.parseDouble(value);
+                case "conversations" -> conversations = Integer.parseInt(value);
+                case "skew" -> skew = Double.parseDouble(value);
+                case "sender-threads" -> senderThreads = Integer.parseInt(value);
+                case "warmup" -> warmup = Duration.ofSeconds(Long.parseLong(value));
+                case "duration" -> duration = Duration.ofSeconds(Long.parseLong(value));
+                case "report-interval" -> reportInterval = Duration.ofSeconds(Long.parseLong(value));
+                case "report-dir" -> reportDirectory = value;
+                case "seed" -> seed = Long.parseLong(value);
+                default -> {
+                    if (!name.contains(".")) {
+                        throw new IllegalArgumentException("Unknown option --" + name);
+                    }
+                    applicationArgs.add(arg);
+                }
+            }
+        }
+        if (users < 2) {
+            throw new IllegalArgumentException("At least two users are needed");
+        }
+        return new LoadTestOptions(users, connectRate, messageRate, typingRate,
+                conversations != null ? conversations : users / 2, skew, Math.max(1, senderThreads),
+                warmup, duration, reportInterval, reportDirectory, seed, applicationArgs);
+    }
+}
@@ -0,0 +1,481 @@
+package com.example.realchatapplication.loadtest;
+
+import com.example.realchatapplication.RealchatapplicationApplication;
+import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Reproducible load against {@code /ws}. Starts the application on a random port with an
+ * in-memory Mongo, seeds one user per session, then:
+ * <ol>
+ *     <li>opens every STOMP/SockJS session at {@code --connect-rate} (the connect storm), subscribes
+ *     to the private and typing queues and sends {@code chat.addUser};</li>
+ *     <li>sends {@code chat.sendPrivateMessage} at {@code --message-rate} and {@code chat.typing} at
+ *     {@code --typing-rate}, over {@code --conversations} pairs of users whose popularity follows a
+ *     Zipf distribution with exponent {@code --skew};</li>
+ *     <li>reports connect latency, send-to-receive latency (p50/p99/p99.9/p99.99/max) and
+ *     throughput, printing progress every {@code --report-interval} seconds and writing the full
+ *     distributions to {@code --report-dir}, next to the application's own output.</li>
+ * </ol>
+ * Sends are paced against a fixed schedule and latency counts from the scheduled time, so a
+ * stalled server shows up as latency rather than as fewer samples. Client and server share one
+ * JVM; give it a few cores, and compare runs made on the same machine only.
+ * <p>
+ * {@code mvn -Ploadtest verify -Dloadtest.args="--users=2000 --message-rate=1000 --chat.persistence.mode=write-behind"}
+ */
+public final class StompLoadGenerator {
+
+    private static final String CONTENT_PREFIX = "lt:";
+
+    private static final long DRAIN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final LoadTestOptions options;
+
+    private final PrintStream out;
+
+    private final String[] usernames;
+
+    // Per user, sent on CONNECT
+    private final String[] tokens;
+
+    private final StompSession[] sessions;
+
+    private final Conversations conversations;
+
+    private final LatencyStats connectLatency = new LatencyStats("connect");
+
+    private final LatencyStats messageLatency = new LatencyStats("private-message");
+
+    private final LatencyStats typingLatency = new LatencyStats("typing");
+
+    private final AtomicLong messagesSent = new AtomicLong();
+
+    private final AtomicLong messagesReceived = new AtomicLong();
+
+    private final AtomicLong typingSent = new AtomicLong();
+
+    private final AtomicLong typingReceived = new AtomicLong();
+
+    private final AtomicLong sendFailures = new AtomicLong();
+
+    // Scheduled time of the last typing start per "sender>recipient", until the recipient sees it
+    private final Map<String, Long> typingStarts = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    private StompLoadGenerator(LoadTestOptions options, PrintStream out) {
+        this.options = options;
+        this.out = out;
+        this.usernames = new String[options.users()];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = "load" + i;
+        }
+        this.tokens = new String[options.users()];
+        this.sessions = new StompSession[options.users()];
+        this.conversations = new Conversations(options.users(), options.conversations(), options.skew(), options.seed());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        // The banner and console log of the application go to application.log; stdout is for the report
+        PrintStream out = System.out;
+        File directory = new File(options.reportDirectory());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + directory);
+        }
+        PrintStream applicationOut = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, "application.log")), 1 << 16));
+        System.setOut(applicationOut);
+        // DevTools is on the test classpath and would restart the application in a new thread
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        MongoServer mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        String mongoUri = mongoServer.bindAndGetConnectionString();
+        List<String> applicationArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--management.server.port=0",
+                "--spring.data.mongodb.uri=" + mongoUri + "/loadtest",
+                "--spring.data.mongodb.database=loadtest",
+                "--jwt.secret=bG9hZHRlc3QtbG9hZHRlc3QtbG9hZHRlc3QtbG9hZHRlc3QtbG9hZHRlc3Q=",
+                "--logging.level.root=WARN"));
+        applicationArgs.addAll(options.applicationArgs());
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RealchatapplicationApplication.class)
+                .run(applicationArgs.toArray(String[]::new))) {
+            new StompLoadGenerator(options, out).run(context);
+        } finally {
+            mongoServer.shutdownNow();
+            applicationOut.flush();
+        }
+        // WebSocket client threads are not daemons
+        System.exit(0);
+    }
+
+    private void run(ConfigurableApplicationContext context) throws Exception {
+        out.printf("%d users, %d conversations (skew %.2f), %.0f messages/s, %.0f typing events/s, %ds warmup + %ds%n",
+                options.users(), options.conversations(), options.skew(), options.messageRate(), options.typingRate(),
+                options.warmup().toSeconds(), options.duration().toSeconds());
+        seedUsers(context.getBean(UserRepository.class), context.getBean(JwtService.class));
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        connectStorm("http://127.0.0.1:" + port + "/ws");
+        join(context.getBean(SimpUserRegistry.class));
+        runTraffic();
+        report();
+
+        for (StompSession session : sessions) {
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+        }
+    }
+
+    private void seedUsers(UserRepository userRepository, JwtService jwtService) {
+        List<User> users = new ArrayList<>();
+        int issued = 0;
+        for (String username : usernames) {
+            User user = new User();
+            user.setUsername(username);
+            user.setEmail(username + "@example.com");
+            user.setPassword("unused");
+            users.add(user);
+            if (users.size() == 1000) {
+                // insert keeps the order, so tokens line up with usernames
+                for (User saved : userRepository.insert(users)) {
+                    tokens[issued++] = jwtService.generateToken(saved);
+                }
+                users.clear();
+            }
+        }
+        for (User saved : userRepository.insert(users)) {
+            tokens[issued++] = jwtService.generateToken(saved);
+        }
+    }
+
+    private void connectStorm(String url) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        stompClient.setTaskScheduler(scheduler);
+
+        long intervalNanos = options.connectRate() > 0 ? (long) (1e9 / options.connectRate()) : 0;
+        AtomicLong failures = new AtomicLong();
+        List<CompletableFuture<StompSession>> pending = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions.length; i++) {
+            long scheduled = start + i * intervalNanos;
+            parkUntil(scheduled);
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization", "Bearer " + tokens[i]);
+            int index = i;
+            pending.add(stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                    new StompSessionHandlerAdapter() { }).whenComplete((session, error) -> {
+                if (error != null) {
+                    failures.incrementAndGet();
+                } else {
+                    connectLatency.recordNanos(System.nanoTime() - scheduled);
+                    sessions[index] = session;
+                }
+            }));
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(5, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            // Counted as failures above
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        connectLatency.nextInterval(true);
+        out.printf("%nConnect storm: %d of %d sessions in %.1fs (%.0f/s), %d failed%n",
+                sessions.length - failures.get(), sessions.length, seconds, (sessions.length - failures.get()) / seconds,
+                failures.get());
+    }
+
+    private void join(SimpUserRegistry userRegistry) throws InterruptedException {
+        int connected = 0;
+        for (int i = 0; i < sessions.length; i++) {
+            StompSession session = sessions[i];
+            if (session == null) {
+                continue;
+            }
+            connected++;
+            String username = usernames[i];
+            session.subscribe("/user/queue/private", new Handler(payload -> onPrivateMessage(username, payload)));
+            session.subscribe("/user/queue/typing", new Handler(this::onTyping));
+            session.send("/app/chat.addUser", Map.of("sender", username, "type", "JOIN"));
+        }
+
+        // The simple broker sends no RECEIPT for SUBSCRIBE, so wait until the server has them all
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        int subscribed = 0;
+        while (System.nanoTime() < deadline) {
+            subscribed = userRegistry.findSubscriptions(s -> s.getDestination().startsWith("/user/queue/")).size();
+            if (subscribed >= connected * 2) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        out.printf("Joined: %d sessions, %d subscriptions%n", connected, subscribed);
+    }
+
+    private void runTraffic() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + options.warmup().toNanos();
+        long end = measureFrom + options.duration().toNanos();
+        running = true;
+
+        List<Thread> threads = new ArrayList<>();
+        int senders = options.senderThreads();
+        for (int t = 0; t < senders; t++) {
+            long offset = (long) (t * 1e9 / options.messageRate());
+            threads.add(paced("messages-" + t, options.messageRate() / senders, start + offset, end, this::sendMessage));
+        }
+        threads.add(paced("typing", options.typingRate(), start, end, this::sendTyping));
+        threads.forEach(Thread::start);
+
+        out.printf("%n%8s %12s %12s %10s %10s %10s%n", "time s", "sent/s", "received/s", "p50 ms", "p99 ms", "max ms");
+        long intervalNanos = options.reportInterval().toNanos();
+        long lastReport = start;
+        long lastReceived = 0;
+        long lastSent = 0;
+        for (long next = start + intervalNanos; next < end + intervalNanos; next += intervalNanos) {
+            parkUntil(Math.min(next, end));
+            long now = System.nanoTime();
+            // An interval counts once it starts after the warmup
+            boolean measured = lastReport >= measureFrom;
+            Histogram interval = messageLatency.nextInterval(measured);
+            typingLatency.nextInterval(measured);
+
+            double seconds = (now - lastReport) / 1e9;
+            long sent = messagesSent.get();
+            long received = messagesReceived.get();
+            out.printf("%8.0f %12.0f %12.0f %10.2f %10.2f %10.2f%s%n", (now - start) / 1e9,
+                    (sent - lastSent) / seconds, (received - lastReceived) / seconds,
+                    LatencyStats.millis(interval, 50), LatencyStats.millis(interval, 99),
+                    interval.getMaxValue() / 1000.0, measured ? "" : "  (warmup)");
+            lastReport = now;
+            lastSent = sent;
+            lastReceived = received;
+        }
+
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Let in-flight messages land, then take what arrived into the totals
+        long drainUntil = System.nanoTime() + DRAIN_NANOS;
+        while (messagesReceived.get() < messagesSent.get() && System.nanoTime() < drainUntil) {
+            Thread.sleep(50);
+        }
+        messageLatency.nextInterval(true);
+        typingLatency.nextInterval(true);
+    }
+
+    private void report() throws Exception {
+        double seconds = options.duration().toSeconds();
+        out.printf("%n%s%n%s%n%s%n%s%n", LatencyStats.header(), connectLatency.summary(), messageLatency.summary(),
+                typingLatency.summary());
+        out.printf("%nPrivate messages: %d sent, %d received, %d lost, %d send failures; %.0f/s measured%n",
+                messagesSent.get(), messagesReceived.get(), messagesSent.get() - messagesReceived.get(),
+                sendFailures.get(), messageLatency.total().getTotalCount() / seconds);
+        out.printf("Typing: %d events sent, %d starts forwarded%n", typingSent.get(), typingReceived.get());
+
+        File directory = new File(options.reportDirectory());
+        connectLatency.writeDistribution(directory);
+        messageLatency.writeDistribution(directory);
+        typingLatency.writeDistribution(directory);
+        out.printf("Latency distributions and application output written to %s%n", directory.getAbsolutePath());
+    }
+
+    private void sendMessage(long scheduled) {
+        int[] pair = conversations.next();
+        int from = ThreadLocalRandom.current().nextBoolean() ? pair[0] : pair[1];
+        int to = from == pair[0] ? pair[1] : pair[0];
+        if (send(from, "/app/chat.sendPrivateMessage", Map.of("sender", usernames[from], "recipient", usernames[to],
+                "content", CONTENT_PREFIX + scheduled, "type", "PRIVATE_MESSAGE"))) {
+            messagesSent.incrementAndGet();
+        }
+    }
+
+    // Each pair alternates between starting and stopping
+    private void sendTyping(long scheduled) {
+        int[] pair = conversations.next();
+        int from = ThreadLocalRandom.current().nextBoolean() ? pair[0] : pair[1];
+        int to = from == pair[0] ? pair[1] : pair[0];
+        String key = usernames[from] + ">" + usernames[to];
+        boolean start = !typingStarts.containsKey(key);
+        if (start) {
+            typingStarts.put(key, scheduled);
+        } else {
+            // A start the server rate limited is never forwarded; forget it
+            typingStarts.remove(key);
+        }
+        if (send(from, "/app/chat.typing", Map.of("sender", usernames[from], "recipient", usernames[to], "isTyping", start))) {
+            typingSent.incrementAndGet();
+        }
+    }
+
+    private boolean send(int from, String destination, Object payload) {
+        StompSession session = sessions[from];
+        if (session == null) {
+            sendFailures.incrementAndGet();
+            return false;
+        }
+        try {
+            // WebSocket sessions do not take concurrent writes
+            synchronized (session) {
+                session.send(destination, payload);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            sendFailures.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void onPrivateMessage(String username, Map<?, ?> message) {
+        // Senders get their own message back too; only the recipient's copy counts
+        Object content = message.get("content");
+        if (!username.equals(message.get("recipient")) || !(content instanceof String text) || !text.startsWith(CONTENT_PREFIX)) {
+            return;
+        }
+        messageLatency.recordNanos(System.nanoTime() - Long.parseLong(text.substring(CONTENT_PREFIX.length())));
+        messagesReceived.incrementAndGet();
+    }
+
+    private void onTyping(Map<?, ?> message) {
+        if (!Boolean.TRUE.equals(message.get("isTyping"))) {
+            return;
+        }
+        Long scheduled = typingStarts.get(message.get("sender") + ">" + message.get("recipient"));
+        if (scheduled != null) {
+            typingLatency.recordNanos(System.nanoTime() - scheduled);
+            typingReceived.incrementAndGet();
+        }
+    }
+
+    // Calls the task at a fixed rate from start until end, passing each call's scheduled time
+    private Thread paced(String name, double ratePerSecond, long start, long end, ScheduledTask task) {
+        Thread thread = new Thread(() -> {
+            if (ratePerSecond <= 0) {
+                return;
+            }
+            double intervalNanos = 1e9 / ratePerSecond;
+            for (long n = 0; running; n++) {
+                long scheduled = start + (long) (n * intervalNanos);
+                if (scheduled >= end) {
+                    return;
+                }
+                parkUntil(scheduled);
+                task.run(scheduled);
+            }
+        }, "loadtest-" + name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void parkUntil(long nanoTime) {
+        for (long remaining = nanoTime - System.nanoTime(); remaining > 0; remaining = nanoTime - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ScheduledTask {
+        void run(long scheduledNanoTime);
+    }
+
+    private static final class Handler implements StompFrameHandler {
+
+        private final Consumer<Map<?, ?>> consumer;
+
+        private Handler(Consumer<Map<?, ?>> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return Map.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            consumer.accept((Map<?, ?>) payload);
+        }
+    }
+
+    /**
+     * Fixed pairs of distinct users, picked with Zipf-distributed popularity: pair k is chosen
+     * with weight 1 / (k + 1)^skew.
+     */
+    private static final class Conversations {
+
+        private final int[][] pairs;
+
+        private final double[] cumulative;
+
+        private Conversations(int users, int count, double skew, long seed) {
+            Random random = new Random(seed);
+            pairs = new int[Math.max(1, count)][];
+            cumulative = new double[pairs.length];
+            double sum = 0;
+            for (int k = 0; k < pairs.length; k++) {
+                int a = random.nextInt(users);
+                int b = random.nextInt(users - 1);
+                pairs[k] = new int[]{a, b >= a ? b + 1 : b};
+                sum += 1 / Math.pow(k + 1, skew);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < cumulative.length; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        private int[] next() {
+            int k = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+            return pairs[Math.min(pairs.length - 1, k >= 0 ? k : -k - 1)];
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.realchatapplication.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identifies this JVM among the nodes sharing a broker. A random suffix is added on every
+ * start, so a restarted node never reuses the presence versions of its previous life.
+ */
+@Component
+public class ClusterNode {
+
+    private final String id;
+
+    public ClusterNode(@Value("${chat.node-id:node}") String name) {
+        this.id = name + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -1,15 +0,0 @@
-package com.example.realchatapplication.config;
-
-
-import org.modelmapper.ModelMapper;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-@Configuration
-public class MapperConfig {
-
-    @Bean
-    public ModelMapper modelMapper(){
-        return  new ModelMapper();
-    }
-}
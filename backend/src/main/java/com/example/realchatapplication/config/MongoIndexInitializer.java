@@ -0,0 +1,123 @@
+package com.example.realchatapplication.config;
+
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.model.ConversationReceipt;
+import com.example.realchatapplication.model.ConversationSummary;
+import com.example.realchatapplication.model.PendingDelivery;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.service.ConversationSummaryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+public class MongoIndexInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexInitializer.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ConversationSummaryService conversationSummaryService;
+
+    private final Duration offlineRetention;
+
+    public MongoIndexInitializer(MongoTemplate mongoTemplate,
+                                 ConversationSummaryService conversationSummaryService,
+                                 @Value("${chat.offline.retention:30d}") Duration offlineRetention) {
+        this.mongoTemplate = mongoTemplate;
+        this.conversationSummaryService = conversationSummaryService;
+        this.offlineRetention = offlineRetention;
+    }
+
+    // Runs off the startup thread so an unreachable database does not block boot
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        try {
+            backfillConversationIds();
+
+            mongoTemplate.indexOps(ChatMessage.class).createIndex(new Index()
+                    .on("conversationId", Sort.Direction.ASC)
+                    .on("timestamp", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("conversation_timestamp_id"));
+
+            // Message search; "none" keeps words as typed, for any language, so highlights match
+            mongoTemplate.indexOps(ChatMessage.class).createIndex(TextIndexDefinition.builder()
+                    .onField("content")
+                    .withDefaultLanguage("none")
+                    .named("content_text")
+                    .build());
+
+            mongoTemplate.indexOps(User.class).createIndex(new Index()
+                    .on("username", Sort.Direction.ASC));
+
+            mongoTemplate.indexOps(PendingDelivery.class).createIndex(new Index()
+                    .on("recipient", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.ASC)
+                    .on("_id", Sort.Direction.ASC)
+                    .named("recipient_createdAt_id"));
+
+            mongoTemplate.indexOps(ConversationReceipt.class).createIndex(new Index()
+                    .on("conversationId", Sort.Direction.ASC));
+
+            // Room list of one user
+            mongoTemplate.indexOps(ChatRoom.class).createIndex(new Index()
+                    .on("members", Sort.Direction.ASC));
+
+            // Serves the conversation list: one user's summaries, most recent first
+            mongoTemplate.indexOps(ConversationSummary.class).createIndex(new Index()
+                    .on("owner", Sort.Direction.ASC)
+                    .on("lastMessageAt", Sort.Direction.DESC)
+                    .on("lastMessageId", Sort.Direction.DESC)
+                    .named("owner_lastMessageAt_lastMessageId"));
+
+            // Users who never come back do not keep their queue forever
+            mongoTemplate.indexOps(PendingDelivery.class).createIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC)
+                    .expire(offlineRetention)
+                    .named("createdAt_ttl"));
+
+            logger.info("MongoDB indexes are in place");
+
+            conversationSummaryService.backfill();
+        } catch (Exception e) {
+            logger.error("Failed to create MongoDB indexes", e);
+        }
+    }
+
+    // Messages saved before conversationId existed get it computed server-side in one update
+    private void backfillConversationIds() {
+        Query legacyMessages = new Query(Criteria.where("conversationId").exists(false)
+                .and("sender").ne(null)
+                .and("recipient").ne(null));
+
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("conversationId").toValue(ConditionalOperators
+                        .when(ComparisonOperators.valueOf("sender").lessThanEqualTo("recipient"))
+                        .then(StringOperators.valueOf("sender").concat(":").concatValueOf("recipient"))
+                        .otherwise(StringOperators.valueOf("recipient").concat(":").concatValueOf("sender")));
+
+        long updated = mongoTemplate.updateMulti(legacyMessages, update, ChatMessage.class).getModifiedCount();
+        if (updated > 0) {
+            logger.info("Backfilled conversationId on {} chat messages", updated);
+        }
+    }
+}
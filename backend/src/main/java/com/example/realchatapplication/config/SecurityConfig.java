@@ -4,8 +4,10 @@ import com.example.realchatapplication.jwt.JwtAuthenticationFilter;
 import com.example.realchatapplication.service.CustomUserDetails;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementPortType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -14,7 +16,9 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.annotation.web.configurers.HeadersConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -23,6 +27,7 @@ import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.util.Arrays;
+import java.util.Map;
 
 @Configuration
 public class SecurityConfig {
@@ -30,9 +35,27 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Autowired
+    private Environment environment;
+
     @Value("${cors.allowed-origins}")
     private String allowedOrigins;
 
+    @Value("${chat.auth.password.algorithm:bcrypt}")
+    private String passwordAlgorithm;
+
+    @Value("${chat.auth.password.bcrypt.strength:10}")
+    private int bcryptStrength;
+
+    @Value("${chat.auth.password.argon2.memory-kb:16384}")
+    private int argon2MemoryKb;
+
+    @Value("${chat.auth.password.argon2.iterations:2}")
+    private int argon2Iterations;
+
+    @Value("${chat.auth.password.argon2.parallelism:1}")
+    private int argon2Parallelism;
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
 
@@ -44,6 +67,8 @@ public class SecurityConfig {
                         .requestMatchers("/auth/signup", "/auth/login", "/h2-console/**").permitAll()
                         // WebSocket endpoints
                         .requestMatchers("/ws/**").permitAll()
+                        // Health checks and Prometheus scrapes carry no token
+                        .requestMatchers(openActuatorPaths()).permitAll()
                         // Authenticated API endpoints
                         .requestMatchers("/auth/change-password", "/api/**").authenticated()
                         // All other endpoints require authentication
@@ -56,9 +81,34 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // Metrics stay off the public port: they are open only while actuator has a port of its own
+    private String[] openActuatorPaths() {
+        if (ManagementPortType.get(environment) == ManagementPortType.DIFFERENT) {
+            return new String[]{"/actuator/health/**", "/actuator/prometheus"};
+        }
+        return new String[]{"/actuator/health/**"};
+    }
+
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return passwordEncoder(passwordAlgorithm, bcryptStrength, argon2MemoryKb, argon2Iterations, argon2Parallelism);
+    }
+
+    /**
+     * New hashes are written as {@code {algorithm}hash} with the given cost. Stored hashes of
+     * either algorithm still match, as do unprefixed ones from before, which are bcrypt.
+     * {@link PasswordEncoder#upgradeEncoding} is true for any hash with another algorithm or a
+     * lower cost, so AuthenticationService rehashes it on the next successful login.
+     */
+    public static PasswordEncoder passwordEncoder(String algorithm, int bcryptStrength,
+                                                  int argon2MemoryKb, int argon2Iterations, int argon2Parallelism) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        Map<String, PasswordEncoder> encoders = Map.of(
+                "bcrypt", bcrypt,
+                "argon2", new Argon2PasswordEncoder(16, 32, argon2Parallelism, argon2MemoryKb, argon2Iterations));
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(algorithm, encoders);
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
     }
 
     @Bean
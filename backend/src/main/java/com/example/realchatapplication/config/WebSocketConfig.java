@@ -1,30 +1,261 @@
 package com.example.realchatapplication.config;
 
+import com.example.realchatapplication.listener.PresenceChannelInterceptor;
+import com.example.realchatapplication.listener.RoomSubscriptionInterceptor;
+import com.example.realchatapplication.listener.StompChannelMetricsInterceptor;
+import com.example.realchatapplication.listener.StompUserInterceptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.time.Duration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    @Autowired
+    private PresenceChannelInterceptor presenceChannelInterceptor;
+
+    @Autowired
+    private StompUserInterceptor stompUserInterceptor;
+
+    @Autowired
+    private RoomSubscriptionInterceptor roomSubscriptionInterceptor;
+
+    // simple: in-memory broker, single node. relay: external STOMP broker shared by all nodes
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.client-login:guest}")
+    private String relayClientLogin;
+
+    @Value("${chat.broker.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+
+    @Value("${chat.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${chat.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    @Value("${chat.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    //channel executors: inbound runs the @MessageMapping handlers, outbound writes frames to sockets
+    @Value("${chat.websocket.inbound.core-pool-size:16}")
+    private int inboundCorePoolSize;
+
+    @Value("${chat.websocket.inbound.max-pool-size:64}")
+    private int inboundMaxPoolSize;
+
+    @Value("${chat.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    //follows spring.threads.virtual.enabled unless set explicitly
+    @Value("${chat.websocket.inbound.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean inboundVirtualThreads;
+
+    @Value("${chat.websocket.inbound.preserve-order:true}")
+    private boolean inboundPreserveOrder;
+
+    @Value("${chat.websocket.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+
+    @Value("${chat.websocket.outbound.max-pool-size:64}")
+    private int outboundMaxPoolSize;
+
+    @Value("${chat.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Value("${chat.websocket.outbound.virtual-threads:false}")
+    private boolean outboundVirtualThreads;
+
+    @Value("${chat.websocket.outbound.preserve-order:true}")
+    private boolean outboundPreserveOrder;
+
+    @Value("${chat.websocket.virtual-concurrency-limit:1000}")
+    private int virtualConcurrencyLimit;
+
+    @Value("${chat.websocket.keep-alive:60s}")
+    private Duration executorKeepAlive;
+
+    @Value("${chat.websocket.transport.message-size-limit:64KB}")
+    private DataSize messageSizeLimit;
+
+    @Value("${chat.websocket.transport.send-buffer-size-limit:512KB}")
+    private DataSize sendBufferSizeLimit;
+
+    @Value("${chat.websocket.transport.send-time-limit:10s}")
+    private Duration sendTimeLimit;
+
+    @Value("${chat.websocket.transport.time-to-first-message:60s}")
+    private Duration timeToFirstMessage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ThreadPoolTaskScheduler heartbeatScheduler = createHeartbeatScheduler();
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
 
-        //enable simple broker for group and user-specific/private chat
-        config.enableSimpleBroker("/topic", "/queue", "/user");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            //the external broker handles heartbeats with clients itself
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayClientLogin)
+                    .setClientPasscode(relayClientPasscode)
+                    .setSystemLogin(relaySystemLogin)
+                    .setSystemPasscode(relaySystemPasscode)
+                    .setVirtualHost(relayVirtualHost.isBlank() ? null : relayVirtualHost)
+                    //nodes share their connected users, and a /user message for someone
+                    //connected elsewhere is rebroadcast so the node holding the session delivers it
+                    .setUserRegistryBroadcast("/topic/simp-user-registry")
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination");
+            config.configureBrokerChannel().interceptors(new BrokerHeaderCleaner());
+        } else {
+            //enable simple broker for group and user-specific/private chat
+            //heartbeats let presence notice dead connections that never send a DISCONNECT
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[]{10000, 10000})
+                    .setTaskScheduler(heartbeatScheduler);
+        }
+        //with several outbound threads, frames for one session could otherwise overtake each other
+        config.setPreservePublishOrder(outboundPreserveOrder);
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        //the session user must be set on CONNECT before anything else looks at it
+        registration.interceptors(stompUserInterceptor, presenceChannelInterceptor, roomSubscriptionInterceptor,
+                new StompChannelMetricsInterceptor(meterRegistry, "inbound"));
+        configureExecutor(registration, "ws-inbound-", inboundVirtualThreads,
+                inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new StompChannelMetricsInterceptor(meterRegistry, "outbound"));
+        configureExecutor(registration, "ws-outbound-", outboundVirtualThreads,
+                outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        //a client that cannot keep up with its frames is disconnected instead of buffering without bound
+        registration.setMessageSizeLimit((int) messageSizeLimit.toBytes())
+                .setSendBufferSizeLimit((int) sendBufferSizeLimit.toBytes())
+                .setSendTimeLimit((int) sendTimeLimit.toMillis())
+                .setTimeToFirstMessage((int) timeToFirstMessage.toMillis())
+                .addDecoratorFactory(this::countSlowConsumerDisconnects);
+    }
+
+    //pooled threads queue excess work; virtual threads throttle the sender at the concurrency limit
+    private void configureExecutor(ChannelRegistration registration, String threadNamePrefix, boolean virtualThreads,
+                                   int corePoolSize, int maxPoolSize, int queueCapacity) {
+        if (virtualThreads && !JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE)) {
+            logger.warn("Virtual threads need Java 21 or later; {} channel stays on a thread pool", threadNamePrefix);
+            virtualThreads = false;
+        }
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(virtualConcurrencyLimit);
+            registration.executor(executor);
+        } else {
+            registration.taskExecutor()
+                    .corePoolSize(corePoolSize)
+                    .maxPoolSize(maxPoolSize)
+                    .queueCapacity(queueCapacity)
+                    .keepAliveSeconds((int) executorKeepAlive.toSeconds());
+        }
+    }
+
+    private WebSocketHandler countSlowConsumerDisconnects(WebSocketHandler handler) {
+        Counter disconnects = Counter.builder("chat.websocket.slow-consumer.disconnects")
+                .description("Sessions closed because their send buffer or send time limit was exceeded")
+                .register(meterRegistry);
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                if (closeStatus.equalsCode(CloseStatus.SESSION_NOT_RELIABLE)) {
+                    disconnects.increment();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
 
+        //per-session ordering keeps a client's messages in sequence on a multi-threaded inbound channel
+        registry.setPreserveReceiveOrder(inboundPreserveOrder);
         registry.addEndpoint("/ws").
                 setAllowedOriginPatterns("https://chattalk1.netlify.app","https://chattalk-k8mg.onrender.com")
                 .withSockJS();
     }
-}
 
+    //a rebroadcast /user message keeps the headers the broker added when delivering it to us;
+    //Artemis then honours destination-type=MULTICAST and drops it at the anycast session queue
+    private static class BrokerHeaderCleaner implements ChannelInterceptor {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+            if (accessor.getFirstNativeHeader("destination-type") == null) {
+                return message;
+            }
+            accessor.removeNativeHeader("destination-type");
+            return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+        }
+    }
+
+    @PreDestroy
+    public void shutdownHeartbeatScheduler() {
+        heartbeatScheduler.shutdown();
+    }
+
+    private static ThreadPoolTaskScheduler createHeartbeatScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("ws-heartbeat-");
+        scheduler.initialize();
+        return scheduler;
+    }
+}
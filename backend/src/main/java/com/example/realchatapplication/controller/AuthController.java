@@ -1,29 +1,41 @@
 package com.example.realchatapplication.controller;
 
 import com.example.realchatapplication.dto.*;
+import com.example.realchatapplication.mapper.UserMapper;
 import com.example.realchatapplication.model.User;
 import com.example.realchatapplication.repository.UserRepository;
 import com.example.realchatapplication.service.AuthenticationService;
-import org.modelmapper.ModelMapper;
+import com.example.realchatapplication.service.OnlineUserService;
+import com.example.realchatapplication.service.UserDirectoryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/auth")
 public class AuthController {
 
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
+
     @Autowired
-    private ModelMapper modelMapper;
+    private UserMapper userMapper;
 
     @Autowired
     private AuthenticationService authenticationService;
@@ -31,16 +43,43 @@ public class AuthController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private OnlineUserService onlineUserService;
+
+    @Autowired
+    private UserDirectoryService userDirectoryService;
+
     @PostMapping("/signup")
-    public ResponseEntity<UserDTO> signup(@RequestBody RegisterRequestDTO registerRequestDTO) {
-        return ResponseEntity.ok(authenticationService.signup(registerRequestDTO));
+    public CompletableFuture<ResponseEntity<?>> signup(@RequestBody RegisterRequestDTO registerRequestDTO) {
+        CompletableFuture<UserDTO> signup;
+        try {
+            signup = authenticationService.signup(registerRequestDTO);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(authFailed(e));
+        }
+
+        return signup
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(this::authFailed);
     }
 
+    // The request thread is released while the password is checked on the hashing pool
     @PostMapping("/login")
-    public ResponseEntity<Map<String, Object>> login(@RequestBody LoginRequestDTO loginRequestDTO) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody LoginRequestDTO loginRequestDTO) {
         // Authenticate user and generate JWT
-        LoginResponseDTO loginResponseDTO = authenticationService.login(loginRequestDTO);
+        CompletableFuture<LoginResponseDTO> login;
+        try {
+            login = authenticationService.login(loginRequestDTO);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(authFailed(e));
+        }
+
+        return login
+                .<ResponseEntity<?>>thenApply(this::loggedIn)
+                .exceptionally(this::authFailed);
+    }
 
+    private ResponseEntity<?> loggedIn(LoginResponseDTO loginResponseDTO) {
         // Create HTTP-only cookie for added security
         ResponseCookie responseCookie = ResponseCookie.from("JWT", loginResponseDTO.getToken())
                 .httpOnly(true)
@@ -79,7 +118,6 @@ public class AuthController {
         }
 
         String username = authentication.getName();
-        System.out.println(username);
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
@@ -87,43 +125,37 @@ public class AuthController {
     }
 
     // ✅ NEW ENDPOINT: Get All Registered Users + Online Status
+    // Paged by username; pass nextCursor back as "after". Unchanged pages are answered with 304.
     @GetMapping("/all-users")
-    public ResponseEntity<?> getAllUsers(Authentication authentication) {
-        if (authentication == null) {
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) String prefix,
+                                         @RequestParam(required = false) String after,
+                                         @RequestParam(required = false) Integer limit,
+                                         Authentication authentication,
+                                         WebRequest webRequest) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof User currentUser)) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("USER NOT AUTHORIZED");
         }
 
-        // Fetch current authenticated username
-        String currentUsername = authentication.getName();
-
-        // Fetch list of all users
-        List<User> allUsers = userRepository.findAll();
-
-        // Fetch currently online users from AuthenticationService
-        Map<String, Object> onlineUsersData = authenticationService.getOnlineUsers();
-        Set<String> onlineUsernames = (Set<String>) onlineUsersData.getOrDefault("onlineUsers", Set.of());
-
-        // Prepare response with online status
-        List<Map<String, Object>> userList = new ArrayList<>();
-        for (User user : allUsers) {
-            if (!user.getUsername().equals(currentUsername)) {
-                Map<String, Object> userMap = new HashMap<>();
-                userMap.put("username", user.getUsername());
-                userMap.put("email", user.getEmail());
-                userMap.put("online", onlineUsernames.contains(user.getUsername()));
-                userMap.put("imageUrl", user.getImageUrl());
-                userList.add(userMap);
-            }
+        UserDirectoryPageDTO page = userDirectoryService.getPage(currentUser.getUsername(), prefix, after, limit);
+
+        String etag = userDirectoryService.etagOf(page);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
         }
 
-        return ResponseEntity.ok(Map.of("users", userList));
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(page);
     }
 
     @PostMapping("/change-password")
-    public ResponseEntity<?> changePassword(@RequestBody Map<String, String> payload, Authentication authentication) {
+    public CompletableFuture<ResponseEntity<?>> changePassword(@RequestBody Map<String, String> payload, Authentication authentication) {
+        CompletableFuture<Boolean> change;
         try {
             if (authentication == null) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+                return CompletableFuture.completedFuture(
+                        ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated"));
             }
 
             Object principal = authentication.getPrincipal();
@@ -133,28 +165,44 @@ public class AuthController {
             } else if (principal instanceof User) {
                 email = ((User) principal).getEmail();
             } else {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid principal type");
+                return CompletableFuture.completedFuture(
+                        ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid principal type"));
             }
 
             String oldPassword = payload.get("oldPassword");
             String newPassword = payload.get("newPassword");
 
-            boolean success = authenticationService.changePassword(email, oldPassword, newPassword);
-
-
-            if (!success) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(Map.of("success", false, "message", "Old password is incorrect"));
-            }
-
-            return ResponseEntity.ok(Map.of("success", true, "message", "Password changed successfully"));
+            change = authenticationService.changePassword(email, oldPassword, newPassword);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(authFailed(e));
+        }
 
+        return change
+                .<ResponseEntity<?>>thenApply(success -> success
+                        ? ResponseEntity.ok(Map.of("success", true, "message", "Password changed successfully"))
+                        : ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                .body(Map.of("success", false, "message", "Old password is incorrect")))
+                .exceptionally(this::authFailed);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Server error: " + e.getMessage());
+    private ResponseEntity<?> authFailed(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("success", false, "message", "Too many sign-ins right now, please retry shortly"));
+        }
+        if (cause instanceof AuthenticationException) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("success", false, "message", "Invalid email or password"));
+        }
+        // Messages of the service's own input checks are meant for the client; anything else is not
+        if (cause instanceof IllegalArgumentException) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("success", false, "message", String.valueOf(cause.getMessage())));
         }
+        logger.error("Authentication request failed", cause);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("success", false, "message", "Something went wrong, please retry"));
     }
 
 
@@ -164,7 +212,7 @@ public class AuthController {
 
 
     private UserDTO convertToUserDTO(User user) {
-        return modelMapper.map(user, UserDTO.class);
+        return userMapper.toUserDTO(user, onlineUserService.isOnline(user.getUsername()));
     }
 }
 
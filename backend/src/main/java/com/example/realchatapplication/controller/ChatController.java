@@ -1,9 +1,19 @@
 package com.example.realchatapplication.controller;
 
+import com.example.realchatapplication.dto.AckRequest;
 import com.example.realchatapplication.dto.TypingMessage;
 import com.example.realchatapplication.model.ChatMessage;
-import com.example.realchatapplication.repository.ChatMessageRepository;
+import com.example.realchatapplication.service.ChatRoomService;
+import com.example.realchatapplication.service.MessagePersistenceService;
+import com.example.realchatapplication.service.OfflineDeliveryService;
+import com.example.realchatapplication.service.OnlineUserService;
+import com.example.realchatapplication.service.ReceiptService;
+import com.example.realchatapplication.service.TypingTracker;
 import com.example.realchatapplication.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
@@ -12,39 +22,74 @@ import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
 import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 public class ChatController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
+
+    // Handing a private message to the broker for both participants
+    private final Timer privateFanOutTimer;
+
+    public ChatController(MeterRegistry meterRegistry) {
+        this.privateFanOutTimer = Timer.builder("chat.messages.fanout.duration")
+                .tag("type", "private")
+                .register(meterRegistry);
+    }
+
     @Autowired
     private UserService userService;
 
     @Autowired
-    private ChatMessageRepository chatMessageRepository;
+    private MessagePersistenceService messagePersistenceService;
+
+    @Autowired
+    private OnlineUserService onlineUserService;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private TypingTracker typingTracker;
+
+    @Autowired
+    private OfflineDeliveryService offlineDeliveryService;
+
+    @Autowired
+    private ReceiptService receiptService;
+
+    @Autowired
+    private ChatRoomService chatRoomService;
+
     @MessageMapping("/chat.addUser")
     public ChatMessage addUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
 
-        if (userService.userExists(chatMessage.getSender())) {
+        // The session joins as the user its CONNECT token was issued to, whatever the payload says
+        Principal user = headerAccessor.getUser();
+        if (user != null) {
+            chatMessage.setSender(user.getName());
 
             // Store username in session
             headerAccessor.getSessionAttributes().put("username", chatMessage.getSender());
-            userService.setUserOnlineStatus(chatMessage.getSender(), true);
+            if (!onlineUserService.userJoined(chatMessage.getSender(), headerAccessor.getSessionId())) {
+                logger.debug("Ignoring join of {} on closed session {}", chatMessage.getSender(), headerAccessor.getSessionId());
+                return null;
+            }
+
+            logger.debug("User {} joined with session {}", chatMessage.getSender(), headerAccessor.getSessionId());
 
-            System.out.println("User added Successfully " + chatMessage.getSender()
-                    + " with session ID " + headerAccessor.getSessionId());
+            // OnlineUserService publishes the presence change, PresenceBroadcaster batches it out
 
-            // Broadcast updated online users list
-            messagingTemplate.convertAndSend("/topic/onlineUsers", userService.getOnlineUsers());
+            // Messages that arrived while the user was away, in batches on /user/queue/sync
+            offlineDeliveryService.sync(chatMessage.getSender());
 
             // Optionally, broadcast JOIN message to public
             chatMessage.setTimestamp(LocalDateTime.now());
             if (chatMessage.getContent() == null) chatMessage.setContent("");
-            return chatMessageRepository.save(chatMessage);
+            return messagePersistenceService.persist(chatMessage);
         }
         return null;
     }
@@ -54,8 +99,15 @@ public class ChatController {
     @MessageMapping("/chat.sendPrivateMessage")
     public void sendPrivateMessage(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
 
-        if (!userService.userExists(chatMessage.getSender()) || !userService.userExists(chatMessage.getRecipient())) {
-            System.out.println("ERROR: Sender " + chatMessage.getSender() + " or recipient " + chatMessage.getRecipient() + " does not exist");
+        Principal user = headerAccessor.getUser();
+        if (user == null) {
+            return;
+        }
+        chatMessage.setSender(user.getName());
+
+        if (!userService.userExists(chatMessage.getRecipient())) {
+            logger.debug("Dropping private message from {}: recipient {} does not exist",
+                    chatMessage.getSender(), chatMessage.getRecipient());
             return;
         }
 
@@ -70,7 +122,7 @@ public class ChatController {
         // Validate FILE messages
         if (chatMessage.getType() == ChatMessage.MessageType.FILE &&
                 (chatMessage.getFileUrl() == null || chatMessage.getFileUrl().isEmpty())) {
-            System.out.println("ERROR: fileUrl is missing for FILE message!");
+            logger.debug("Dropping FILE message from {} without a fileUrl", chatMessage.getSender());
             return;
         }
 
@@ -78,31 +130,62 @@ public class ChatController {
             chatMessage.setContent("");
         }
 
-        // Save to MongoDB
-        ChatMessage savedMessage = chatMessageRepository.save(chatMessage);
-        System.out.println("Message saved successfully with Id " + savedMessage.getId());
+        chatMessage.setConversationId(ChatMessage.conversationIdOf(chatMessage.getSender(), chatMessage.getRecipient()));
+
+        // Save to MongoDB (or queue it, in write-behind mode)
+        ChatMessage savedMessage = messagePersistenceService.persist(chatMessage);
+        logger.debug("Stored private message {}", savedMessage.getId());
+
+        offlineDeliveryService.recordIfOffline(savedMessage);
 
         // Send via WebSocket
+        long start = System.nanoTime();
         try {
-            String recipientDestination = "/user/" + chatMessage.getRecipient() + "/queue/private";
-            String senderDestination = "/user/" + chatMessage.getSender() + "/queue/private";
-
-            messagingTemplate.convertAndSend(recipientDestination, savedMessage);
-            messagingTemplate.convertAndSend(senderDestination, savedMessage);
+            // Resolved through the user registry, so this reaches users connected to any node
+            messagingTemplate.convertAndSendToUser(chatMessage.getRecipient(), "/queue/private", savedMessage);
+            messagingTemplate.convertAndSendToUser(chatMessage.getSender(), "/queue/private", savedMessage);
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.warn("Failed to deliver private message {}", savedMessage.getId(), e);
         }
+        privateFanOutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
 
     @MessageMapping("/chat.typing")
-    public void typing(@Payload TypingMessage typingMessage) {
-        // Broadcast typing event to recipient
-        messagingTemplate.convertAndSendToUser(
-                typingMessage.getRecipient(),
-                "/queue/typing",
-                typingMessage
-        );
+    public void typing(@Payload TypingMessage typingMessage, SimpMessageHeaderAccessor headerAccessor) {
+        // Sessions may only report their own typing
+        Principal user = headerAccessor.getUser();
+        if (user == null) {
+            return;
+        }
+        String sender = user.getName();
+        String recipient = typingMessage.getRecipient();
+        if (recipient == null || sender.equals(recipient)) {
+            return;
+        }
+
+        // Only started/stopped transitions reach the recipient
+        typingTracker.onTyping(headerAccessor.getSessionId(), sender, recipient, typingMessage.isTyping());
+    }
+
+    // Cumulative delivered/read watermark; coalesced and written in batches by ReceiptService
+    @MessageMapping("/chat.ack")
+    public void ack(@Payload AckRequest ackRequest, SimpMessageHeaderAccessor headerAccessor) {
+        Principal user = headerAccessor.getUser();
+        if (user != null) {
+            receiptService.ack(user.getName(), ackRequest);
+        }
+    }
+
+    // Stored once and published once to /topic/room.{id}; the broker fans it out to the members
+    @MessageMapping("/room.send")
+    public void sendRoomMessage(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
+        Principal user = headerAccessor.getUser();
+        if (user == null) {
+            return;
+        }
+        chatMessage.setSender(user.getName());
+        chatRoomService.send(chatMessage.getChatRoomId(), chatMessage);
     }
 
 
@@ -0,0 +1,87 @@
+package com.example.realchatapplication.controller;
+
+import com.example.realchatapplication.dto.GroupRequest;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.service.ChatRoomService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Room management and history over REST; room messages themselves go through /app/room.send
+@RestController
+@RequestMapping("/api/rooms")
+public class ChatRoomController {
+
+    private final ChatRoomService chatRoomService;
+
+    ChatRoomController(ChatRoomService chatRoomService) {
+        this.chatRoomService = chatRoomService;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createRoom(@RequestBody GroupRequest request, Authentication authentication) {
+        return asCurrentUser(authentication, username -> ResponseEntity.ok(chatRoomService.create(username, request)));
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getRooms(Authentication authentication) {
+        return asCurrentUser(authentication, username -> ResponseEntity.ok(chatRoomService.getRooms(username)));
+    }
+
+    @PostMapping("/{roomId}/members")
+    public ResponseEntity<?> addMembers(@PathVariable String roomId,
+                                        @RequestBody List<String> members,
+                                        Authentication authentication) {
+        return asCurrentUser(authentication, username ->
+                ResponseEntity.ok(chatRoomService.addMembers(roomId, username, members)));
+    }
+
+    @DeleteMapping("/{roomId}/members/{member}")
+    public ResponseEntity<?> removeMember(@PathVariable String roomId,
+                                          @PathVariable String member,
+                                          Authentication authentication) {
+        return asCurrentUser(authentication, username ->
+                ResponseEntity.ok(chatRoomService.removeMember(roomId, username, member)));
+    }
+
+    @GetMapping("/{roomId}/history")
+    public ResponseEntity<?> getHistory(@PathVariable String roomId,
+                                        @RequestParam(required = false) String before,
+                                        @RequestParam(required = false) String after,
+                                        @RequestParam(required = false) Integer limit,
+                                        Authentication authentication) {
+        return asCurrentUser(authentication, username ->
+                ResponseEntity.ok(chatRoomService.getHistory(roomId, username, before, after, limit)));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<?> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+    }
+
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<?> forbidden(AccessDeniedException e) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", e.getMessage()));
+    }
+
+    private static ResponseEntity<?> asCurrentUser(Authentication authentication, Function<String, ResponseEntity<?>> action) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof User currentUser)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("USER NOT AUTHORIZED");
+        }
+        return action.apply(currentUser.getUsername());
+    }
+}
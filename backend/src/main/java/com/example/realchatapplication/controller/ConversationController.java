@@ -0,0 +1,39 @@
+package com.example.realchatapplication.controller;
+
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.service.ConversationSummaryService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/conversations")
+public class ConversationController {
+
+    private final ConversationSummaryService conversationSummaryService;
+
+    ConversationController(ConversationSummaryService conversationSummaryService) {
+        this.conversationSummaryService = conversationSummaryService;
+    }
+
+    // The current user's conversations, most recent first; pass nextCursor back as "before"
+    @GetMapping
+    public ResponseEntity<?> getConversations(Authentication authentication,
+                                              @RequestParam(required = false) String before,
+                                              @RequestParam(required = false) Integer limit) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof User currentUser)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("USER NOT AUTHORIZED");
+        }
+        try {
+            return ResponseEntity.ok(conversationSummaryService.getPage(currentUser.getUsername(), before, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+}
@@ -1,17 +1,31 @@
 package com.example.realchatapplication.controller;
 
+import com.example.realchatapplication.dto.CompleteUploadRequest;
+import com.example.realchatapplication.dto.PresignUploadRequest;
 import com.example.realchatapplication.model.ChatMessage;
-import com.example.realchatapplication.repository.ChatMessageRepository;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.service.DirectUploadService;
 import com.example.realchatapplication.service.ImageService;
+import com.example.realchatapplication.service.MessagePersistenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/files")
 public class FileController {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileController.class);
+
     private final ImageService imageService;
 
     public FileController(ImageService imageService) {
@@ -19,35 +33,70 @@ public class FileController {
     }
 
     @Autowired
-    private ChatMessageRepository chatMessageRepository;
+    private MessagePersistenceService messagePersistenceService;
+
+    @Autowired
+    private DirectUploadService directUploadService;
+
+    // Step 1 of a direct upload: the client PUTs the file to the returned URL itself
+    @PostMapping("/presign")
+    public ResponseEntity<?> presignUpload(@RequestBody PresignUploadRequest request,
+                                           @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(directUploadService.presign(user, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
 
+    // Step 2: once the PUT succeeds, record the FILE message and deliver it to both users
+    @PostMapping("/complete")
+    public ResponseEntity<?> completeUpload(@RequestBody CompleteUploadRequest request,
+                                            @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(directUploadService.complete(user, request.getKey()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
+
+    // Returns a future so the servlet thread is released while the upload runs
     @PostMapping("/upload")
-    public ResponseEntity<String> uploadFile(
+    public CompletableFuture<ResponseEntity<String>> uploadFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("sender") String sender,
             @RequestParam("recipient") String recipient,
-            @RequestParam(value = "color", required = false) String color
+            @RequestParam(value = "color", required = false) String color,
+            @AuthenticationPrincipal User user
     ) {
-        try {
-            // Upload file to S3
-            String fileUrl = imageService.uploadFile(file);
+        // The sender is the authenticated user, never a request parameter
+        String sender = user.getUsername();
+        return imageService.uploadFileAsync(file)
+                .thenApply(fileUrl -> saveFileMessage(fileUrl, sender, recipient, color))
+                .exceptionally(this::uploadFailed);
+    }
 
-            // Optionally save metadata in DB
-            ChatMessage message = new ChatMessage();
-            message.setSender(sender);
-            message.setRecipient(recipient);
-            message.setFileUrl(fileUrl);
-            message.setType(ChatMessage.MessageType.FILE);
-            message.setColor(color);
+    private ResponseEntity<String> saveFileMessage(String fileUrl, String sender, String recipient, String color) {
+        // Optionally save metadata in DB
+        ChatMessage message = new ChatMessage();
+        message.setSender(sender);
+        message.setRecipient(recipient);
+        message.setFileUrl(fileUrl);
+        message.setType(ChatMessage.MessageType.FILE);
+        message.setColor(color);
+        message.setConversationId(ChatMessage.conversationIdOf(sender, recipient));
 
-            chatMessageRepository.save(message);
+        messagePersistenceService.persist(message);
 
+        return ResponseEntity.ok(fileUrl);
+    }
 
-            return ResponseEntity.ok(fileUrl);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body("Failed to upload file: " + e.getMessage());
+    private ResponseEntity<String> uploadFailed(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(503).body("Upload capacity exhausted, please retry shortly");
         }
+        logger.error("File upload failed", cause);
+        return ResponseEntity.status(500).body("Failed to upload file, please retry");
     }
 
 }
@@ -1,39 +1,101 @@
     package com.example.realchatapplication.controller;
 
+    import com.example.realchatapplication.dto.MessagePageDTO;
+    import com.example.realchatapplication.dto.MessageSearchPageDTO;
     import com.example.realchatapplication.model.ChatMessage;
-    import com.example.realchatapplication.repository.ChatMessageRepository;
+    import com.example.realchatapplication.model.User;
+    import com.example.realchatapplication.service.MessageSearchService;
+    import com.example.realchatapplication.service.MessageService;
+    import com.example.realchatapplication.service.ReceiptService;
     import org.springframework.beans.factory.annotation.Autowired;
+    import org.springframework.http.HttpStatus;
     import org.springframework.http.ResponseEntity;
+    import org.springframework.security.access.AccessDeniedException;
+    import org.springframework.security.core.Authentication;
     import org.springframework.web.bind.annotation.GetMapping;
     import org.springframework.web.bind.annotation.RequestMapping;
     import org.springframework.web.bind.annotation.RequestParam;
     import org.springframework.web.bind.annotation.RestController;
 
+    import java.util.ArrayList;
+    import java.util.Collections;
     import java.util.List;
+    import java.util.Map;
 
     @RestController
     @RequestMapping("/api/messages")
     public class MessageController {
 
         @Autowired
-        private ChatMessageRepository chatMessageRepository;
+        private MessageService messageService;
 
+        @Autowired
+        private ReceiptService receiptService;
+
+        @Autowired
+        private MessageSearchService messageSearchService;
+
+        // Latest page only, oldest first, for clients that predate /private/history
         @GetMapping("/private")
         public ResponseEntity<List<ChatMessage>> getPrivateMessages(@RequestParam String user1, @RequestParam String user2) {
 
-            List<ChatMessage> messages = chatMessageRepository.findPrivateMessagesBetweenTwoUsers(user1, user2);
+            List<ChatMessage> messages = new ArrayList<>(
+                    messageService.getPrivateHistory(user1, user2, null, null, null).getMessages());
+            Collections.reverse(messages);
             return ResponseEntity.ok(messages);
         }
 
+        // The caller's conversation with one other user, newest first
+        @GetMapping("/private/history")
+        public ResponseEntity<?> getPrivateHistory(Authentication authentication,
+                                                   @RequestParam String with,
+                                                   @RequestParam(required = false) String before,
+                                                   @RequestParam(required = false) String after,
+                                                   @RequestParam(required = false) Integer limit) {
+            if (authentication == null || !(authentication.getPrincipal() instanceof User currentUser)) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("USER NOT AUTHORIZED");
+            }
+            try {
+                MessagePageDTO page = messageService.getPrivateHistory(currentUser.getUsername(), with, before, after, limit);
+                return ResponseEntity.ok(page);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+            }
+        }
 
-    }
-
-
-
-
-
-
-
+        // Delivered/read watermarks of the caller and the peer, and the caller's unread count from the peer
+        @GetMapping("/private/receipts")
+        public ResponseEntity<?> getReceipts(Authentication authentication, @RequestParam String peer) {
+            if (authentication == null || !(authentication.getPrincipal() instanceof User currentUser)) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("USER NOT AUTHORIZED");
+            }
+            return ResponseEntity.ok(receiptService.getReceipts(currentUser.getUsername(), peer));
+        }
 
+        // Text search over the caller's private chats and rooms, newest first
+        @GetMapping("/search")
+        public ResponseEntity<?> search(Authentication authentication,
+                                        @RequestParam String q,
+                                        @RequestParam(required = false) String with,
+                                        @RequestParam(required = false) String roomId,
+                                        @RequestParam(required = false) String sender,
+                                        @RequestParam(required = false) String from,
+                                        @RequestParam(required = false) String to,
+                                        @RequestParam(required = false) String before,
+                                        @RequestParam(required = false) Integer limit) {
+            if (authentication == null || !(authentication.getPrincipal() instanceof User currentUser)) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("USER NOT AUTHORIZED");
+            }
+            try {
+                MessageSearchPageDTO page = messageSearchService.search(
+                        currentUser.getUsername(), q, with, roomId, sender, from, to, before, limit);
+                return ResponseEntity.ok(page);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+            } catch (AccessDeniedException e) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", e.getMessage()));
+            }
+        }
 
 
+    }
@@ -0,0 +1,36 @@
+package com.example.realchatapplication.controller;
+
+import com.example.realchatapplication.dto.ClusterPresenceSnapshot;
+import com.example.realchatapplication.dto.PresenceSnapshot;
+import com.example.realchatapplication.service.ClusterPresenceTracker;
+import com.example.realchatapplication.service.PresenceBroadcaster;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/presence")
+public class PresenceController {
+
+    private final PresenceBroadcaster presenceBroadcaster;
+
+    private final ClusterPresenceTracker clusterPresenceTracker;
+
+    public PresenceController(PresenceBroadcaster presenceBroadcaster, ClusterPresenceTracker clusterPresenceTracker) {
+        this.presenceBroadcaster = presenceBroadcaster;
+        this.clusterPresenceTracker = clusterPresenceTracker;
+    }
+
+    // Starting point for clients subscribing to /topic/presence: one entry per node
+    @GetMapping
+    public ResponseEntity<ClusterPresenceSnapshot> getSnapshot() {
+        List<PresenceSnapshot> nodes = new ArrayList<>();
+        nodes.add(presenceBroadcaster.snapshot());
+        nodes.addAll(clusterPresenceTracker.remoteSnapshots());
+        return ResponseEntity.ok(new ClusterPresenceSnapshot(nodes));
+    }
+}
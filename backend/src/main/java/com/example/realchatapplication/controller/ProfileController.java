@@ -7,6 +7,8 @@ import com.example.realchatapplication.model.User;
 import com.example.realchatapplication.repository.UserRepository;
 import com.example.realchatapplication.service.ImageService;
 import com.example.realchatapplication.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.ModelAttribute;
@@ -15,11 +17,16 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/profile/")
 public class ProfileController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProfileController.class);
+
     private final ImageService imageService;
 
     private final UserService userService;
@@ -34,25 +41,38 @@ public class ProfileController {
     }
 
     @PostMapping("/update")
-    public ResponseEntity<?> updateProfile(
+    public CompletableFuture<ResponseEntity<?>> updateProfile(
             @ModelAttribute EditProfileDto editProfileDTO,
             Authentication authentication
     ) {
+        CompletableFuture<UserDTO> update;
         try {
             User principal = (User) authentication.getPrincipal(); // cast to your User
             String email = principal.getEmail();
-            System.out.println("Updating profile for: " + email);
-
-            UserDTO updatedUser = userService.updateUser(email, editProfileDTO);
+            logger.debug("Updating profile for {}", email);
 
-            return ResponseEntity.ok(Map.of("success", true, "user", updatedUser));
+            update = userService.updateUser(email, editProfileDTO);
         } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(updateFailed(e));
+        }
+
+        return update
+                .<ResponseEntity<?>>thenApply(updatedUser -> ResponseEntity.ok(Map.of("success", true, "user", updatedUser)))
+                .exceptionally(this::updateFailed);
+    }
+
+    private ResponseEntity<?> updateFailed(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(503)
+                    .body(Map.of("success", false, "message", "Upload capacity exhausted, please retry shortly"));
+        }
+        if (cause instanceof RuntimeException) {
             return ResponseEntity.status(400)
-                    .body(Map.of("success", false, "message", e.getMessage()));
-        } catch (Exception e) {
-            return ResponseEntity.status(500)
-                    .body(Map.of("success", false, "message", "Failed to update profile", "error", e.getMessage()));
+                    .body(Map.of("success", false, "message", String.valueOf(cause.getMessage())));
         }
+        return ResponseEntity.status(500)
+                .body(Map.of("success", false, "message", "Failed to update profile", "error", String.valueOf(cause.getMessage())));
     }
 
 
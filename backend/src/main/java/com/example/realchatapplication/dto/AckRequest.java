@@ -0,0 +1,16 @@
+package com.example.realchatapplication.dto;
+
+import com.example.realchatapplication.model.ConversationReceipt;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Sent to /app/chat.ack: everything in the conversation with peer up to messageId was delivered or read
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AckRequest {
+    private String peer;
+    private String messageId;
+    private ConversationReceipt.Type type;
+}
@@ -0,0 +1,16 @@
+package com.example.realchatapplication.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// A user is online if any node lists them
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterPresenceSnapshot {
+
+    private List<PresenceSnapshot> nodes;
+}
@@ -0,0 +1,9 @@
+package com.example.realchatapplication.dto;
+
+import lombok.Data;
+
+@Data
+public class CompleteUploadRequest {
+
+    private String key;
+}
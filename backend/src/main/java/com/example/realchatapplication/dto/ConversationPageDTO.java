@@ -0,0 +1,22 @@
+package com.example.realchatapplication.dto;
+
+import com.example.realchatapplication.model.ConversationSummary;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationPageDTO {
+
+    // Most recent activity first
+    private List<ConversationSummary> conversations;
+
+    private boolean hasMore;
+
+    // Pass as "before" to fetch the next page
+    private String nextCursor;
+}
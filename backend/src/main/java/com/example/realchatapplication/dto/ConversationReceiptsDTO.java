@@ -0,0 +1,20 @@
+package com.example.realchatapplication.dto;
+
+import com.example.realchatapplication.model.ConversationReceipt;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationReceiptsDTO {
+
+    // One per participant that has acknowledged anything
+    private List<ConversationReceipt> receipts;
+
+    // Messages to user1 after their read watermark, counted up to the configured cap
+    private long unread;
+}
@@ -0,0 +1,25 @@
+package com.example.realchatapplication.dto;
+
+import com.example.realchatapplication.model.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePageDTO {
+
+    // Newest first
+    private List<ChatMessage> messages;
+
+    private boolean hasMore;
+
+    // Pass as "before" to fetch the next (older) page
+    private String nextCursor;
+
+    // Pass as "after" to poll for newer messages
+    private String prevCursor;
+}
@@ -0,0 +1,30 @@
+package com.example.realchatapplication.dto;
+
+import com.example.realchatapplication.model.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchHitDTO {
+
+    private ChatMessage message;
+
+    // Part of the content around the first match
+    private String snippet;
+
+    // Matched terms within the snippet, as [start, end) character offsets
+    private List<Highlight> highlights;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Highlight {
+        private int start;
+        private int end;
+    }
+}
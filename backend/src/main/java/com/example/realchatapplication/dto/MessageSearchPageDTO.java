@@ -0,0 +1,21 @@
+package com.example.realchatapplication.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchPageDTO {
+
+    // Newest first
+    private List<MessageSearchHitDTO> hits;
+
+    private boolean hasMore;
+
+    // Pass as "before" to fetch the next (older) page
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.example.realchatapplication.dto;
+
+import com.example.realchatapplication.model.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OfflineSyncBatch {
+
+    // Oldest first, across all conversations
+    private List<ChatMessage> messages;
+
+    // More batches follow in the same sync
+    private boolean hasMore;
+}
@@ -0,0 +1,23 @@
+package com.example.realchatapplication.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceDelta {
+
+    // Node whose local sessions changed; every node numbers its own deltas
+    private String node;
+
+    // Consecutive per node; a gap means the client missed a delta and should re-read the snapshot
+    private long version;
+
+    private List<String> joined;
+
+    private List<String> left;
+}
@@ -0,0 +1,21 @@
+package com.example.realchatapplication.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Users connected to one node
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceSnapshot {
+
+    private String node;
+
+    // Apply only deltas from the same node with a higher version on top of this list
+    private long version;
+
+    private List<String> onlineUsers;
+}
@@ -0,0 +1,18 @@
+package com.example.realchatapplication.dto;
+
+import lombok.Data;
+
+@Data
+public class PresignUploadRequest {
+
+    private String fileName;
+
+    private String contentType;
+
+    // Exact size in bytes; the signed URL only accepts a body of this length
+    private long size;
+
+    private String recipient;
+
+    private String color;
+}
@@ -0,0 +1,23 @@
+package com.example.realchatapplication.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresignUploadResponse {
+
+    private String key;
+
+    private String uploadUrl;
+
+    // Headers the client must send with the PUT, exactly as given
+    private Map<String, String> headers;
+
+    private Instant expiresAt;
+}
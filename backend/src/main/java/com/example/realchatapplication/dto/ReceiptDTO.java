@@ -0,0 +1,25 @@
+package com.example.realchatapplication.dto;
+
+import com.example.realchatapplication.model.ConversationReceipt;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Pushed on /user/queue/receipts when the other side of a conversation moves a watermark
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptDTO {
+    private String conversationId;
+
+    // Who received or read the messages
+    private String username;
+
+    private ConversationReceipt.Type type;
+
+    private String messageId;
+
+    private LocalDateTime timestamp;
+}
@@ -1,6 +1,7 @@
 package com.example.realchatapplication.dto;
 
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +12,8 @@ import lombok.NoArgsConstructor;
 public class TypingMessage {
     private String sender;
     private String recipient;
+    // Clients send and read "isTyping"; without this Jackson would call it "typing"
+    @JsonProperty("isTyping")
     private boolean isTyping;
 
     // getters and setters
@@ -3,6 +3,8 @@ package com.example.realchatapplication.dto;
 import jakarta.persistence.Column;
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 public class UserDTO {
 
@@ -19,6 +21,9 @@ public class UserDTO {
 
     private String imageUrl;
 
+    // Prefer these for avatars; imageUrl is the full-size original
+    private Map<String, String> imageVariants;
+
 
 
 
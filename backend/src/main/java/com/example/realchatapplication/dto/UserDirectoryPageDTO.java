@@ -0,0 +1,21 @@
+package com.example.realchatapplication.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDirectoryPageDTO {
+
+    // Sorted by username
+    private List<UserSummaryDTO> users;
+
+    private boolean hasMore;
+
+    // Pass as "after" to fetch the next page
+    private String nextCursor;
+}
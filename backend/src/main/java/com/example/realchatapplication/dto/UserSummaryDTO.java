@@ -0,0 +1,24 @@
+package com.example.realchatapplication.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// One row of the user directory: only what the sidebar shows
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummaryDTO {
+
+    private String username;
+
+    private String email;
+
+    private boolean online;
+
+    private String imageUrl;
+
+    private Map<String, String> imageVariants;
+}
@@ -0,0 +1,17 @@
+package com.example.realchatapplication.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Published when a user's first session opens or last session closes
+@Getter
+@AllArgsConstructor
+public class PresenceChangedEvent {
+
+    private final String username;
+
+    private final boolean online;
+
+    // Increases with every change on this node; of two events for a user, the higher one is current
+    private final long version;
+}
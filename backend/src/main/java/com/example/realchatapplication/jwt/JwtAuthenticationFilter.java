@@ -1,15 +1,13 @@
 package com.example.realchatapplication.jwt;
 
-import com.example.realchatapplication.repository.UserRepository;
+import com.example.realchatapplication.model.User;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.web.authentication.WebAuthenticationDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -21,11 +19,11 @@ import java.util.Collections;
 public class JwtAuthenticationFilter extends OncePerRequestFilter{
 
 
-    @Autowired
-    private JwtService jwtService;
+    private final JwtAuthenticator jwtAuthenticator;
 
-    @Autowired
-    private UserRepository userRepository;
+    public JwtAuthenticationFilter(JwtAuthenticator jwtAuthenticator) {
+        this.jwtAuthenticator = jwtAuthenticator;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
@@ -36,7 +34,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter{
             return;
         }
 
-        String userId = null;
         String jwtToken = null;
 
         String authHeader = request.getHeader("Authorization");
@@ -59,42 +56,31 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter{
             }
         }
 
-        if(jwtToken == null){
+        if(jwtToken == null || SecurityContextHolder.getContext().getAuthentication() != null){
             filterChain.doFilter(request,response);
             return;
         }
 
-        userId = jwtService.extractUserId(jwtToken);
-
-        if(userId != null && SecurityContextHolder.getContext().getAuthentication() == null){
+        User userDetails = jwtAuthenticator.authenticate(jwtToken);
 
-            var userDetails = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
+        if(userDetails != null){
 
-            if(jwtService.isTokenValid(jwtToken, userDetails)){
+            UsernamePasswordAuthenticationToken authToken =
+                    new UsernamePasswordAuthenticationToken(userDetails, null, Collections.emptyList());
 
-                UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, Collections.emptyList());
+            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+            SecurityContextHolder.getContext().setAuthentication(authToken);
 
         }
 
         filterChain.doFilter(request,response);
         return;
     }
-}
-
-
-
-
-
-
-
-
-
-
-
 
+    // Async responses (uploads) are dispatched again and need the principal restored
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+}
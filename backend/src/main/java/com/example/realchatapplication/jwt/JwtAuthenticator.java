@@ -0,0 +1,94 @@
+package com.example.realchatapplication.jwt;
+
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.service.UserDirectoryCache;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a bearer token into the user it was issued to. Shared by the HTTP filter and the
+ * STOMP CONNECT interceptor, so both accept exactly the same tokens.
+ */
+@Component
+public class JwtAuthenticator {
+
+    private final JwtService jwtService;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    private final UserDirectoryCache userDirectoryCache;
+
+    // Signature checks only; cache hits show up in the jwt.verified cache metrics
+    private final Timer validTokenTimer;
+
+    private final Timer invalidTokenTimer;
+
+    public JwtAuthenticator(JwtService jwtService,
+                            VerifiedTokenCache verifiedTokenCache,
+                            UserDirectoryCache userDirectoryCache,
+                            MeterRegistry meterRegistry) {
+        this.jwtService = jwtService;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.userDirectoryCache = userDirectoryCache;
+        this.validTokenTimer = validationTimer(meterRegistry, "valid");
+        this.invalidTokenTimer = validationTimer(meterRegistry, "invalid");
+    }
+
+    /**
+     * Returns the token's user, or null if the token is invalid, expired, or no longer
+     * matches a user.
+     */
+    public User authenticate(String jwtToken) {
+        if (jwtToken == null || jwtToken.isBlank()) {
+            return null;
+        }
+        VerifiedTokenCache.VerifiedToken verifiedToken = verify(jwtToken);
+        if (verifiedToken == null) {
+            return null;
+        }
+
+        // Principal must still exist and still own the email the token was issued for
+        User user = userDirectoryCache.findById(verifiedToken.getUserId()).orElse(null);
+        if (user == null || !verifiedToken.getSubject().equals(user.getEmail())) {
+            return null;
+        }
+        return user;
+    }
+
+    // Signature is checked once per token; repeat requests are a hash and a cache lookup
+    private VerifiedTokenCache.VerifiedToken verify(String jwtToken) {
+        String tokenHash = VerifiedTokenCache.hash(jwtToken);
+        VerifiedTokenCache.VerifiedToken verifiedToken = verifiedTokenCache.get(tokenHash);
+        if (verifiedToken != null) {
+            return verifiedToken;
+        }
+
+        long start = System.nanoTime();
+        Claims claims = jwtService.validateToken(jwtToken);
+        if (claims == null) {
+            invalidTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return null;
+        }
+        validTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        String userId = claims.get("userId", String.class);
+        if (userId == null || claims.getSubject() == null || claims.getExpiration() == null) {
+            return null;
+        }
+
+        verifiedToken = new VerifiedTokenCache.VerifiedToken(userId, claims.getSubject(), claims.getExpiration().getTime());
+        verifiedTokenCache.put(tokenHash, verifiedToken);
+        return verifiedToken;
+    }
+
+    private static Timer validationTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("jwt.validation.duration")
+                .description("Signature and expiry check of a token not yet in the verified-token cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -2,6 +2,8 @@ package com.example.realchatapplication.jwt;
 
 import com.example.realchatapplication.model.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -23,6 +25,11 @@ public class JwtService {
     @Value("${jwt.expiration}")
     private Long jwtexpiration;
 
+    // Decoded on first use and then shared; the key and parser are immutable and thread-safe
+    private volatile SecretKey signInKey;
+
+    private volatile JwtParser jwtParser;
+
     public String extractUserId(String jwtToken) {
         return extractClaim(jwtToken, claims -> claims.get("userId", String.class));
     }
@@ -37,16 +44,43 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String jwtToken) {
-        return Jwts.parser()
-                .verifyWith(getSignInKey())
-                .build()
+        return getParser()
                 .parseSignedClaims(jwtToken)
                 .getPayload();
     }
 
+    /**
+     * Verifies the signature and expiry with a single parse.
+     * Returns the claims, or null if the token is malformed, forged or expired.
+     */
+    public Claims validateToken(String jwtToken) {
+        if (jwtToken == null) return null;
+        try {
+            return extractAllClaims(jwtToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public SecretKey getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        SecretKey key = signInKey;
+        if (key == null) {
+            byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+            key = Keys.hmacShaKeyFor(keyBytes);
+            signInKey = key;
+        }
+        return key;
+    }
+
+    private JwtParser getParser() {
+        JwtParser parser = jwtParser;
+        if (parser == null) {
+            parser = Jwts.parser()
+                    .verifyWith(getSignInKey())
+                    .build();
+            jwtParser = parser;
+        }
+        return parser;
     }
 
     public String generateToken(User user) {
@@ -64,21 +98,16 @@ public class JwtService {
     public boolean isTokenValid(String jwtToken, User user) {
         if (jwtToken == null || user == null) return false;
 
-        final String userIdFromToken = extractUserId(jwtToken);
-        final String usernameFromToken = extractUsername(jwtToken);
+        // The parser already rejects expired tokens
+        final Claims claims = validateToken(jwtToken);
+        if (claims == null) return false;
+
+        final String userIdFromToken = claims.get("userId", String.class);
+        final String usernameFromToken = claims.getSubject();
 
         if (userIdFromToken == null || usernameFromToken == null) return false;
 
         return userIdFromToken.equals(user.getId()) &&
-                usernameFromToken.equals(user.getEmail()) &&
-                !isTokenExpired(jwtToken);
-    }
-
-    private boolean isTokenExpired(String jwtToken) {
-        return extractExpiration(jwtToken).before(new Date());
-    }
-
-    private Date extractExpiration(String jwtToken) {
-        return extractClaim(jwtToken, Claims::getExpiration);
+                usernameFromToken.equals(user.getEmail());
     }
 }
@@ -0,0 +1,36 @@
+package com.example.realchatapplication.listener;
+
+import com.example.realchatapplication.service.OnlineUserService;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+// Every inbound frame, heartbeats included, counts as a sign of life for its session
+@Component
+public class PresenceChannelInterceptor implements ChannelInterceptor {
+
+    private final OnlineUserService onlineUserService;
+
+    public PresenceChannelInterceptor(OnlineUserService onlineUserService) {
+        this.onlineUserService = onlineUserService;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) {
+            return message;
+        }
+
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.CONNECT) {
+            long[] heartbeat = SimpMessageHeaderAccessor.getHeartbeat(message.getHeaders());
+            onlineUserService.sessionOpened(sessionId, heartbeat != null && heartbeat[0] > 0);
+        } else {
+            onlineUserService.touch(sessionId);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.realchatapplication.listener;
+
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.service.ChatRoomService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Guards broker destinations: only members may subscribe to {@code /topic/room.{id}}, and
+ * clients may only SEND to {@code /app/**}. A direct SEND to {@code /topic}, {@code /queue} or
+ * {@code /user} would skip the checks and persistence in the message handlers, and would let a
+ * client fake presence on {@code /topic/presence} or {@code /topic/cluster.presence}.
+ * Destination patterns are refused everywhere, since the broker would match
+ * {@code /topic/room.*} against every room. Refused frames are dropped rather than answered
+ * with an ERROR frame, which would close the client's whole connection.
+ * <p>
+ * Accepted room subscriptions are tracked per session, so a member who is removed loses the
+ * subscription they already hold, on whichever node their session lives.
+ */
+@Component
+public class RoomSubscriptionInterceptor implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomSubscriptionInterceptor.class);
+
+    // Must match the application destination prefix in WebSocketConfig
+    private static final String APPLICATION_PREFIX = "/app/";
+
+    private final ChatRoomService chatRoomService;
+
+    private final MessageChannel brokerChannel;
+
+    // Session id -> subscription id -> room subscription
+    private final Map<String, Map<String, RoomSubscription>> subscriptions = new ConcurrentHashMap<>();
+
+    // Lazy: the room service and the broker channel both need WebSocketConfig, which needs us
+    public RoomSubscriptionInterceptor(@Lazy ChatRoomService chatRoomService,
+                                       @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        this.chatRoomService = chatRoomService;
+        this.brokerChannel = brokerChannel;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        switch (accessor.getCommand()) {
+            case DISCONNECT -> {
+                if (accessor.getSessionId() != null) {
+                    subscriptions.remove(accessor.getSessionId());
+                }
+                return message;
+            }
+            case UNSUBSCRIBE -> {
+                return unsubscribed(accessor) ? message : null;
+            }
+            case SEND, SUBSCRIBE -> {
+                return allowed(accessor) ? message : null;
+            }
+            default -> {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * Drops the room subscriptions of sessions whose user is no longer a member of the room.
+     * Called after the room's membership changed, here or on another node.
+     */
+    public void revokeNonMembers(String roomId) {
+        subscriptions.forEach((sessionId, bySubscription) -> bySubscription.forEach((subscriptionId, subscription) -> {
+            if (subscription.roomId.equals(roomId) && !subscription.revoked
+                    && !chatRoomService.isMember(roomId, subscription.username)) {
+                subscription.revoked = true;
+                brokerChannel.send(unsubscribe(sessionId, subscriptionId, roomId));
+                logger.debug("Revoked subscription to {} for {}", ChatRoom.topicOf(roomId), subscription.username);
+            }
+        }));
+    }
+
+    private boolean allowed(StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null) {
+            return true;
+        }
+        if (isPattern(destination)) {
+            logger.debug("Refused {} to pattern {} from session {}", accessor.getCommand(), destination, accessor.getSessionId());
+            return false;
+        }
+        if (accessor.getCommand() == StompCommand.SEND) {
+            if (!destination.startsWith(APPLICATION_PREFIX)) {
+                logger.debug("Dropped direct SEND to {} from session {}", destination, accessor.getSessionId());
+                return false;
+            }
+            return true;
+        }
+        if (!destination.startsWith(ChatRoom.TOPIC_PREFIX)) {
+            return true;
+        }
+
+        Principal user = accessor.getUser();
+        String roomId = destination.substring(ChatRoom.TOPIC_PREFIX.length());
+        if (user == null || !chatRoomService.canSubscribe(roomId, user.getName())) {
+            logger.debug("Refused subscription to {} for {}", destination, user);
+            return false;
+        }
+        if (accessor.getSessionId() != null && accessor.getSubscriptionId() != null) {
+            subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                    .put(accessor.getSubscriptionId(), new RoomSubscription(roomId, user.getName()));
+        }
+        return true;
+    }
+
+    // A subscription we revoked is already gone at the broker; an external broker answers a second UNSUBSCRIBE with an ERROR
+    private boolean unsubscribed(StompHeaderAccessor accessor) {
+        if (accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return true;
+        }
+        Map<String, RoomSubscription> bySubscription = subscriptions.get(accessor.getSessionId());
+        RoomSubscription subscription = bySubscription == null ? null : bySubscription.remove(accessor.getSubscriptionId());
+        return subscription == null || !subscription.revoked;
+    }
+
+    // Both brokers treat these as wildcards: AntPathMatcher in the simple broker, address wildcards in Artemis
+    private static boolean isPattern(String destination) {
+        for (char c : destination.toCharArray()) {
+            if (c == '*' || c == '?' || c == '{' || c == '#') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId, String roomId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(ChatRoom.topicOf(roomId));
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static final class RoomSubscription {
+        private final String roomId;
+        private final String username;
+        private volatile boolean revoked;
+
+        private RoomSubscription(String roomId, String username) {
+            this.roomId = roomId;
+            this.username = username;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.realchatapplication.listener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times how long messages wait for a channel executor thread and how long each handler then
+ * takes, per destination. One instance per channel; the channel name becomes a tag.
+ */
+public class StompChannelMetricsInterceptor implements ExecutorChannelInterceptor {
+
+    private static final String ENQUEUED_AT_HEADER = "chatEnqueuedAt";
+
+    // Clients can SEND to any /app destination, so stop adding tags after this many
+    private static final int MAX_DESTINATION_TAGS = 100;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String channelName;
+
+    private final Map<String, Timer> queueWaitTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> handleTimers = new ConcurrentHashMap<>();
+
+    // Handlers run on the thread that called beforeHandle, so a thread local carries the start time
+    private final ThreadLocal<long[]> handleStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    public StompChannelMetricsInterceptor(MeterRegistry meterRegistry, String channelName) {
+        this.meterRegistry = meterRegistry;
+        this.channelName = channelName;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        long now = System.nanoTime();
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
+        if (accessor != null && accessor.isMutable()) {
+            accessor.setHeader(ENQUEUED_AT_HEADER, now);
+            return message;
+        }
+        return MessageBuilder.fromMessage(message).setHeader(ENQUEUED_AT_HEADER, now).build();
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        long now = System.nanoTime();
+        Long enqueuedAt = message.getHeaders().get(ENQUEUED_AT_HEADER, Long.class);
+        if (enqueuedAt != null) {
+            timer(queueWaitTimers, "chat.stomp.queue-wait", destinationTag(message), null)
+                    .record(now - enqueuedAt, TimeUnit.NANOSECONDS);
+        }
+        handleStart.get()[0] = now;
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        long elapsed = System.nanoTime() - handleStart.get()[0];
+        timer(handleTimers, "chat.stomp.handle", destinationTag(message), handler.getClass().getSimpleName())
+                .record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(Map<String, Timer> timers, String name, String destination, String handler) {
+        String key = handler == null ? destination : destination + " " + handler;
+        Timer timer = timers.get(key);
+        if (timer != null) {
+            return timer;
+        }
+        if (timers.size() >= MAX_DESTINATION_TAGS) {
+            destination = "other";
+            key = handler == null ? destination : destination + " " + handler;
+        }
+        String destinationTag = destination;
+        return timers.computeIfAbsent(key, k -> {
+            Timer.Builder builder = Timer.builder(name)
+                    .tag("channel", channelName)
+                    .tag("destination", destinationTag)
+                    .publishPercentiles(0.5, 0.99);
+            if (handler != null) {
+                builder.tag("handler", handler);
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+
+    // Session queues (/queue/private-user3f2a...) are folded into one tag per logical destination
+    private static String destinationTag(Message<?> message) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return type == null ? "none" : type.name().toLowerCase();
+        }
+        int userSuffix = destination.indexOf("-user");
+        return userSuffix > 0 ? destination.substring(0, userSuffix) : destination;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.realchatapplication.listener;
+
+import com.example.realchatapplication.jwt.JwtAuthenticator;
+import com.example.realchatapplication.model.User;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+
+/**
+ * Authenticates STOMP CONNECT with the same JWT the REST API takes, sent as an
+ * {@code Authorization: Bearer} CONNECT header, and names the session after the token's user.
+ * A CONNECT without a valid token is refused with an ERROR frame. Everything that trusts the
+ * session principal (typing, sync, acks, rooms) relies on this, and {@code /user/queue/...}
+ * destinations resolve through it; with a broker relay the user registry is shared between
+ * nodes, which is how a message finds a user connected elsewhere.
+ */
+@Component
+public class StompUserInterceptor implements ChannelInterceptor {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtAuthenticator jwtAuthenticator;
+
+    public StompUserInterceptor(JwtAuthenticator jwtAuthenticator) {
+        this.jwtAuthenticator = jwtAuthenticator;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT) {
+            return message;
+        }
+
+        String authorization = accessor.getFirstNativeHeader("Authorization");
+        String token = authorization != null && authorization.startsWith(BEARER_PREFIX)
+                ? authorization.substring(BEARER_PREFIX.length()) : null;
+        User user = jwtAuthenticator.authenticate(token);
+        if (user == null) {
+            throw new BadCredentialsException("Invalid or missing token");
+        }
+        accessor.setUser(new StompUser(user.getUsername()));
+        return message;
+    }
+
+    private static class StompUser implements Principal {
+        private final String name;
+
+        private StompUser(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.realchatapplication.listener;
 
+import com.example.realchatapplication.event.PresenceChangedEvent;
 import com.example.realchatapplication.model.ChatMessage;
-import com.example.realchatapplication.service.UserService;
+import com.example.realchatapplication.service.OnlineUserService;
+import com.example.realchatapplication.service.TypingTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,16 +18,19 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 public class WebSocketListener {
 
     @Autowired
-    private UserService userService;
+    private SimpMessageSendingOperations messagingTemplate;
 
     @Autowired
-    private SimpMessageSendingOperations messagingTemplate;
+    private OnlineUserService onlineUserService;
+
+    @Autowired
+    private TypingTracker typingTracker;
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketListener.class);
 
     @EventListener
     public void handleWebsocketConnectListener(SessionConnectedEvent event){
-        logger.info("Connected to websocket");
+        logger.debug("Connected to websocket");
     }
 
     @EventListener
@@ -34,18 +39,23 @@ public class WebSocketListener {
         String username = (String) headerAccessor.getSessionAttributes().get("username");
 
         if (username != null) {
-            userService.setUserOnlineStatus(username, false);
+            logger.debug("User {} disconnected from websocket", username);
+        }
 
-            System.out.println("User disconnected from websocket: " + username);
+        // Only publishes a presence change once the user's last session is gone
+        onlineUserService.sessionClosed(event.getSessionId());
+        typingTracker.sessionClosed(event.getSessionId());
+    }
 
+    // Online-user updates go out as batched deltas from PresenceBroadcaster
+    @EventListener
+    public void handlePresenceChanged(PresenceChangedEvent event) {
+        if (!event.isOnline()) {
             // Broadcast LEAVE message (optional)
             ChatMessage chatMessage = new ChatMessage();
             chatMessage.setType(ChatMessage.MessageType.LEAVE);
-            chatMessage.setSender(username);
+            chatMessage.setSender(event.getUsername());
             messagingTemplate.convertAndSend("/topic/public", chatMessage);
-
-            // Broadcast updated online users
-            messagingTemplate.convertAndSend("/topic/onlineUsers", userService.getOnlineUsers());
         }
     }
 
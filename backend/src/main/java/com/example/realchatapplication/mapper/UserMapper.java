@@ -0,0 +1,32 @@
+package com.example.realchatapplication.mapper;
+
+import com.example.realchatapplication.dto.UserDTO;
+import com.example.realchatapplication.dto.UserSummaryDTO;
+import com.example.realchatapplication.model.User;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.ReportingPolicy;
+
+import java.util.Map;
+
+/**
+ * {@link User} to the DTOs the API returns. The implementation is generated at compile time,
+ * so mapping is plain getter and setter calls; a DTO field nothing maps to fails the build.
+ * The online flag is passed in rather than read from the user, since presence lives in
+ * {@link com.example.realchatapplication.service.OnlineUserService}.
+ */
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING, unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface UserMapper {
+
+    @Mapping(target = "online", source = "online")
+    UserDTO toUserDTO(User user, boolean online);
+
+    @Mapping(target = "online", source = "online")
+    UserSummaryDTO toSummary(User user, boolean online);
+
+    // Shared rather than copied; the DTO is serialized straight away and never modified
+    default Map<String, String> imageVariants(Map<String, String> imageVariants) {
+        return imageVariants;
+    }
+}
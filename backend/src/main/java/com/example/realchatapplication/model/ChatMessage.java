@@ -26,7 +26,14 @@ public class ChatMessage {
     private String chatRoomId;
     private String fileUrl;
 
+    // Canonical key shared by both directions of a private conversation
+    private String conversationId;
+
     public enum MessageType {
         CHAT, PRIVATE_MESSAGE, JOIN, LEAVE, TYPING,FILE
     }
+
+    public static String conversationIdOf(String user1, String user2) {
+        return user1.compareTo(user2) <= 0 ? user1 + ":" + user2 : user2 + ":" + user1;
+    }
 }
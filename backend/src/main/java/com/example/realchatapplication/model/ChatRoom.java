@@ -0,0 +1,41 @@
+package com.example.realchatapplication.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+// A group chat; its messages are ChatMessages with chatRoomId set, stored under conversationOf(id)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "chat_rooms")
+public class ChatRoom {
+
+    public static final String TOPIC_PREFIX = "/topic/room.";
+
+    @Id
+    private String id;
+
+    private String name;
+
+    private String createdBy;
+
+    private Set<String> members;
+
+    private LocalDateTime createdAt;
+
+    // Shares the conversation index with private chats, which use "user1:user2"
+    public static String conversationIdOf(String roomId) {
+        return "room:" + roomId;
+    }
+
+    // One broker destination per room, so a message is published once whatever the room size
+    public static String topicOf(String roomId) {
+        return TOPIC_PREFIX + roomId;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.realchatapplication.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * How far one user has received and read one conversation. Both are cumulative watermarks:
+ * every message at or before them, in history order, counts as delivered or read.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "conversation_receipts")
+public class ConversationReceipt {
+
+    // conversationId + "/" + username
+    @Id
+    private String id;
+
+    private String conversationId;
+
+    private String username;
+
+    private Watermark delivered;
+
+    private Watermark read;
+
+    private LocalDateTime updatedAt;
+
+    public enum Type {
+        DELIVERED, READ
+    }
+
+    public static String idOf(String conversationId, String username) {
+        return conversationId + "/" + username;
+    }
+
+    // Field order matters: $max compares embedded documents field by field
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Watermark {
+        private LocalDateTime timestamp;
+        private String messageId;
+
+        public boolean isAfter(Watermark other) {
+            if (other == null) {
+                return true;
+            }
+            int byTime = timestamp.compareTo(other.timestamp);
+            return byTime != 0 ? byTime > 0 : messageId.compareTo(other.messageId) > 0;
+        }
+    }
+}
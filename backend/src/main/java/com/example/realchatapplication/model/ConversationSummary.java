@@ -0,0 +1,45 @@
+package com.example.realchatapplication.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// One row of a user's conversation list, kept up to date as messages are stored
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "conversation_summaries")
+public class ConversationSummary {
+
+    // conversationId + "/" + owner, like ConversationReceipt
+    @Id
+    private String id;
+
+    private String owner;
+
+    private String counterpart;
+
+    private String conversationId;
+
+    private String lastMessageId;
+
+    private String lastSender;
+
+    private ChatMessage.MessageType lastMessageType;
+
+    // Start of the text, or the file name for FILE messages
+    private String lastMessagePreview;
+
+    private LocalDateTime lastMessageAt;
+
+    // Messages from the counterpart since the owner last read or replied
+    private long unreadCount;
+
+    public static String idOf(String conversationId, String owner) {
+        return conversationId + "/" + owner;
+    }
+}
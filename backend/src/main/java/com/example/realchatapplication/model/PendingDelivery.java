@@ -0,0 +1,27 @@
+package com.example.realchatapplication.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// A private message whose recipient was offline when it was sent, kept until their next sync
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "pending_deliveries")
+public class PendingDelivery {
+
+    @Id
+    private String id;
+
+    private String recipient;
+
+    private LocalDateTime createdAt;
+
+    // A copy, so a sync is one read even while write-behind has not stored the original yet
+    private ChatMessage message;
+}
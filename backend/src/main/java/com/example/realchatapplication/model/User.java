@@ -5,6 +5,8 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import java.util.Map;
+
 @Data
 @Document(collection = "users")
 public class User {
@@ -24,4 +26,7 @@ public class User {
     private String color;
 
     private String imageUrl;
+
+    // Resized avatars keyed by pixel size ("48", "128", "512"); empty for images uploaded before variants existed
+    private Map<String, String> imageVariants;
 }
@@ -1,15 +1,27 @@
 package com.example.realchatapplication.repository;
 
 import com.example.realchatapplication.model.ChatMessage;
-import com.example.realchatapplication.model.User;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface ChatMessageRepository extends MongoRepository<ChatMessage, String> {
 
-    @Query("{ '$or': [ { 'sender': ?0, 'recipient': ?1 }, { 'sender': ?1, 'recipient': ?0 } ] }")
-    List<ChatMessage> findPrivateMessagesBetweenTwoUsers(String user1, String user2);
+    // Keyset pages over the (conversationId, timestamp, _id) index, newest first
+    @Query(value = "{ 'conversationId': ?0 }", sort = "{ 'timestamp': -1, '_id': -1 }")
+    List<ChatMessage> findLatestInConversation(String conversationId, Pageable pageable);
+
+    @Query(value = "{ 'conversationId': ?0, '$or': [ { 'timestamp': { '$lt': ?1 } }, { 'timestamp': ?1, '_id': { '$lt': ?2 } } ] }",
+            sort = "{ 'timestamp': -1, '_id': -1 }")
+    List<ChatMessage> findInConversationBefore(String conversationId, LocalDateTime timestamp, ObjectId id, Pageable pageable);
+
+    // Ascending so the page closest to the cursor comes back first
+    @Query(value = "{ 'conversationId': ?0, '$or': [ { 'timestamp': { '$gt': ?1 } }, { 'timestamp': ?1, '_id': { '$gt': ?2 } } ] }",
+            sort = "{ 'timestamp': 1, '_id': 1 }")
+    List<ChatMessage> findInConversationAfter(String conversationId, LocalDateTime timestamp, ObjectId id, Pageable pageable);
 
 }
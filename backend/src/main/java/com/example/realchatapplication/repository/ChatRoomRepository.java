@@ -0,0 +1,12 @@
+package com.example.realchatapplication.repository;
+
+import com.example.realchatapplication.model.ChatRoom;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface ChatRoomRepository extends MongoRepository<ChatRoom, String> {
+
+    List<ChatRoom> findByMembersOrderByNameAsc(String member);
+
+}
@@ -1,6 +1,7 @@
 package com.example.realchatapplication.repository;
 
 import com.example.realchatapplication.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.Update;
@@ -14,8 +15,6 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     Optional<User> findByUsername(String username);
 
-    List<User> findByIsOnlineTrue();
-
     @Update("{ '$set': { 'isOnline': ?1 } }")
     @Query("{ 'username': ?0 }")
     void updateUserOnlineStatus(String username, boolean isOnline);
@@ -25,6 +24,13 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     Optional<User> findByEmail(String email);
 
+    // Directory listing: anchored prefix regex plus keyset on username, both served by the username index.
+    // The excluded user is filtered here, not after the limit, so pages stay full.
+    @Query(value = "{ '$and': [ { 'username': { '$regex': ?0 } }, { 'username': { '$gt': ?1 } }, { 'username': { '$ne': ?2 } } ] }",
+            fields = "{ 'username': 1, 'email': 1, 'imageUrl': 1, 'imageVariants': 1 }",
+            sort = "{ 'username': 1 }")
+    List<User> findDirectoryPage(String usernamePrefixRegex, String afterUsername, String excludedUsername, Pageable pageable);
+
 
 
 
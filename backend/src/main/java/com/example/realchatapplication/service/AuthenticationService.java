@@ -5,29 +5,27 @@ import com.example.realchatapplication.dto.LoginResponseDTO;
 import com.example.realchatapplication.dto.RegisterRequestDTO;
 import com.example.realchatapplication.dto.UserDTO;
 import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.mapper.UserMapper;
 import com.example.realchatapplication.model.User;
 import com.example.realchatapplication.repository.UserRepository;
 import jakarta.servlet.http.HttpServletRequest;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class AuthenticationService {
 
     @Autowired
-    private ModelMapper modelMapper;
+    private UserMapper userMapper;
 
     @Autowired
     private UserRepository userRepository;
@@ -35,48 +33,94 @@ public class AuthenticationService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    // The provider's user details service, which stores rehashed passwords
     @Autowired
-    private AuthenticationManager authenticationManager;
+    private CustomUserDetails userDetailsService;
 
     @Autowired
     private JwtService jwtService;
 
-    public UserDTO signup(RegisterRequestDTO registerRequestDTO) {
-        if (userRepository.findByUsername(registerRequestDTO.getUsername()).isPresent()) {
-            throw new RuntimeException("Username is already in use");
-        }
-
-        User user = new User();
-        user.setUsername(registerRequestDTO.getUsername());
-        user.setPassword(passwordEncoder.encode(registerRequestDTO.getPassword()));
-        user.setEmail(registerRequestDTO.getEmail());
-        user.setOnline(false);
+    @Autowired
+    private OnlineUserService onlineUserService;
 
-        User savedUser = userRepository.save(user);
-        return convertToUserDTO(savedUser);
-    }
+    @Autowired
+    private PasswordHashingService passwordHashingService;
 
+    private volatile String unknownUserHash;
 
-    public LoginResponseDTO login(LoginRequestDTO loginRequestDTO) {
+    // Only the hashing runs on the hashing pool; a taken username is refused before paying for it
+    public CompletableFuture<UserDTO> signup(RegisterRequestDTO registerRequestDTO) {
+        if (userRepository.findByUsername(registerRequestDTO.getUsername()).isPresent()) {
+            throw new IllegalArgumentException("Username is already in use");
+        }
 
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(loginRequestDTO.getEmail(), loginRequestDTO.getPassword())
-        );
+        return passwordHashingService.submit(() -> passwordEncoder.encode(registerRequestDTO.getPassword()))
+                .thenApply(hash -> {
+                    User user = new User();
+                    user.setUsername(registerRequestDTO.getUsername());
+                    user.setPassword(hash);
+                    user.setEmail(registerRequestDTO.getEmail());
+                    user.setOnline(false);
+
+                    User savedUser = userRepository.save(user);
+                    return convertToUserDTO(savedUser);
+                });
+    }
 
-        User user = userRepository.findByEmail(loginRequestDTO.getEmail())
-                .orElseThrow(() -> new RuntimeException("Invalid email"));
 
-        user.setOnline(true); // ✅ Now user goes online
-        userRepository.save(user);
+    /**
+     * Checks the password on the hashing pool; the lookup before and the token after run
+     * elsewhere. A hash that is outdated (an unprefixed bcrypt hash, another algorithm, a lower
+     * cost) is rehashed in the same hashing task and stored through
+     * {@link CustomUserDetails#updatePassword}.
+     */
+    public CompletableFuture<LoginResponseDTO> login(LoginRequestDTO loginRequestDTO) {
+        User user = userRepository.findByEmail(loginRequestDTO.getEmail()).orElse(null);
+        String storedHash = user == null ? null : user.getPassword();
+
+        return passwordHashingService.submit(() -> checkPassword(loginRequestDTO.getPassword(), storedHash))
+                .thenApply(check -> {
+                    if (user == null || !check.matches()) {
+                        throw new BadCredentialsException("Invalid email or password");
+                    }
+                    if (check.newHash() != null) {
+                        userDetailsService.updatePassword(CustomUserDetails.detailsOf(user), check.newHash());
+                    }
+
+                    // Presence is tracked per WebSocket session by OnlineUserService, not at login
+
+                    String jwtToken = jwtService.generateToken(user);
+
+                    return LoginResponseDTO.builder()
+                            .token(jwtToken)
+                            .userDTO(convertToUserDTO(user))
+                            .build();
+                });
+    }
 
+    // Unknown emails pay for a check too, so response times do not tell which emails exist
+    private PasswordCheck checkPassword(String rawPassword, String storedHash) {
+        if (storedHash == null) {
+            passwordEncoder.matches(rawPassword, unknownUserHash());
+            return new PasswordCheck(false, null);
+        }
+        if (!passwordEncoder.matches(rawPassword, storedHash)) {
+            return new PasswordCheck(false, null);
+        }
+        return new PasswordCheck(true,
+                passwordEncoder.upgradeEncoding(storedHash) ? passwordEncoder.encode(rawPassword) : null);
+    }
 
-        String jwtToken = jwtService.generateToken(user);
-        System.out.println(jwtToken);
+    private String unknownUserHash() {
+        String hash = unknownUserHash;
+        if (hash == null) {
+            hash = passwordEncoder.encode("unknown-user");
+            unknownUserHash = hash;
+        }
+        return hash;
+    }
 
-        return LoginResponseDTO.builder()
-                .token(jwtToken)
-                .userDTO(convertToUserDTO(user))
-                .build();
+    private record PasswordCheck(boolean matches, String newHash) {
     }
 
     public ResponseEntity<String> logout(String token) {
@@ -84,8 +128,7 @@ public class AuthenticationService {
         // Extract username from JWT
         String username = jwtService.extractUsername(token.replace("Bearer ", ""));
 
-        // Set user offline
-        userRepository.updateUserOnlineStatus(username, false);
+        // Presence ends when the client's WebSocket sessions close, see WebSocketListener
 
         // Optional: Delete token cookie (if using cookies)
         ResponseCookie responseCookie = ResponseCookie.from("JWT", "")
@@ -104,31 +147,33 @@ public class AuthenticationService {
 
 
     public Map<String, Object> getOnlineUsers() {
-        List<User> usersList = userRepository.findByIsOnlineTrue();
-        return usersList.stream().collect(Collectors.toMap(User::getUsername, user -> user));
+        return Map.of("onlineUsers", onlineUserService.getOnlineUsers());
     }
 
     public UserDTO convertToUserDTO(User user) {
-        return modelMapper.map(user, UserDTO.class);
+        return userMapper.toUserDTO(user, onlineUserService.isOnline(user.getUsername()));
     }
 
 
-    public boolean changePassword(String email, String oldPassword, String newPassword) {
+    // Completes with false when the old password does not match
+    public CompletableFuture<Boolean> changePassword(String email, String oldPassword, String newPassword) {
         Optional<User> userOpt = userRepository.findByEmail(email);
         if (userOpt.isEmpty()) {
-            throw new RuntimeException("User not found");
+            throw new IllegalArgumentException("User not found");
         }
 
         User user = userOpt.get();
 
-        // Check old password
-        if (!passwordEncoder.matches(oldPassword, user.getPassword())) {
-            return false;
-        }
-
-        // Encode and set new password
-        user.setPassword(passwordEncoder.encode(newPassword));
-        userRepository.save(user);
-        return true;
+        // Check old password and encode the new one on the hashing pool, store it off it
+        return passwordHashingService.submit(() -> passwordEncoder.matches(oldPassword, user.getPassword())
+                        ? passwordEncoder.encode(newPassword) : null)
+                .thenApply(hash -> {
+                    if (hash == null) {
+                        return false;
+                    }
+                    user.setPassword(hash);
+                    userRepository.save(user);
+                    return true;
+                });
     }
 }
@@ -0,0 +1,308 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.GroupRequest;
+import com.example.realchatapplication.dto.MessagePageDTO;
+import com.example.realchatapplication.listener.RoomSubscriptionInterceptor;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.repository.ChatRoomRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Group rooms. Membership lives in {@code chat_rooms} and is cached per room, since every
+ * subscription and every message checks it. A room message is persisted once and published
+ * once to {@link ChatRoom#topicOf(String)}; the broker fans it out to the members' subscriptions,
+ * which {@link com.example.realchatapplication.listener.RoomSubscriptionInterceptor} only lets
+ * members open, and closes again for members who are removed. Behind a broker relay,
+ * membership changes are announced on {@link #ROOM_MEMBERSHIP_TOPIC} so the other nodes drop
+ * their cached copy and the subscriptions they hold for removed members.
+ */
+@Service
+public class ChatRoomService implements SmartInitializingSingleton {
+
+    public static final String ROOMS_QUEUE = "/queue/rooms";
+
+    public static final String ROOM_MEMBERSHIP_TOPIC = "/topic/cluster.rooms";
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatRoomService.class);
+
+    private final ChatRoomRepository chatRoomRepository;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final MessagePersistenceService messagePersistenceService;
+
+    private final MessageService messageService;
+
+    private final UserDirectoryCache userDirectoryCache;
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final RoomSubscriptionInterceptor roomSubscriptionInterceptor;
+
+    private final ListableBeanFactory beanFactory;
+
+    private final int maxMembers;
+
+    // Room id -> members; an unknown room caches as empty
+    private final LoadingCache<String, Set<String>> memberships;
+
+    private volatile boolean clustered;
+
+    private final Counter messagesCounter;
+
+    private final Counter rejectedCounter;
+
+    private final Timer publishTimer;
+
+    public ChatRoomService(ChatRoomRepository chatRoomRepository,
+                           MongoTemplate mongoTemplate,
+                           MessagePersistenceService messagePersistenceService,
+                           MessageService messageService,
+                           UserDirectoryCache userDirectoryCache,
+                           SimpMessageSendingOperations messagingTemplate,
+                           RoomSubscriptionInterceptor roomSubscriptionInterceptor,
+                           ListableBeanFactory beanFactory,
+                           MeterRegistry meterRegistry,
+                           @Value("${chat.rooms.max-members:1000}") int maxMembers,
+                           @Value("${chat.rooms.membership-cache-size:10000}") long cacheSize,
+                           @Value("${chat.rooms.membership-cache-ttl:5m}") Duration cacheTtl) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.messagePersistenceService = messagePersistenceService;
+        this.messageService = messageService;
+        this.userDirectoryCache = userDirectoryCache;
+        this.messagingTemplate = messagingTemplate;
+        this.roomSubscriptionInterceptor = roomSubscriptionInterceptor;
+        this.beanFactory = beanFactory;
+        this.maxMembers = maxMembers;
+        this.memberships = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build(this::loadMembers);
+        CaffeineCacheMetrics.monitor(meterRegistry, memberships, "chat.rooms.membership");
+
+        this.messagesCounter = Counter.builder("chat.rooms.messages").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("chat.rooms.rejected")
+                .description("Room messages, subscriptions and history reads from non-members")
+                .register(meterRegistry);
+        this.publishTimer = Timer.builder("chat.rooms.publish.duration")
+                .description("Persisting a room message and handing it to the broker once")
+                .register(meterRegistry);
+    }
+
+    // Same system-connection subscription as ClusterPresenceTracker, added before the relay starts
+    @Override
+    public void afterSingletonsInstantiated() {
+        StompBrokerRelayMessageHandler relay = beanFactory.getBeanProvider(StompBrokerRelayMessageHandler.class).getIfAvailable();
+        if (relay == null) {
+            return;
+        }
+        clustered = true;
+        Map<String, MessageHandler> subscriptions = new HashMap<>(relay.getSystemSubscriptions());
+        subscriptions.put(ROOM_MEMBERSHIP_TOPIC, this::onRemoteMembershipChange);
+        relay.setSystemSubscriptions(subscriptions);
+    }
+
+    public ChatRoom create(String creator, GroupRequest request) {
+        if (request.getName() == null || request.getName().isBlank()) {
+            throw new IllegalArgumentException("Room name is required");
+        }
+        Set<String> members = new LinkedHashSet<>();
+        members.add(creator);
+        if (request.getMembers() != null) {
+            members.addAll(existingUsers(request.getMembers()));
+        }
+        if (members.size() > maxMembers) {
+            throw new IllegalArgumentException("A room can have at most " + maxMembers + " members");
+        }
+
+        ChatRoom room = chatRoomRepository.insert(
+                new ChatRoom(null, request.getName().strip(), creator, members, LocalDateTime.now()));
+        memberships.put(room.getId(), Set.copyOf(members));
+        notifyMembers(room, members);
+        return room;
+    }
+
+    public List<ChatRoom> getRooms(String username) {
+        return chatRoomRepository.findByMembersOrderByNameAsc(username);
+    }
+
+    // Any member may add people, up to the member limit
+    public ChatRoom addMembers(String roomId, String actor, List<String> usernames) {
+        requireMember(roomId, actor);
+        Set<String> added = new LinkedHashSet<>(existingUsers(usernames));
+        added.removeAll(getMembers(roomId));
+        if (added.isEmpty()) {
+            return chatRoomRepository.findById(roomId).orElseThrow();
+        }
+        // The actor is already in, so this many newcomers can never fit
+        if (added.size() >= maxMembers) {
+            throw new IllegalArgumentException("A room can have at most " + maxMembers + " members");
+        }
+
+        // Only matches while there is room for all of them, so concurrent adds cannot overshoot
+        Query query = new Query(Criteria.where("_id").is(roomId)
+                .and("members." + (maxMembers - added.size())).exists(false));
+        ChatRoom room = mongoTemplate.findAndModify(query,
+                new Update().addToSet("members").each(added.toArray()),
+                FindAndModifyOptions.options().returnNew(true), ChatRoom.class);
+        if (room == null) {
+            throw new IllegalArgumentException("A room can have at most " + maxMembers + " members");
+        }
+
+        membershipChanged(roomId);
+        notifyMembers(room, added);
+        return room;
+    }
+
+    // Members may leave; only the creator may remove someone else
+    public ChatRoom removeMember(String roomId, String actor, String username) {
+        ChatRoom current = chatRoomRepository.findById(roomId)
+                .filter(room -> room.getMembers().contains(actor))
+                .orElseThrow(() -> notAMember(roomId, actor));
+        if (!actor.equals(username) && !actor.equals(current.getCreatedBy())) {
+            throw new AccessDeniedException("Only the room creator can remove other members");
+        }
+
+        ChatRoom room = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(roomId)),
+                new Update().pull("members", username),
+                FindAndModifyOptions.options().returnNew(true), ChatRoom.class);
+
+        // Closes the removed user's open subscriptions; their client also sees itself missing
+        membershipChanged(roomId);
+        notifyMembers(room, Set.of(username));
+        return room;
+    }
+
+    /**
+     * Stores a room message once and publishes it once to the room topic. Returns null, and
+     * stores nothing, when the sender is not a member.
+     */
+    public ChatMessage send(String roomId, ChatMessage chatMessage) {
+        if (roomId == null || !isMember(roomId, chatMessage.getSender())) {
+            rejectedCounter.increment();
+            return null;
+        }
+
+        long start = System.nanoTime();
+        chatMessage.setChatRoomId(roomId);
+        chatMessage.setConversationId(ChatRoom.conversationIdOf(roomId));
+        chatMessage.setRecipient(null);
+        chatMessage.setTimestamp(LocalDateTime.now());
+        if (chatMessage.getType() != ChatMessage.MessageType.FILE) {
+            chatMessage.setType(ChatMessage.MessageType.CHAT);
+        }
+        if (chatMessage.getContent() == null) {
+            chatMessage.setContent("");
+        }
+
+        ChatMessage saved = messagePersistenceService.persist(chatMessage);
+        messagingTemplate.convertAndSend(ChatRoom.topicOf(roomId), saved);
+        publishTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        messagesCounter.increment();
+        return saved;
+    }
+
+    public MessagePageDTO getHistory(String roomId, String username, String before, String after, Integer limit) {
+        requireMember(roomId, username);
+        return messageService.getRoomHistory(roomId, before, after, limit);
+    }
+
+    public boolean isMember(String roomId, String username) {
+        return username != null && getMembers(roomId).contains(username);
+    }
+
+    // Called for every subscription attempt to a room topic
+    public boolean canSubscribe(String roomId, String username) {
+        if (isMember(roomId, username)) {
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    public Set<String> getMembers(String roomId) {
+        return memberships.get(roomId);
+    }
+
+    private Set<String> loadMembers(String roomId) {
+        return chatRoomRepository.findById(roomId)
+                .map(room -> Set.copyOf(room.getMembers()))
+                .orElse(Set.of());
+    }
+
+    private void requireMember(String roomId, String username) {
+        if (!isMember(roomId, username)) {
+            rejectedCounter.increment();
+            throw notAMember(roomId, username);
+        }
+    }
+
+    private static AccessDeniedException notAMember(String roomId, String username) {
+        return new AccessDeniedException(username + " is not a member of room " + roomId);
+    }
+
+    private List<String> existingUsers(List<String> usernames) {
+        return usernames.stream()
+                .filter(username -> username != null && userDirectoryCache.exists(username))
+                .distinct()
+                .toList();
+    }
+
+    private void membershipChanged(String roomId) {
+        memberships.invalidate(roomId);
+        roomSubscriptionInterceptor.revokeNonMembers(roomId);
+        if (clustered) {
+            messagingTemplate.convertAndSend(ROOM_MEMBERSHIP_TOPIC, roomId);
+        }
+    }
+
+    // The payload is the bare room id; strings go through the broker unconverted
+    private void onRemoteMembershipChange(Message<?> message) {
+        if (message.getPayload() instanceof byte[] payload) {
+            String roomId = new String(payload, StandardCharsets.UTF_8);
+            memberships.invalidate(roomId);
+            roomSubscriptionInterceptor.revokeNonMembers(roomId);
+        } else {
+            logger.warn("Ignoring unreadable room membership message {}", message);
+        }
+    }
+
+    private void notifyMembers(ChatRoom room, Set<String> usernames) {
+        for (String username : usernames) {
+            messagingTemplate.convertAndSendToUser(username, ROOMS_QUEUE, room);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.config.ClusterNode;
+import com.example.realchatapplication.dto.PresenceDelta;
+import com.example.realchatapplication.dto.PresenceSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is online on the other nodes, when running behind a broker relay. Each node's deltas on
+ * {@code /topic/presence} and its periodic full state on {@link #CLUSTER_PRESENCE_TOPIC} are
+ * picked up on the relay's shared system connection. Nodes that go quiet for longer than the
+ * node timeout are assumed dead and forgotten. With the simple broker this stays empty.
+ */
+@Service
+public class ClusterPresenceTracker implements SmartInitializingSingleton {
+
+    public static final String CLUSTER_PRESENCE_TOPIC = "/topic/cluster.presence";
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterPresenceTracker.class);
+
+    private final ClusterNode clusterNode;
+
+    private final ObjectMapper objectMapper;
+
+    private final ListableBeanFactory beanFactory;
+
+    private final Duration nodeTimeout;
+
+    private final Map<String, RemoteNode> remoteNodes = new ConcurrentHashMap<>();
+
+    public ClusterPresenceTracker(ClusterNode clusterNode,
+                                  ObjectMapper objectMapper,
+                                  ListableBeanFactory beanFactory,
+                                  @Value("${chat.presence.cluster.node-timeout:35s}") Duration nodeTimeout) {
+        this.clusterNode = clusterNode;
+        this.objectMapper = objectMapper;
+        this.beanFactory = beanFactory;
+        this.nodeTimeout = nodeTimeout;
+    }
+
+    // The relay opens its system connection on start, so the subscriptions must be in place before then
+    @Override
+    public void afterSingletonsInstantiated() {
+        StompBrokerRelayMessageHandler relay = beanFactory.getBeanProvider(StompBrokerRelayMessageHandler.class).getIfAvailable();
+        if (relay == null) {
+            return;
+        }
+        Map<String, MessageHandler> subscriptions = new HashMap<>(relay.getSystemSubscriptions());
+        subscriptions.put(PresenceBroadcaster.PRESENCE_TOPIC, message -> onRemoteDelta(read(message, PresenceDelta.class)));
+        subscriptions.put(CLUSTER_PRESENCE_TOPIC, message -> onRemoteState(read(message, PresenceSnapshot.class)));
+        relay.setSystemSubscriptions(subscriptions);
+    }
+
+    public void onRemoteDelta(PresenceDelta delta) {
+        if (delta == null || clusterNode.getId().equals(delta.getNode())) {
+            return;
+        }
+        remoteNodes.computeIfAbsent(delta.getNode(), node -> new RemoteNode()).apply(delta);
+    }
+
+    public void onRemoteState(PresenceSnapshot state) {
+        if (state == null || clusterNode.getId().equals(state.getNode())) {
+            return;
+        }
+        remoteNodes.computeIfAbsent(state.getNode(), node -> new RemoteNode()).replace(state);
+    }
+
+    public boolean isOnlineElsewhere(String username) {
+        for (RemoteNode node : remoteNodes.values()) {
+            if (node.contains(username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> remoteOnlineUsers() {
+        Set<String> users = new HashSet<>();
+        remoteNodes.values().forEach(node -> node.addUsersTo(users));
+        return users;
+    }
+
+    public List<PresenceSnapshot> remoteSnapshots() {
+        List<PresenceSnapshot> snapshots = new ArrayList<>();
+        remoteNodes.forEach((id, node) -> snapshots.add(node.snapshot(id)));
+        return snapshots;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.cluster.state-interval:10s}")
+    public void expireSilentNodes() {
+        long cutoff = System.nanoTime() - nodeTimeout.toNanos();
+        remoteNodes.entrySet().removeIf(entry -> {
+            boolean silent = entry.getValue().lastHeard() - cutoff < 0;
+            if (silent) {
+                logger.info("Forgetting presence of node {} after {} of silence", entry.getKey(), nodeTimeout);
+            }
+            return silent;
+        });
+    }
+
+    private <T> T read(Message<?> message, Class<T> type) {
+        try {
+            return objectMapper.readValue((byte[]) message.getPayload(), type);
+        } catch (IOException | ClassCastException e) {
+            logger.warn("Ignoring unreadable cluster presence message", e);
+            return null;
+        }
+    }
+
+    private static class RemoteNode {
+        private final Set<String> users = new HashSet<>();
+        private long version;
+        private volatile long lastHeard = System.nanoTime();
+
+        // A missed delta is applied over anyway; the next full state corrects whatever it lost
+        private synchronized void apply(PresenceDelta delta) {
+            lastHeard = System.nanoTime();
+            if (delta.getVersion() <= version) {
+                return;
+            }
+            if (delta.getJoined() != null) {
+                users.addAll(delta.getJoined());
+            }
+            if (delta.getLeft() != null) {
+                delta.getLeft().forEach(users::remove);
+            }
+            version = delta.getVersion();
+        }
+
+        private synchronized void replace(PresenceSnapshot state) {
+            lastHeard = System.nanoTime();
+            if (state.getVersion() < version) {
+                return;
+            }
+            users.clear();
+            if (state.getOnlineUsers() != null) {
+                users.addAll(state.getOnlineUsers());
+            }
+            version = state.getVersion();
+        }
+
+        private synchronized boolean contains(String username) {
+            return users.contains(username);
+        }
+
+        private synchronized void addUsersTo(Set<String> target) {
+            target.addAll(users);
+        }
+
+        private synchronized PresenceSnapshot snapshot(String id) {
+            return new PresenceSnapshot(id, version, new ArrayList<>(users));
+        }
+
+        private long lastHeard() {
+            return lastHeard;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.ConversationPageDTO;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ConversationReceipt.Watermark;
+import com.example.realchatapplication.model.ConversationSummary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Materialized conversation list: one {@link ConversationSummary} per user and counterpart,
+ * holding the last message and an unread count. Summaries are updated from the message
+ * persistence path (inline in sync mode, per batch in write-behind mode), so listing a user's
+ * conversations is a single indexed query.
+ */
+@Service
+public class ConversationSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationSummaryService.class);
+
+    // The order summaries are kept in; ids are same-length lowercase hex, so they compare like ObjectIds
+    private static final Comparator<ChatMessage> MESSAGE_ORDER =
+            Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final int previewLength;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    private final Counter failedCounter;
+
+    private final Timer updateTimer;
+
+    public ConversationSummaryService(MongoTemplate mongoTemplate,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${chat.conversations.preview-length:80}") int previewLength,
+                                      @Value("${chat.conversations.default-page-size:30}") int defaultPageSize,
+                                      @Value("${chat.conversations.max-page-size:100}") int maxPageSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.previewLength = previewLength;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+
+        this.failedCounter = Counter.builder("chat.conversations.update.failed").register(meterRegistry);
+        this.updateTimer = Timer.builder("chat.conversations.update.duration").register(meterRegistry);
+    }
+
+    /**
+     * Applies stored messages, in the order they were stored. Several messages for the same
+     * summary are folded into one upsert. Never throws: the messages are already saved, and a
+     * summary that misses an update is corrected by the next message in that conversation.
+     */
+    public void record(List<ChatMessage> messages) {
+        apply(messages, true);
+    }
+
+    private void apply(List<ChatMessage> messages, boolean countUnread) {
+        Map<String, Change> changes = new LinkedHashMap<>();
+        for (ChatMessage message : messages) {
+            if (message.getRecipient() == null || message.getConversationId() == null) {
+                continue;
+            }
+            Change sent = change(changes, message, message.getSender(), message.getRecipient());
+            Change received = message.getRecipient().equals(message.getSender())
+                    ? null : change(changes, message, message.getRecipient(), message.getSender());
+            if (countUnread) {
+                // Replying counts as having read the conversation
+                sent.reply();
+                if (received != null) {
+                    received.receive();
+                }
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            // Two writes per summary: the upsert creates it and moves the unread count, the guarded
+            // update moves the last message forward only. Either order leaves the same result, so a
+            // batch that lands after a newer one cannot roll the conversation list back.
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ConversationSummary.class);
+            for (Change change : changes.values()) {
+                bulk.upsert(new Query(Criteria.where("_id").is(change.id)), change.toUpsert());
+                bulk.updateOne(change.olderThanLast(), change.toLastMessageUpdate());
+            }
+            bulk.execute();
+        } catch (Exception e) {
+            failedCounter.increment();
+            logger.warn("Failed to update {} conversation summaries", changes.size(), e);
+        }
+        updateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Clears unread counts whose last message the owner has now read. A summary that moved on
+     * past the watermark keeps its count until the next read.
+     */
+    public void markRead(Map<String, Watermark> readBySummaryId) {
+        if (readBySummaryId.isEmpty()) {
+            return;
+        }
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ConversationSummary.class);
+            readBySummaryId.forEach((id, read) -> bulk.updateOne(
+                    new Query(Criteria.where("_id").is(id).orOperator(
+                            Criteria.where("lastMessageAt").lt(read.getTimestamp()),
+                            Criteria.where("lastMessageAt").is(read.getTimestamp()).and("lastMessageId").lte(read.getMessageId()))),
+                    new Update().set("unreadCount", 0)));
+            bulk.execute();
+        } catch (Exception e) {
+            failedCounter.increment();
+            logger.warn("Failed to clear unread counts on {} conversation summaries", readBySummaryId.size(), e);
+        }
+    }
+
+    /**
+     * One page of the user's conversations, most recent first. {@code before} is the
+     * {@code nextCursor} of the previous page.
+     */
+    public ConversationPageDTO getPage(String owner, String before, Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+
+        Criteria criteria = Criteria.where("owner").is(owner);
+        if (before != null) {
+            Cursor cursor = Cursor.parse(before);
+            criteria.orOperator(
+                    Criteria.where("lastMessageAt").lt(cursor.timestamp),
+                    Criteria.where("lastMessageAt").is(cursor.timestamp).and("lastMessageId").lt(cursor.messageId));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "lastMessageAt", "lastMessageId"))
+                .limit(pageSize + 1);
+
+        List<ConversationSummary> conversations = mongoTemplate.find(query, ConversationSummary.class);
+        boolean hasMore = conversations.size() > pageSize;
+        if (hasMore) {
+            conversations = conversations.subList(0, pageSize);
+        }
+
+        ConversationSummary last = conversations.isEmpty() ? null : conversations.get(conversations.size() - 1);
+        String nextCursor = hasMore ? last.getLastMessageAt() + "_" + last.getLastMessageId() : null;
+        return new ConversationPageDTO(conversations, hasMore, nextCursor);
+    }
+
+    /**
+     * Builds summaries for conversations that predate this collection, from the newest message
+     * of each. Only runs while the collection is empty. Summaries it creates start with no unread
+     * messages; ones that live traffic created in the meantime keep their counts.
+     */
+    public void backfill() {
+        if (mongoTemplate.exists(new Query(), ConversationSummary.class)) {
+            return;
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("conversationId").ne(null).and("recipient").ne(null)),
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "conversationId")
+                        .and(Sort.by(Sort.Direction.DESC, "timestamp", "_id"))),
+                Aggregation.group("conversationId").first("$$ROOT").as("message"))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        List<ChatMessage> batch = new ArrayList<>();
+        int[] total = new int[1];
+        mongoTemplate.aggregateStream(aggregation, ChatMessage.class, Document.class).forEach(result -> {
+            batch.add(mongoTemplate.getConverter().read(ChatMessage.class, result.get("message", Document.class)));
+            if (batch.size() >= 500) {
+                total[0] += batch.size();
+                apply(batch, false);
+                batch.clear();
+            }
+        });
+        total[0] += batch.size();
+        apply(batch, false);
+
+        if (total[0] > 0) {
+            logger.info("Backfilled conversation summaries for {} conversations", total[0]);
+        }
+    }
+
+    private Change change(Map<String, Change> changes, ChatMessage message, String owner, String counterpart) {
+        String id = ConversationSummary.idOf(message.getConversationId(), owner);
+        Change change = changes.computeIfAbsent(id, key -> new Change(key, owner, counterpart, message.getConversationId()));
+        // Batch order is not message order: senders pick their own timestamps and batches interleave
+        if (change.last == null || MESSAGE_ORDER.compare(message, change.last) > 0) {
+            change.last = message;
+        }
+        return change;
+    }
+
+    private String previewOf(ChatMessage message) {
+        String text = message.getContent() == null ? "" : message.getContent().strip();
+        if (text.isEmpty() && message.getType() == ChatMessage.MessageType.FILE && message.getFileUrl() != null) {
+            text = fileNameOf(message.getFileUrl());
+        }
+        return text.length() > previewLength ? text.substring(0, previewLength) : text;
+    }
+
+    // Server-side uploads store no content; their key is uploads/<millis>_<original name>
+    private static String fileNameOf(String fileUrl) {
+        String name = fileUrl.substring(fileUrl.lastIndexOf('/') + 1);
+        int query = name.indexOf('?');
+        if (query >= 0) {
+            name = name.substring(0, query);
+        }
+        name = URLDecoder.decode(name, StandardCharsets.UTF_8);
+        return name.replaceFirst("^\\d+_", "");
+    }
+
+    // Everything one batch does to one summary
+    private class Change {
+        private final String id;
+        private final String owner;
+        private final String counterpart;
+        private final String conversationId;
+        private ChatMessage last;
+        private boolean reset;
+        private int received;
+
+        private Change(String id, String owner, String counterpart, String conversationId) {
+            this.id = id;
+            this.owner = owner;
+            this.counterpart = counterpart;
+            this.conversationId = conversationId;
+        }
+
+        private void reply() {
+            reset = true;
+            received = 0;
+        }
+
+        private void receive() {
+            received++;
+        }
+
+        private Update toUpsert() {
+            // The last message is only written here when this creates the summary
+            Update update = new Update()
+                    .set("owner", owner)
+                    .set("counterpart", counterpart)
+                    .set("conversationId", conversationId)
+                    .setOnInsert("lastMessageId", last.getId())
+                    .setOnInsert("lastSender", last.getSender())
+                    .setOnInsert("lastMessageType", last.getType())
+                    .setOnInsert("lastMessagePreview", previewOf(last))
+                    .setOnInsert("lastMessageAt", last.getTimestamp());
+            if (reset) {
+                update.set("unreadCount", received);
+            } else {
+                update.inc("unreadCount", received);
+            }
+            return update;
+        }
+
+        private Query olderThanLast() {
+            return new Query(Criteria.where("_id").is(id).orOperator(
+                    Criteria.where("lastMessageAt").lt(last.getTimestamp()),
+                    Criteria.where("lastMessageAt").is(last.getTimestamp()).and("lastMessageId").lt(last.getId())));
+        }
+
+        private Update toLastMessageUpdate() {
+            return new Update()
+                    .set("lastMessageId", last.getId())
+                    .set("lastSender", last.getSender())
+                    .set("lastMessageType", last.getType())
+                    .set("lastMessagePreview", previewOf(last))
+                    .set("lastMessageAt", last.getTimestamp());
+        }
+    }
+
+    private static class Cursor {
+        private final LocalDateTime timestamp;
+        private final String messageId;
+
+        private Cursor(LocalDateTime timestamp, String messageId) {
+            this.timestamp = timestamp;
+            this.messageId = messageId;
+        }
+
+        private static Cursor parse(String value) {
+            int separator = value.lastIndexOf('_');
+            try {
+                return new Cursor(LocalDateTime.parse(value.substring(0, separator)), value.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + value);
+            }
+        }
+    }
+}
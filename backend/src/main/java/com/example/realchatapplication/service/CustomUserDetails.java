@@ -2,8 +2,14 @@ package com.example.realchatapplication.service;
 
 import com.example.realchatapplication.model.User;
 import com.example.realchatapplication.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -11,16 +17,27 @@ import org.springframework.stereotype.Service;
 import java.util.Collections;
 
 @Service
-public class CustomUserDetails implements UserDetailsService {
+public class CustomUserDetails implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
 
-        User user = userRepository.findByEmail(email).orElseThrow(() -> new RuntimeException("User not found with email"+email));
+        User user = userRepository.findByEmail(email).orElseThrow(() -> new UsernameNotFoundException("User not found with email " + email));
+
+        return detailsOf(user);
+    }
 
+    // For callers that already loaded the user, so they need not look it up again
+    static UserDetails detailsOf(User user) {
         return org.springframework.security.core.userdetails.User.builder()
                 .username(user.getEmail())
                 .password(user.getPassword())
@@ -31,4 +48,17 @@ public class CustomUserDetails implements UserDetailsService {
                 .disabled(false)
                 .build();
     }
+
+    // Called after a successful login whose stored hash is weaker than the current encoder's
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        // Only the hash, so a profile update racing the login is not overwritten
+        mongoTemplate.updateFirst(new Query(Criteria.where("email").is(user.getUsername())),
+                Update.update("password", newPassword), User.class);
+        meterRegistry.counter("auth.password.rehashes").increment();
+
+        return org.springframework.security.core.userdetails.User.withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
 }
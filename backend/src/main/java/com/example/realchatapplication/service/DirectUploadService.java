@@ -0,0 +1,220 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.PresignUploadRequest;
+import com.example.realchatapplication.dto.PresignUploadResponse;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Chat files uploaded straight from the browser to S3. We sign a PUT for a key we choose,
+ * then turn the object into a FILE message once the client reports it is there.
+ */
+@Service
+public class DirectUploadService {
+
+    private static final int MAX_FILE_NAME_LENGTH = 100;
+
+    private final S3Presigner s3Presigner;
+
+    private final S3Client s3Client;
+
+    private final UserService userService;
+
+    private final MessagePersistenceService messagePersistenceService;
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final OfflineDeliveryService offlineDeliveryService;
+
+    @Value("${aws.s3.bucket}")
+    private String bucketName;
+
+    private final Duration urlTtl;
+
+    private final long maxSize;
+
+    private final List<String> allowedContentTypes;
+
+    // Keys we have signed but not yet seen completed; anything else is refused on completion
+    private final Cache<String, PendingUpload> pendingUploads;
+
+    private final Counter presignedCounter;
+
+    private final Counter completedCounter;
+
+    public DirectUploadService(S3Presigner s3Presigner,
+                               S3Client s3Client,
+                               UserService userService,
+                               MessagePersistenceService messagePersistenceService,
+                               SimpMessagingTemplate messagingTemplate,
+                               OfflineDeliveryService offlineDeliveryService,
+                               MeterRegistry meterRegistry,
+                               @Value("${aws.s3.direct-upload.url-ttl:5m}") Duration urlTtl,
+                               @Value("${aws.s3.direct-upload.pending-ttl:30m}") Duration pendingTtl,
+                               @Value("${aws.s3.direct-upload.max-pending:100000}") long maxPending,
+                               @Value("${aws.s3.direct-upload.max-size:100MB}") DataSize maxSize,
+                               @Value("${aws.s3.direct-upload.allowed-content-types:image/*,application/pdf}") List<String> allowedContentTypes) {
+        this.s3Presigner = s3Presigner;
+        this.s3Client = s3Client;
+        this.userService = userService;
+        this.messagePersistenceService = messagePersistenceService;
+        this.messagingTemplate = messagingTemplate;
+        this.offlineDeliveryService = offlineDeliveryService;
+        this.urlTtl = urlTtl;
+        this.maxSize = maxSize.toBytes();
+        this.allowedContentTypes = allowedContentTypes;
+        this.pendingUploads = Caffeine.newBuilder()
+                .maximumSize(maxPending)
+                .expireAfterWrite(pendingTtl)
+                .build();
+        this.presignedCounter = Counter.builder("s3.direct-upload.presigned").register(meterRegistry);
+        this.completedCounter = Counter.builder("s3.direct-upload.completed").register(meterRegistry);
+    }
+
+    public PresignUploadResponse presign(User sender, PresignUploadRequest request) {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new IllegalArgumentException("fileName is required");
+        }
+        if (request.getSize() <= 0 || request.getSize() > maxSize) {
+            throw new IllegalArgumentException("File size must be between 1 and " + maxSize + " bytes");
+        }
+        if (!isAllowedContentType(request.getContentType())) {
+            throw new IllegalArgumentException("Content type not allowed: " + request.getContentType());
+        }
+        if (request.getRecipient() == null || !userService.userExists(request.getRecipient())) {
+            throw new IllegalArgumentException("Recipient does not exist");
+        }
+
+        String key = "uploads/" + UUID.randomUUID() + "/" + safeFileName(request.getFileName());
+
+        // Content type and length are signed, so S3 rejects a PUT that differs from what we approved.
+        // The ACL is signed too: the fileUrl we store is the plain object URL, like server-side uploads.
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(request.getContentType())
+                .contentLength(request.getSize())
+                .build();
+
+        PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(builder -> builder
+                .signatureDuration(urlTtl)
+                .putObjectRequest(putObjectRequest));
+
+        pendingUploads.put(key, new PendingUpload(sender.getId(), request.getRecipient(), request.getFileName(),
+                request.getContentType(), request.getSize(), request.getColor()));
+        presignedCounter.increment();
+
+        // The client must send these (x-amz-acl included) verbatim. The browser sets Host and
+        // Content-Length itself and refuses to let us override them.
+        Map<String, String> headers = new HashMap<>();
+        presigned.signedHeaders().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("host") && !name.equalsIgnoreCase("content-length")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+
+        return new PresignUploadResponse(key, presigned.url().toExternalForm(), headers, presigned.expiration());
+    }
+
+    /**
+     * Checks the object landed as signed, then stores and delivers the FILE message.
+     * Each key can be completed once.
+     */
+    public ChatMessage complete(User sender, String key) {
+        PendingUpload pending = key == null ? null : pendingUploads.getIfPresent(key);
+        if (pending == null || !pending.getSenderId().equals(sender.getId())) {
+            throw new IllegalStateException("Unknown or expired upload");
+        }
+
+        HeadObjectResponse head;
+        try {
+            head = s3Client.headObject(builder -> builder.bucket(bucketName).key(key));
+        } catch (NoSuchKeyException e) {
+            throw new IllegalStateException("Upload has not reached storage yet");
+        }
+        if (head.contentLength() == null || head.contentLength() != pending.getSize()) {
+            throw new IllegalStateException("Uploaded object does not match the signed size");
+        }
+
+        // Guards against two completion calls racing for the same key
+        if (!pendingUploads.asMap().remove(key, pending)) {
+            throw new IllegalStateException("Upload already completed");
+        }
+
+        String fileUrl = s3Client.utilities().getUrl(builder -> builder.bucket(bucketName).key(key)).toExternalForm();
+
+        ChatMessage message = new ChatMessage();
+        message.setSender(sender.getUsername());
+        message.setRecipient(pending.getRecipient());
+        message.setContent(pending.getFileName());
+        message.setFileUrl(fileUrl);
+        message.setType(ChatMessage.MessageType.FILE);
+        message.setColor(pending.getColor());
+        message.setTimestamp(LocalDateTime.now());
+        message.setConversationId(ChatMessage.conversationIdOf(message.getSender(), message.getRecipient()));
+
+        ChatMessage savedMessage = messagePersistenceService.persist(message);
+        completedCounter.increment();
+
+        offlineDeliveryService.recordIfOffline(savedMessage);
+        messagingTemplate.convertAndSendToUser(savedMessage.getRecipient(), "/queue/private", savedMessage);
+        messagingTemplate.convertAndSendToUser(savedMessage.getSender(), "/queue/private", savedMessage);
+
+        return savedMessage;
+    }
+
+    private boolean isAllowedContentType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        for (String allowed : allowedContentTypes) {
+            String pattern = allowed.trim().toLowerCase();
+            if (pattern.endsWith("/*") ? type.startsWith(pattern.substring(0, pattern.length() - 1)) : type.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String safeFileName(String fileName) {
+        String name = fileName.replaceAll("[^A-Za-z0-9._-]", "_");
+        return name.length() > MAX_FILE_NAME_LENGTH ? name.substring(name.length() - MAX_FILE_NAME_LENGTH) : name;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PendingUpload {
+        private final String senderId;
+        private final String recipient;
+        private final String fileName;
+        private final String contentType;
+        private final long size;
+        private final String color;
+    }
+}
@@ -1,14 +1,23 @@
 package com.example.realchatapplication.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class ImageService {
@@ -21,34 +30,68 @@ public class ImageService {
     @Value("${aws.region}")
     private String region;
 
+    private final S3StreamingUploader s3StreamingUploader;
+
     private final S3Client s3Client;
 
+    // Uploads run here rather than on Tomcat workers, so a slow object store only backs up this queue
+    private final ThreadPoolExecutor uploadExecutor;
+
+    private final Counter rejectedUploads;
 
-    public ImageService(S3Client s3Client){
+
+    public ImageService(S3Client s3Client, S3StreamingUploader s3StreamingUploader, MeterRegistry meterRegistry,
+                        @Value("${aws.s3.upload.max-concurrent:16}") int maxConcurrentUploads,
+                        @Value("${aws.s3.upload.queue-capacity:64}") int queueCapacity){
         this.s3Client=s3Client;
+        this.s3StreamingUploader=s3StreamingUploader;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.uploadExecutor = new ThreadPoolExecutor(maxConcurrentUploads, maxConcurrentUploads,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "s3-upload-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.uploadExecutor.allowCoreThreadTimeOut(true);
+
+        this.rejectedUploads = Counter.builder("s3.upload.rejected")
+                .description("Uploads refused because the upload queue was full")
+                .register(meterRegistry);
+        new ExecutorServiceMetrics(uploadExecutor, "s3.upload", Tags.empty()).bindTo(meterRegistry);
     }
 
     public String uploadFile(MultipartFile file) {
-        try {
-            String key = "uploads/" + System.currentTimeMillis() + "_" + file.getOriginalFilename();
-
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .acl(ObjectCannedACL.PUBLIC_READ)
-                    .contentType(file.getContentType())
-                    .build();
-
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
-
-
-            return s3Client.utilities().getUrl(builder -> builder.bucket(bucketName).key(key)).toExternalForm();
+        String key = "uploads/" + System.currentTimeMillis() + "_" + file.getOriginalFilename();
 
+        // Multipart files are spooled to disk by the servlet container, so this streams from there
+        try (InputStream content = file.getInputStream()) {
+            s3StreamingUploader.upload(bucketName, key, file.getContentType(), content, file.getSize());
         } catch (IOException e) {
             throw new RuntimeException("Failed to upload file to S3", e);
         }
+
+        return s3Client.utilities().getUrl(builder -> builder.bucket(bucketName).key(key)).toExternalForm();
+    }
+
+    /**
+     * Uploads on the bounded upload pool. When the pool and its queue are full the future
+     * fails straight away with {@link RejectedExecutionException}.
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file) {
+        try {
+            return CompletableFuture.supplyAsync(() -> uploadFile(file), uploadExecutor);
+        } catch (RejectedExecutionException e) {
+            rejectedUploads.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdown();
     }
 
 
 }
-
@@ -0,0 +1,281 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Single entry point for storing chat messages; ids are always assigned here. In the
+ * default "sync" mode this is a plain repository save. In "write-behind" mode the message
+ * gets its id up front, the caller can deliver it straight away, and a background writer
+ * stores queued messages in batches.
+ */
+@Service
+public class MessagePersistenceService implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessagePersistenceService.class);
+
+    private final ChatMessageRepository chatMessageRepository;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ConversationSummaryService conversationSummaryService;
+
+    private final boolean writeBehind;
+
+    private final int batchSize;
+
+    private final Duration linger;
+
+    private final Duration offerTimeout;
+
+    private final BlockingQueue<PendingMessage> queue;
+
+    private final Counter persistedCounter;
+
+    private final Counter failedCounter;
+
+    private final Counter overflowCounter;
+
+    private final DistributionSummary batchSizeSummary;
+
+    private final Timer batchWriteTimer;
+
+    private final Timer lagTimer;
+
+    private final Timer persistTimer;
+
+    private volatile boolean running;
+
+    // Enqueues hold the read lock; stop() takes the write lock to close the queue
+    private final ReadWriteLock enqueueLock = new ReentrantReadWriteLock();
+
+    private Thread writerThread;
+
+    public MessagePersistenceService(ChatMessageRepository chatMessageRepository,
+                                     MongoTemplate mongoTemplate,
+                                     ConversationSummaryService conversationSummaryService,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${chat.persistence.mode:sync}") String mode,
+                                     @Value("${chat.persistence.queue-capacity:10000}") int queueCapacity,
+                                     @Value("${chat.persistence.batch-size:200}") int batchSize,
+                                     @Value("${chat.persistence.linger:50ms}") Duration linger,
+                                     @Value("${chat.persistence.offer-timeout:100ms}") Duration offerTimeout) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.conversationSummaryService = conversationSummaryService;
+        this.writeBehind = "write-behind".equalsIgnoreCase(mode);
+        this.batchSize = batchSize;
+        this.linger = linger;
+        this.offerTimeout = offerTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.persistedCounter = Counter.builder("chat.messages.persisted")
+                .tag("mode", writeBehind ? "write-behind" : "sync")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("chat.messages.persist.failed").register(meterRegistry);
+        this.overflowCounter = Counter.builder("chat.messages.persist.overflow")
+                .description("Messages written inline because the write-behind queue stayed full")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("chat.messages.persist.batch.size").register(meterRegistry);
+        this.batchWriteTimer = Timer.builder("chat.messages.persist.batch.duration").register(meterRegistry);
+        this.lagTimer = Timer.builder("chat.messages.persist.lag")
+                .description("Time between a message being accepted and it being stored")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.persistTimer = Timer.builder("chat.messages.persist.duration")
+                .description("Time a sender waits in persist: the save in sync mode, the enqueue in write-behind mode")
+                .tag("mode", writeBehind ? "write-behind" : "sync")
+                .register(meterRegistry);
+        Gauge.builder("chat.messages.persist.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    public ChatMessage persist(ChatMessage chatMessage) {
+        long start = System.nanoTime();
+        try {
+            return store(chatMessage);
+        } finally {
+            persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ChatMessage store(ChatMessage chatMessage) {
+        // Never keep a client-supplied id: it could name someone else's message and overwrite it
+        chatMessage.setId(new ObjectId().toHexString());
+        if (writeBehind) {
+            enqueueLock.readLock().lock();
+            try {
+                // Checked under the lock, so stop() cannot drain the queue between this check and the offer
+                if (running) {
+                    if (queue.offer(new PendingMessage(chatMessage, System.nanoTime()), offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                        return chatMessage;
+                    }
+                    // Queue is still full: slow this sender down by writing inline rather than dropping
+                    overflowCounter.increment();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                enqueueLock.readLock().unlock();
+            }
+        }
+
+        ChatMessage saved = chatMessageRepository.save(chatMessage);
+        persistedCounter.increment();
+        conversationSummaryService.record(List.of(saved));
+        return saved;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    @Override
+    public void start() {
+        if (!writeBehind) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::drainLoop, "chat-message-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Write-behind message persistence started (batch size {}, linger {})", batchSize, linger);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        // Once this returns, persist() writes synchronously, so nothing is queued after the final drain
+        enqueueLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            enqueueLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join(Duration.ofSeconds(30).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything the writer left behind if it did not finish in time
+        List<PendingMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            writeBatch(remaining);
+        }
+        logger.info("Write-behind message persistence stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void drainLoop() {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(linger.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Wait up to the linger time for the batch to fill
+                long deadline = System.nanoTime() + linger.toNanos();
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                logger.error("Unexpected error in message writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        List<ChatMessage> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+
+        List<ChatMessage> stored = messages;
+        long start = System.nanoTime();
+        try {
+            mongoTemplate.insert(messages, ChatMessage.class);
+        } catch (Exception e) {
+            // Part of the batch may already be stored. Ids are assigned here, so a duplicate key on
+            // retry means this message is one of those, not someone else's
+            logger.warn("Batch insert of {} messages failed, retrying individually", messages.size(), e);
+            stored = new ArrayList<>(messages.size());
+            for (ChatMessage message : messages) {
+                try {
+                    stored.add(mongoTemplate.insert(message));
+                } catch (DuplicateKeyException alreadyStored) {
+                    stored.add(message);
+                } catch (Exception retryError) {
+                    failedCounter.increment();
+                    logger.error("Failed to persist message {}", message.getId(), retryError);
+                }
+            }
+        }
+        long end = System.nanoTime();
+
+        batchWriteTimer.record(end - start, TimeUnit.NANOSECONDS);
+        batchSizeSummary.record(batch.size());
+        persistedCounter.increment(stored.size());
+        for (PendingMessage pending : batch) {
+            lagTimer.record(end - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+        }
+
+        conversationSummaryService.record(stored);
+    }
+
+    private static class PendingMessage {
+        private final ChatMessage message;
+        private final long enqueuedAt;
+
+        private PendingMessage(ChatMessage message, long enqueuedAt) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.MessageSearchHitDTO;
+import com.example.realchatapplication.dto.MessageSearchHitDTO.Highlight;
+import com.example.realchatapplication.dto.MessageSearchPageDTO;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ChatRoom;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search over the messages of conversations the caller takes part in: their private
+ * chats and the rooms they are a member of. Backed by the text index on {@code content}, which
+ * Mongo keeps current on every insert. Results are newest first and paged by (timestamp, _id),
+ * like history.
+ * <p>
+ * Limit: a {@code $text} query is always driven by the text index, so no other index can serve
+ * the scope or the order. Mongo reads every message in the collection that contains the terms,
+ * keeps the ones in the caller's conversations and sorts those in memory, holding only one page
+ * of them at a time. The cost therefore grows with how common the terms are across all users,
+ * not with the page size; {@code chat.search.max-time} aborts queries that get too expensive.
+ * Relevance order ({@code textScore}) would not avoid that read, and could not be paged by key.
+ */
+@Service
+public class MessageSearchService {
+
+    private static final Pattern TERM = Pattern.compile("\"([^\"]+)\"|(-?)([\\p{L}\\p{N}]+)");
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ChatRoomService chatRoomService;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    private final int maxQueryLength;
+
+    private final int snippetLength;
+
+    private final Duration maxTime;
+
+    private final Timer searchTimer;
+
+    public MessageSearchService(MongoTemplate mongoTemplate,
+                                ChatRoomService chatRoomService,
+                                MeterRegistry meterRegistry,
+                                @Value("${chat.search.default-page-size:20}") int defaultPageSize,
+                                @Value("${chat.search.max-page-size:50}") int maxPageSize,
+                                @Value("${chat.search.max-query-length:200}") int maxQueryLength,
+                                @Value("${chat.search.snippet-length:120}") int snippetLength,
+                                @Value("${chat.search.max-time:2s}") Duration maxTime) {
+        this.mongoTemplate = mongoTemplate;
+        this.chatRoomService = chatRoomService;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxQueryLength = maxQueryLength;
+        this.snippetLength = snippetLength;
+        this.maxTime = maxTime;
+        this.searchTimer = Timer.builder("chat.search.duration").register(meterRegistry);
+    }
+
+    /**
+     * @param with    only the private conversation with this user
+     * @param roomId  only this room; the caller must be a member
+     * @param sender  only messages from this user
+     * @param from    ISO-8601, inclusive
+     * @param to      ISO-8601, exclusive
+     * @param before  {@code nextCursor} of the previous page
+     */
+    public MessageSearchPageDTO search(String username, String text, String with, String roomId, String sender,
+                                       String from, String to, String before, Integer limit) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Search text is required");
+        }
+        if (text.length() > maxQueryLength) {
+            throw new IllegalArgumentException("Search text is limited to " + maxQueryLength + " characters");
+        }
+        if (with != null && roomId != null) {
+            throw new IllegalArgumentException("Only one of 'with' or 'roomId' may be given");
+        }
+        int pageSize = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+
+        List<Criteria> filters = new ArrayList<>();
+        filters.add(scope(username, with, roomId));
+        if (sender != null) {
+            filters.add(Criteria.where("sender").is(sender));
+        }
+        if (from != null) {
+            filters.add(Criteria.where("timestamp").gte(parseTime(from)));
+        }
+        if (to != null) {
+            filters.add(Criteria.where("timestamp").lt(parseTime(to)));
+        }
+        if (before != null) {
+            filters.add(keysetBefore(before));
+        }
+
+        Query query = new Query(new Criteria().andOperator(filters))
+                .addCriteria(TextCriteria.forDefaultLanguage().matching(text))
+                .with(Sort.by(Sort.Direction.DESC, "timestamp", "_id"))
+                .limit(pageSize + 1)
+                .maxTime(maxTime);
+
+        long start = System.nanoTime();
+        List<ChatMessage> messages = mongoTemplate.find(query, ChatMessage.class);
+        searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = messages.subList(0, pageSize);
+        }
+
+        List<Pattern> terms = highlightTerms(text);
+        List<MessageSearchHitDTO> hits = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            hits.add(hit(message, terms));
+        }
+        String nextCursor = hasMore ? messages.get(messages.size() - 1).getId() : null;
+        return new MessageSearchPageDTO(hits, hasMore, nextCursor);
+    }
+
+    // Private messages sent or received by the user, plus the rooms they are in
+    private Criteria scope(String username, String with, String roomId) {
+        if (with != null) {
+            return Criteria.where("conversationId").is(ChatMessage.conversationIdOf(username, with));
+        }
+        if (roomId != null) {
+            if (!chatRoomService.isMember(roomId, username)) {
+                throw new AccessDeniedException(username + " is not a member of room " + roomId);
+            }
+            return Criteria.where("conversationId").is(ChatRoom.conversationIdOf(roomId));
+        }
+
+        List<String> rooms = chatRoomService.getRooms(username).stream()
+                .map(room -> ChatRoom.conversationIdOf(room.getId()))
+                .toList();
+        return new Criteria().orOperator(
+                Criteria.where("sender").is(username).and("recipient").ne(null),
+                Criteria.where("recipient").is(username),
+                Criteria.where("conversationId").in(rooms));
+    }
+
+    private Criteria keysetBefore(String cursor) {
+        if (!ObjectId.isValid(cursor)) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        ChatMessage anchor = mongoTemplate.findById(cursor, ChatMessage.class);
+        if (anchor == null) {
+            throw new IllegalArgumentException("Unknown cursor message: " + cursor);
+        }
+        return new Criteria().orOperator(
+                Criteria.where("timestamp").lt(anchor.getTimestamp()),
+                Criteria.where("timestamp").is(anchor.getTimestamp()).and("_id").lt(new ObjectId(anchor.getId())));
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Expected an ISO-8601 date-time: " + value);
+        }
+    }
+
+    // Quoted phrases and plain words from the query; negated words are not highlighted
+    static List<Pattern> highlightTerms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        Matcher matcher = TERM.matcher(text);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                terms.add(matcher.group(1).strip());
+            } else if (matcher.group(2).isEmpty()) {
+                terms.add(matcher.group(3));
+            }
+        }
+        List<Pattern> patterns = new ArrayList<>();
+        for (String term : terms) {
+            if (!term.isEmpty()) {
+                patterns.add(Pattern.compile("(?<![\\p{L}\\p{N}])" + Pattern.quote(term) + "(?![\\p{L}\\p{N}])",
+                        Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+            }
+        }
+        return patterns;
+    }
+
+    MessageSearchHitDTO hit(ChatMessage message, List<Pattern> terms) {
+        String content = message.getContent() == null ? "" : message.getContent();
+
+        List<Highlight> matches = new ArrayList<>();
+        for (Pattern term : terms) {
+            Matcher matcher = term.matcher(content);
+            while (matcher.find()) {
+                matches.add(new Highlight(matcher.start(), matcher.end()));
+            }
+        }
+        // Earliest first; of two starting together, the longer (a phrase over its first word)
+        matches.sort(Comparator.comparingInt(Highlight::getStart)
+                .thenComparing(Comparator.comparingInt(Highlight::getEnd).reversed()));
+
+        // A window starting a little before the first match
+        int first = matches.isEmpty() ? 0 : matches.get(0).getStart();
+        int start = Math.max(0, Math.min(first - snippetLength / 4, content.length() - snippetLength));
+        int end = Math.min(content.length(), start + snippetLength);
+        String prefix = start > 0 ? "…" : "";
+        String snippet = prefix + content.substring(start, end) + (end < content.length() ? "…" : "");
+
+        List<Highlight> highlights = new ArrayList<>();
+        int covered = start;
+        for (Highlight match : matches) {
+            // Inside the window and not overlapping the previous highlight
+            if (match.getStart() >= covered && match.getEnd() <= end) {
+                highlights.add(new Highlight(match.getStart() - start + prefix.length(), match.getEnd() - start + prefix.length()));
+                covered = match.getEnd();
+            }
+        }
+        return new MessageSearchHitDTO(message, snippet, highlights);
+    }
+}
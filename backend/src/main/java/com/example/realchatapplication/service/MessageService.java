@@ -0,0 +1,116 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.MessagePageDTO;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.repository.ChatMessageRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Service
+public class MessageService {
+
+    // Sentinels so a bare timestamp cursor can reuse the (timestamp, _id) keyset queries
+    private static final ObjectId MIN_ID = new ObjectId("000000000000000000000000");
+    private static final ObjectId MAX_ID = new ObjectId("ffffffffffffffffffffffff");
+
+    private final ChatMessageRepository chatMessageRepository;
+
+    @Value("${chat.history.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${chat.history.max-page-size:200}")
+    private int maxPageSize;
+
+    public MessageService(ChatMessageRepository chatMessageRepository) {
+        this.chatMessageRepository = chatMessageRepository;
+    }
+
+    /**
+     * One page of a private conversation, newest first. {@code before} and {@code after}
+     * accept either a message id or an ISO-8601 timestamp; at most one may be given.
+     */
+    public MessagePageDTO getPrivateHistory(String user1, String user2, String before, String after, Integer limit) {
+        return getHistory(ChatMessage.conversationIdOf(user1, user2), before, after, limit);
+    }
+
+    // Same paging as private history; membership is checked by the caller
+    public MessagePageDTO getRoomHistory(String roomId, String before, String after, Integer limit) {
+        return getHistory(ChatRoom.conversationIdOf(roomId), before, after, limit);
+    }
+
+    private MessagePageDTO getHistory(String conversationId, String before, String after, Integer limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Only one of 'before' or 'after' may be given");
+        }
+
+        int pageSize = resolvePageSize(limit);
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+
+        List<ChatMessage> messages;
+        if (after != null) {
+            Cursor cursor = resolveCursor(conversationId, after, MAX_ID);
+            messages = new ArrayList<>(chatMessageRepository.findInConversationAfter(
+                    conversationId, cursor.timestamp, cursor.id, pageable));
+        } else if (before != null) {
+            Cursor cursor = resolveCursor(conversationId, before, MIN_ID);
+            messages = new ArrayList<>(chatMessageRepository.findInConversationBefore(
+                    conversationId, cursor.timestamp, cursor.id, pageable));
+        } else {
+            messages = new ArrayList<>(chatMessageRepository.findLatestInConversation(conversationId, pageable));
+        }
+
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = messages.subList(0, pageSize);
+        }
+        if (after != null) {
+            // "after" pages are read oldest first, flip them to match the other directions
+            Collections.reverse(messages);
+        }
+
+        String nextCursor = messages.isEmpty() ? null : messages.get(messages.size() - 1).getId();
+        String prevCursor = messages.isEmpty() ? null : messages.get(0).getId();
+        return new MessagePageDTO(messages, hasMore, nextCursor, prevCursor);
+    }
+
+    private int resolvePageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return defaultPageSize;
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    private Cursor resolveCursor(String conversationId, String value, ObjectId tieBreaker) {
+        if (ObjectId.isValid(value)) {
+            ChatMessage anchor = chatMessageRepository.findById(value)
+                    .filter(message -> conversationId.equals(message.getConversationId()))
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown cursor message: " + value));
+            return new Cursor(anchor.getTimestamp(), new ObjectId(anchor.getId()));
+        }
+        try {
+            return new Cursor(LocalDateTime.parse(value), tieBreaker);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor must be a message id or an ISO-8601 timestamp: " + value);
+        }
+    }
+
+    private static class Cursor {
+        private final LocalDateTime timestamp;
+        private final ObjectId id;
+
+        private Cursor(LocalDateTime timestamp, ObjectId id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+    }
+}
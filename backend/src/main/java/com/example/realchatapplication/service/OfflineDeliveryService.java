@@ -0,0 +1,157 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.OfflineSyncBatch;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ConversationReceipt;
+import com.example.realchatapplication.model.ConversationReceipt.Watermark;
+import com.example.realchatapplication.model.PendingDelivery;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Private messages sent while the recipient is offline are recorded here and handed over in
+ * batches on {@code /user/queue/sync} when the recipient joins again. A reconnecting client
+ * then needs one incremental sync instead of re-reading the history of every conversation.
+ * Entries stay until the recipient's delivered watermark passes them, so a sync that never
+ * reaches the client is simply repeated on the next join.
+ */
+@Service
+public class OfflineDeliveryService {
+
+    public static final String SYNC_QUEUE = "/queue/sync";
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineDeliveryService.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final OnlineUserService onlineUserService;
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final int batchSize;
+
+    private final Counter queuedCounter;
+
+    private final Counter deliveredCounter;
+
+    private final Counter acknowledgedCounter;
+
+    private final DistributionSummary syncSizeSummary;
+
+    public OfflineDeliveryService(MongoTemplate mongoTemplate,
+                                  OnlineUserService onlineUserService,
+                                  SimpMessageSendingOperations messagingTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${chat.offline.sync-batch-size:200}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.onlineUserService = onlineUserService;
+        this.messagingTemplate = messagingTemplate;
+        this.batchSize = batchSize;
+
+        this.queuedCounter = Counter.builder("chat.offline.queued").register(meterRegistry);
+        this.deliveredCounter = Counter.builder("chat.offline.delivered").register(meterRegistry);
+        this.acknowledgedCounter = Counter.builder("chat.offline.acknowledged").register(meterRegistry);
+        this.syncSizeSummary = DistributionSummary.builder("chat.offline.sync.size")
+                .description("Messages handed over in one reconnect sync")
+                .register(meterRegistry);
+    }
+
+    // Call before the live send, so a recipient who joins in between finds it in their sync
+    public void recordIfOffline(ChatMessage message) {
+        if (onlineUserService.isOnline(message.getRecipient())) {
+            return;
+        }
+        mongoTemplate.insert(new PendingDelivery(null, message.getRecipient(), LocalDateTime.now(), message));
+        queuedCounter.increment();
+    }
+
+    /**
+     * Sends everything pending for the user, oldest first, in batches. Nothing is removed here:
+     * entries go once the client acknowledges them (see {@link #acknowledged}).
+     */
+    public int sync(String username) {
+        Criteria recipient = Criteria.where("recipient").is(username);
+
+        int delivered = 0;
+        PendingDelivery last = null;
+        boolean hasMore = true;
+        while (hasMore) {
+            // Keyset on the (recipient, createdAt, _id) index, since the entries are still there
+            Criteria criteria = last == null ? recipient : new Criteria().andOperator(recipient, new Criteria().orOperator(
+                    Criteria.where("createdAt").gt(last.getCreatedAt()),
+                    Criteria.where("createdAt").is(last.getCreatedAt()).and("_id").gt(new ObjectId(last.getId()))));
+            Query query = new Query(criteria)
+                    .with(Sort.by("createdAt", "_id"))
+                    .limit(batchSize + 1);
+
+            List<PendingDelivery> pending = mongoTemplate.find(query, PendingDelivery.class);
+            if (pending.isEmpty()) {
+                break;
+            }
+            hasMore = pending.size() > batchSize;
+            if (hasMore) {
+                pending = pending.subList(0, batchSize);
+            }
+
+            List<ChatMessage> messages = new ArrayList<>(pending.size());
+            for (PendingDelivery delivery : pending) {
+                messages.add(delivery.getMessage());
+            }
+
+            messagingTemplate.convertAndSendToUser(username, SYNC_QUEUE, new OfflineSyncBatch(messages, hasMore));
+            last = pending.get(pending.size() - 1);
+            delivered += messages.size();
+        }
+
+        if (delivered > 0) {
+            deliveredCounter.increment(delivered);
+            syncSizeSummary.record(delivered);
+            logger.info("Synced {} offline messages to {}", delivered, username);
+        }
+        return delivered;
+    }
+
+    /**
+     * Forgets every pending delivery at or before each receipt's delivered watermark, in one
+     * delete. Called by {@link ReceiptService} once the watermarks are stored.
+     */
+    public void acknowledged(List<ConversationReceipt> receipts) {
+        if (receipts.isEmpty()) {
+            return;
+        }
+        List<Criteria> covered = new ArrayList<>(receipts.size());
+        for (ConversationReceipt receipt : receipts) {
+            Watermark delivered = receipt.getDelivered();
+            covered.add(new Criteria().andOperator(
+                    Criteria.where("recipient").is(receipt.getUsername()),
+                    Criteria.where("message.conversationId").is(receipt.getConversationId()),
+                    new Criteria().orOperator(
+                            Criteria.where("message.timestamp").lt(delivered.getTimestamp()),
+                            Criteria.where("message.timestamp").is(delivered.getTimestamp())
+                                    .and("message.id").lte(new ObjectId(delivered.getMessageId())))));
+        }
+        try {
+            long removed = mongoTemplate.remove(new Query(new Criteria().orOperator(covered)), PendingDelivery.class)
+                    .getDeletedCount();
+            acknowledgedCounter.increment(removed);
+        } catch (Exception e) {
+            // Left in place, so they are synced again on the next join
+            logger.warn("Failed to remove {} acknowledged offline deliveries", receipts.size(), e);
+        }
+    }
+}
@@ -1,32 +1,178 @@
 package com.example.realchatapplication.service;
 
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import com.example.realchatapplication.event.PresenceChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.HashSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * In-memory presence registry and the source of truth for who is online. A user is online
+ * while at least one of their WebSocket sessions is open, so extra tabs do not flip the
+ * state. Sessions that negotiated STOMP heartbeats are dropped if they go quiet for longer
+ * than the heartbeat timeout, in case the disconnect event never arrives.
+ * <p>
+ * Presence events are numbered while the user's entry is being changed, so listeners can
+ * tell a late event from the current state when two of them are delivered out of order.
+ */
 @Service
 public class OnlineUserService {
 
-    private final Set<String> onlineUsers = new HashSet<>();
-    private final SimpMessagingTemplate messagingTemplate;
+    private static final Logger logger = LoggerFactory.getLogger(OnlineUserService.class);
 
-    public OnlineUserService(SimpMessagingTemplate messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Duration heartbeatTimeout;
+
+    private final ClusterPresenceTracker clusterPresenceTracker;
+
+    private final Counter onlineCounter;
+
+    private final Counter offlineCounter;
+
+    private final AtomicLong presenceVersion = new AtomicLong();
+
+    public OnlineUserService(ApplicationEventPublisher eventPublisher,
+                             ClusterPresenceTracker clusterPresenceTracker,
+                             MeterRegistry meterRegistry,
+                             @Value("${chat.presence.heartbeat-timeout:60s}") Duration heartbeatTimeout) {
+        this.eventPublisher = eventPublisher;
+        this.heartbeatTimeout = heartbeatTimeout;
+        this.clusterPresenceTracker = clusterPresenceTracker;
+
+        Gauge.builder("chat.presence.online.users", sessionsByUser, Map::size).register(meterRegistry);
+        Gauge.builder("chat.presence.sessions", sessions, Map::size)
+                .description("Open STOMP sessions on this node")
+                .register(meterRegistry);
+        this.onlineCounter = Counter.builder("chat.presence.changes").tag("state", "online").register(meterRegistry);
+        this.offlineCounter = Counter.builder("chat.presence.changes").tag("state", "offline").register(meterRegistry);
+    }
+
+    public void sessionOpened(String sessionId, boolean sendsHeartbeats) {
+        sessions.putIfAbsent(sessionId, new SessionState(sendsHeartbeats));
     }
 
-    public void userJoined(String username) {
-        onlineUsers.add(username);
-        broadcastOnlineUsers();
+    // Returns false, and changes nothing, for a session that is already closed or never opened
+    public boolean userJoined(String username, String sessionId) {
+        List<PresenceChangedEvent> events = new ArrayList<>(2);
+        // Atomic with sessionClosed's remove, so a concurrent disconnect cannot leave the user behind
+        SessionState joined = sessions.computeIfPresent(sessionId, (id, state) -> {
+            state.touch();
+            String previous = state.username;
+            if (!username.equals(previous)) {
+                state.username = username;
+                if (previous != null) {
+                    removeSession(previous, id, events);
+                }
+                addSession(username, id, events);
+            }
+            return state;
+        });
+        events.forEach(eventPublisher::publishEvent);
+        return joined != null;
     }
 
-    public void userLeft(String username) {
-        onlineUsers.remove(username);
-        broadcastOnlineUsers();
+    public void sessionClosed(String sessionId) {
+        SessionState state = sessions.remove(sessionId);
+        if (state != null && state.username != null) {
+            List<PresenceChangedEvent> events = new ArrayList<>(1);
+            removeSession(state.username, sessionId, events);
+            events.forEach(eventPublisher::publishEvent);
+        }
     }
 
-    private void broadcastOnlineUsers() {
-        messagingTemplate.convertAndSend("/topic/onlineUsers", onlineUsers);
+    public void touch(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        if (state != null) {
+            state.touch();
+        }
+    }
+
+    // Has an open session on this node; what this node's presence deltas announce
+    public boolean isOnlineHere(String username) {
+        return username != null && sessionsByUser.containsKey(username);
+    }
+
+    // Online on this node or, behind a broker relay, on any other
+    public boolean isOnline(String username) {
+        return username != null
+                && (sessionsByUser.containsKey(username) || clusterPresenceTracker.isOnlineElsewhere(username));
+    }
+
+    public Set<String> getOnlineUsers() {
+        Set<String> remote = clusterPresenceTracker.remoteOnlineUsers();
+        if (remote.isEmpty()) {
+            return Collections.unmodifiableSet(sessionsByUser.keySet());
+        }
+        remote.addAll(sessionsByUser.keySet());
+        return remote;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.sweep-interval:15s}")
+    public void expireSilentSessions() {
+        long cutoff = System.nanoTime() - heartbeatTimeout.toNanos();
+        sessions.forEach((sessionId, state) -> {
+            if (state.sendsHeartbeats && state.lastSeen - cutoff < 0) {
+                logger.info("Expiring session {} of {} after missed heartbeats", sessionId, state.username);
+                sessionClosed(sessionId);
+            }
+        });
+    }
+
+    // Events are created, and numbered, inside the compute; callers publish them outside any lock
+    private void addSession(String username, String sessionId, List<PresenceChangedEvent> events) {
+        sessionsByUser.compute(username, (user, userSessions) -> {
+            if (userSessions == null) {
+                userSessions = ConcurrentHashMap.newKeySet();
+                onlineCounter.increment();
+                events.add(new PresenceChangedEvent(user, true, presenceVersion.incrementAndGet()));
+            }
+            userSessions.add(sessionId);
+            return userSessions;
+        });
+    }
+
+    private void removeSession(String username, String sessionId, List<PresenceChangedEvent> events) {
+        sessionsByUser.computeIfPresent(username, (user, userSessions) -> {
+            userSessions.remove(sessionId);
+            if (userSessions.isEmpty()) {
+                offlineCounter.increment();
+                events.add(new PresenceChangedEvent(user, false, presenceVersion.incrementAndGet()));
+                return null;
+            }
+            return userSessions;
+        });
+    }
+
+    private static class SessionState {
+        private final boolean sendsHeartbeats;
+        private volatile String username;
+        private volatile long lastSeen = System.nanoTime();
+
+        private SessionState(boolean sendsHeartbeats) {
+            this.sendsHeartbeats = sendsHeartbeats;
+        }
+
+        private void touch() {
+            lastSeen = System.nanoTime();
+        }
     }
 }
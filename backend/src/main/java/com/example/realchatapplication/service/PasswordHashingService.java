@@ -0,0 +1,113 @@
+package com.example.realchatapplication.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs work that hashes passwords (login, signup, password changes) on a small dedicated pool.
+ * bcrypt and Argon2 are slow on purpose, so on request threads a login burst would take every
+ * core and stall unrelated API calls; here it takes at most {@code workers} cores and the rest
+ * wait in the queue. Queue wait and hashing time are timed separately, so a growing queue shows
+ * up before logins start failing. Callers submit only the hashing itself; the futures complete
+ * on a separate pool, so database writes and token signing chained onto them do not hold a
+ * hashing thread.
+ */
+@Service
+public class PasswordHashingService {
+
+    private final ThreadPoolExecutor hashingExecutor;
+
+    private final ExecutorService completionExecutor;
+
+    private final Timer waitTimer;
+
+    private final Timer hashingTimer;
+
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public PasswordHashingService(MeterRegistry meterRegistry,
+                                  @Value("${chat.auth.hashing.workers:4}") int workers,
+                                  @Value("${chat.auth.hashing.queue-capacity:200}") int queueCapacity,
+                                  @Value("${chat.auth.hashing.completion-threads:8}") int completionThreads) {
+        // Unbounded queue, but it only receives what the bounded hashing pool has finished
+        this(meterRegistry, workers, queueCapacity, Executors.newFixedThreadPool(completionThreads,
+                daemonThreads("password-hash-completion-")));
+    }
+
+    PasswordHashingService(MeterRegistry meterRegistry, int workers, int queueCapacity,
+                           ExecutorService completionExecutor) {
+        this.completionExecutor = completionExecutor;
+        this.hashingExecutor = new ThreadPoolExecutor(workers, workers,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), daemonThreads("password-hash-"));
+        this.hashingExecutor.allowCoreThreadTimeOut(true);
+
+        this.waitTimer = Timer.builder("auth.password.hashing.wait")
+                .description("Time a login, signup or password change waited for a hashing thread")
+                .register(meterRegistry);
+        this.hashingTimer = Timer.builder("auth.password.hashing.duration")
+                .description("Time a login, signup or password change spent on a hashing thread")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.password.hashing.rejected")
+                .description("Logins, signups and password changes refused because the hashing queue was full")
+                .register(meterRegistry);
+        new ExecutorServiceMetrics(hashingExecutor, "password.hashing", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    /**
+     * Runs the task on the hashing pool and hands its result to the completion pool. When
+     * the pool and its queue are full the future fails straight away with
+     * {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long queuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                waitTimer.record(start - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.get();
+                } finally {
+                    hashingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }, hashingExecutor).thenApplyAsync(Function.identity(), completionExecutor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingExecutor.shutdown();
+        completionExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.config.ClusterNode;
+import com.example.realchatapplication.dto.PresenceDelta;
+import com.example.realchatapplication.dto.PresenceSnapshot;
+import com.example.realchatapplication.event.PresenceChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes presence to {@code /topic/presence} as versioned joined/left deltas. Changes are
+ * collected for one broadcast window and only the net result is sent, so a user who drops
+ * and reconnects inside the window produces no traffic at all and a reconnect storm turns
+ * into a handful of batched deltas. Clients start from {@link #snapshot()}. Events only say
+ * which users changed; the state sent is read from {@link OnlineUserService} at flush time, so
+ * events that arrive out of order cannot leave a stale entry behind.
+ * <p>
+ * Deltas only cover this node's sessions and are numbered per node. Behind a broker relay the
+ * full local state is also published every state interval, for the other nodes' trackers.
+ */
+@Service
+public class PresenceBroadcaster {
+
+    public static final String PRESENCE_TOPIC = "/topic/presence";
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final ClusterNode clusterNode;
+
+    private final OnlineUserService onlineUserService;
+
+    private final boolean clustered;
+
+    // Users whose presence changed since the last flush
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    // What clients have been told so far; guarded by lock
+    private final Set<String> announced = new HashSet<>();
+
+    private long version;
+
+    // Not a monitor: the send below may block on the broker, which would pin a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public PresenceBroadcaster(SimpMessageSendingOperations messagingTemplate,
+                               ClusterNode clusterNode,
+                               OnlineUserService onlineUserService,
+                               @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.messagingTemplate = messagingTemplate;
+        this.clusterNode = clusterNode;
+        this.onlineUserService = onlineUserService;
+        this.clustered = "relay".equalsIgnoreCase(brokerMode);
+    }
+
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        pending.add(event.getUsername());
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.broadcast-window:250ms}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            List<String> joined = new ArrayList<>();
+            List<String> left = new ArrayList<>();
+            for (String username : pending) {
+                if (!pending.remove(username)) {
+                    continue;
+                }
+                boolean online = onlineUserService.isOnlineHere(username);
+                if (online && announced.add(username)) {
+                    joined.add(username);
+                } else if (!online && announced.remove(username)) {
+                    left.add(username);
+                }
+            }
+            if (joined.isEmpty() && left.isEmpty()) {
+                return;
+            }
+
+            // Sent under the lock so deltas reach the broker in version order
+            messagingTemplate.convertAndSend(PRESENCE_TOPIC, new PresenceDelta(clusterNode.getId(), ++version, joined, left));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.cluster.state-interval:10s}")
+    public void publishState() {
+        if (clustered) {
+            messagingTemplate.convertAndSend(ClusterPresenceTracker.CLUSTER_PRESENCE_TOPIC, snapshot());
+        }
+    }
+
+    public PresenceSnapshot snapshot() {
+        lock.lock();
+        try {
+            return new PresenceSnapshot(clusterNode.getId(), version, new ArrayList<>(announced));
+        } finally {
+            lock.unlock();
+        }
+    }
+}
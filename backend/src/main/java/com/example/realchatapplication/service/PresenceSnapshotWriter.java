@@ -0,0 +1,71 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.event.PresenceChangedEvent;
+import com.example.realchatapplication.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optionally mirrors presence into {@code users.isOnline} for tools that read the database.
+ * Changes are coalesced per user and written in one bulk operation per interval; nothing
+ * in the application reads this field back.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.presence.snapshot.enabled", havingValue = "true")
+public class PresenceSnapshotWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceSnapshotWriter.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Map<String, PresenceChangedEvent> pending = new ConcurrentHashMap<>();
+
+    public PresenceSnapshotWriter(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        // Events can arrive out of order; keep the latest change
+        pending.merge(event.getUsername(), event,
+                (current, candidate) -> candidate.getVersion() > current.getVersion() ? candidate : current);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.snapshot.interval:5s}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<String, Boolean> batch = new HashMap<>();
+        for (String username : pending.keySet()) {
+            PresenceChangedEvent event = pending.remove(username);
+            if (event != null) {
+                batch.put(username, event.isOnline());
+            }
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        batch.forEach((username, online) -> bulk.updateOne(
+                new Query(Criteria.where("username").is(username)),
+                new Update().set("isOnline", online)));
+        try {
+            bulk.execute();
+        } catch (Exception e) {
+            logger.warn("Failed to write presence snapshot for {} users", batch.size(), e);
+        }
+    }
+}
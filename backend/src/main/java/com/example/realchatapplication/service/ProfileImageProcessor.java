@@ -0,0 +1,266 @@
+package com.example.realchatapplication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns an uploaded profile image into small square JPEG avatars (48px, 128px, 512px by
+ * default). The original is decoded once, already subsampled towards the largest size, and
+ * every variant is scaled from that. Variants are stored under the image's content hash, so
+ * the same picture uploaded again is served from the cache without decoding anything.
+ */
+@Service
+public class ProfileImageProcessor {
+
+    private final S3StreamingUploader s3StreamingUploader;
+
+    private final S3Client s3Client;
+
+    @Value("${aws.s3.bucket}")
+    private String bucketName;
+
+    private final List<Integer> sizes;
+
+    private final int largestSize;
+
+    private final float jpegQuality;
+
+    private final long maxPixels;
+
+    // Decoding is CPU and memory heavy; keep it to a few threads regardless of request load
+    private final ThreadPoolExecutor processingExecutor;
+
+    // Content hash -> variant URLs for recently processed images
+    private final Cache<String, Map<String, String>> recentVariants;
+
+    private final Timer processingTimer;
+
+    private final Counter rejectedCounter;
+
+    public ProfileImageProcessor(S3StreamingUploader s3StreamingUploader,
+                                 S3Client s3Client,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${chat.profile-image.sizes:48,128,512}") List<Integer> sizes,
+                                 @Value("${chat.profile-image.jpeg-quality:0.85}") float jpegQuality,
+                                 @Value("${chat.profile-image.max-pixels:50000000}") long maxPixels,
+                                 @Value("${chat.profile-image.workers:2}") int workers,
+                                 @Value("${chat.profile-image.queue-capacity:32}") int queueCapacity,
+                                 @Value("${chat.profile-image.cache-size:1000}") long cacheSize) {
+        this.s3StreamingUploader = s3StreamingUploader;
+        this.s3Client = s3Client;
+        this.sizes = sizes.stream().sorted().toList();
+        this.largestSize = this.sizes.get(this.sizes.size() - 1);
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.processingExecutor = new ThreadPoolExecutor(workers, workers,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "profile-image-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.processingExecutor.allowCoreThreadTimeOut(true);
+
+        this.recentVariants = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+
+        this.processingTimer = Timer.builder("chat.profile-image.processing")
+                .description("Decode, resize and store all variants of one image")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("chat.profile-image.rejected")
+                .description("Images refused because the processing queue was full")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, recentVariants, "profile.image.variants");
+        new ExecutorServiceMetrics(processingExecutor, "profile.image", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    /**
+     * Produces the variants on the processing pool and completes with their URLs keyed by
+     * size ("48", "128", ...). Fails straight away with {@link RejectedExecutionException}
+     * when the pool is saturated.
+     */
+    public CompletableFuture<Map<String, String>> createVariantsAsync(MultipartFile image) {
+        try {
+            return CompletableFuture.supplyAsync(() -> createVariants(image), processingExecutor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public Map<String, String> createVariants(MultipartFile image) {
+        try {
+            // Hashing the spooled file is far cheaper than decoding it
+            String contentHash = contentHash(image);
+            Map<String, String> cached = recentVariants.getIfPresent(contentHash);
+            if (cached != null) {
+                return cached;
+            }
+
+            Map<String, String> variants = processingTimer.recordCallable(() -> renderAndStore(image, contentHash));
+            recentVariants.put(contentHash, variants);
+            return variants;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to process profile image", e);
+        }
+    }
+
+    private Map<String, String> renderAndStore(MultipartFile image, String contentHash) throws IOException {
+        BufferedImage source = decode(image);
+
+        Map<String, String> variants = new LinkedHashMap<>();
+        for (int size : sizes) {
+            byte[] jpeg = encodeJpeg(squareThumbnail(source, size));
+            String key = "uploads/variants/" + contentHash + "/" + size + ".jpg";
+            s3StreamingUploader.upload(bucketName, key, "image/jpeg", new ByteArrayInputStream(jpeg), jpeg.length);
+            variants.put(String.valueOf(size), s3Client.utilities()
+                    .getUrl(builder -> builder.bucket(bucketName).key(key)).toExternalForm());
+        }
+        return Collections.unmodifiableMap(variants);
+    }
+
+    // Reads only every n-th pixel of large images, so a 6000px photo never sits in memory at full size
+    private BufferedImage decode(MultipartFile image) throws IOException {
+        try (InputStream content = image.getInputStream();
+             ImageInputStream input = ImageIO.createImageInputStream(content)) {
+            Iterator<ImageReader> readers = input == null ? Collections.emptyIterator() : ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Image dimensions are too large");
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.min(width, height) / largestSize);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Centre crop to a square, then halve repeatedly before the final step so bilinear keeps detail
+    private static BufferedImage squareThumbnail(BufferedImage source, int size) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage current = source.getSubimage(
+                (source.getWidth() - side) / 2, (source.getHeight() - side) / 2, side, side);
+
+        int currentSide = side;
+        do {
+            currentSide = Math.max(size, currentSide / 2);
+            if (currentSide < size * 2 && currentSide != size) {
+                currentSide = size;
+            }
+            current = scale(current, currentSide);
+        } while (currentSide > size);
+        return current;
+    }
+
+    private static BufferedImage scale(BufferedImage source, int side) {
+        // JPEG has no alpha, so transparent areas are painted white rather than black
+        BufferedImage scaled = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, side, side, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String contentHash(MultipartFile image) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream content = image.getInputStream()) {
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        // 128 bits is plenty to tell avatars apart and keeps the keys short
+        return HexFormat.of().formatHex(Arrays.copyOf(digest.digest(), 16));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        processingExecutor.shutdown();
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.AckRequest;
+import com.example.realchatapplication.dto.ConversationReceiptsDTO;
+import com.example.realchatapplication.dto.ReceiptDTO;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ConversationReceipt;
+import com.example.realchatapplication.model.ConversationReceipt.Watermark;
+import com.example.realchatapplication.model.ConversationSummary;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivered and read receipts as one watermark per user and conversation. Acks are cumulative,
+ * so only the one for the latest message per user, peer and type is kept between flushes. A
+ * flush resolves the acknowledged messages in one query, upserts every watermark that moved in
+ * one unordered bulk write ($max, so a late or stale ack never moves a watermark back) and
+ * tells each peer on {@code /user/queue/receipts}. Stored delivered watermarks also clear the
+ * matching offline deliveries.
+ */
+@Service
+public class ReceiptService {
+
+    public static final String RECEIPTS_QUEUE = "/queue/receipts";
+
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptService.class);
+
+    // Acks for messages write-behind has not stored yet are kept for this many flushes
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final ConversationSummaryService conversationSummaryService;
+
+    private final OfflineDeliveryService offlineDeliveryService;
+
+    private final int unreadCountCap;
+
+    private final Map<AckKey, PendingAck> pending = new ConcurrentHashMap<>();
+
+    // Last watermark written per receipt and type, so repeated acks cost no write
+    private final Cache<String, Watermark> flushed;
+
+    private final Counter acksCounter;
+
+    private final Counter coalescedCounter;
+
+    private final Counter rejectedCounter;
+
+    private final DistributionSummary flushSizeSummary;
+
+    private final Timer flushTimer;
+
+    public ReceiptService(MongoTemplate mongoTemplate,
+                          SimpMessageSendingOperations messagingTemplate,
+                          ConversationSummaryService conversationSummaryService,
+                          OfflineDeliveryService offlineDeliveryService,
+                          MeterRegistry meterRegistry,
+                          @Value("${chat.receipts.cache-size:100000}") long cacheSize,
+                          @Value("${chat.receipts.unread-count-cap:100}") int unreadCountCap) {
+        this.mongoTemplate = mongoTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.conversationSummaryService = conversationSummaryService;
+        this.offlineDeliveryService = offlineDeliveryService;
+        this.unreadCountCap = unreadCountCap;
+        this.flushed = Caffeine.newBuilder().maximumSize(cacheSize).build();
+
+        this.acksCounter = Counter.builder("chat.receipts.acks").register(meterRegistry);
+        this.coalescedCounter = Counter.builder("chat.receipts.coalesced")
+                .description("Acks superseded in memory or already covered by the stored watermark")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("chat.receipts.rejected").register(meterRegistry);
+        this.flushSizeSummary = DistributionSummary.builder("chat.receipts.flush.size").register(meterRegistry);
+        this.flushTimer = Timer.builder("chat.receipts.flush.duration").register(meterRegistry);
+        Gauge.builder("chat.receipts.pending", pending, Map::size).register(meterRegistry);
+    }
+
+    public void ack(String username, AckRequest request) {
+        if (request.getPeer() == null || request.getPeer().equals(username)
+                || request.getType() == null || !ObjectId.isValid(request.getMessageId())) {
+            rejectedCounter.increment();
+            return;
+        }
+        acksCounter.increment();
+
+        AckKey key = new AckKey(username, request.getPeer(), request.getType());
+        if (pending.merge(key, new PendingAck(key, request.getMessageId(), 0), ReceiptService::later) != null) {
+            coalescedCounter.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.receipts.flush-interval:500ms}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PendingAck> acks = new ArrayList<>();
+        for (AckKey key : pending.keySet()) {
+            PendingAck ack = pending.remove(key);
+            if (ack != null) {
+                acks.add(ack);
+            }
+        }
+
+        long start = System.nanoTime();
+        Map<String, ChatMessage> messages = findMessages(acks);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ConversationReceipt.class);
+        Map<String, Watermark> written = new HashMap<>();
+        Map<String, Watermark> read = new HashMap<>();
+        List<ConversationReceipt> delivered = new ArrayList<>();
+        List<Outgoing> receipts = new ArrayList<>();
+        List<PendingAck> batched = new ArrayList<>();
+
+        for (PendingAck ack : acks) {
+            ChatMessage message = messages.get(ack.messageId);
+            if (message != null && message.getTimestamp() == null) {
+                rejectedCounter.increment();
+                continue;
+            }
+            if (message == null) {
+                retry(ack);
+                continue;
+            }
+
+            String conversationId = ChatMessage.conversationIdOf(ack.key.username, ack.key.peer);
+            if (!conversationId.equals(message.getConversationId())) {
+                rejectedCounter.increment();
+                continue;
+            }
+
+            String receiptId = ConversationReceipt.idOf(conversationId, ack.key.username);
+            Watermark watermark = new Watermark(message.getTimestamp(), message.getId());
+            Watermark known = flushed.getIfPresent(receiptId + "/" + ack.key.type);
+            if (!watermark.isAfter(known)) {
+                coalescedCounter.increment();
+                continue;
+            }
+
+            // Reading a message implies it was delivered
+            Object mongoWatermark = toMongo(watermark);
+            Update update = new Update()
+                    .set("conversationId", conversationId)
+                    .set("username", ack.key.username)
+                    .set("updatedAt", LocalDateTime.now())
+                    .max("delivered", mongoWatermark);
+            if (ack.key.type == ConversationReceipt.Type.READ) {
+                update.max("read", mongoWatermark);
+                written.put(receiptId + "/" + ConversationReceipt.Type.DELIVERED, watermark);
+                read.put(ConversationSummary.idOf(conversationId, ack.key.username), watermark);
+            }
+            bulk.upsert(new Query(Criteria.where("_id").is(receiptId)), update);
+            written.put(receiptId + "/" + ack.key.type, watermark);
+            delivered.add(new ConversationReceipt(receiptId, conversationId, ack.key.username, watermark, null, null));
+            batched.add(ack);
+
+            receipts.add(new Outgoing(ack.key.peer, new ReceiptDTO(conversationId, ack.key.username, ack.key.type,
+                    message.getId(), message.getTimestamp())));
+        }
+
+        if (receipts.isEmpty()) {
+            return;
+        }
+
+        try {
+            bulk.execute();
+        } catch (Exception e) {
+            // $max makes the upserts idempotent, so the whole batch can simply go again
+            logger.warn("Receipt flush of {} watermarks failed, retrying with the next flush", receipts.size(), e);
+            batched.forEach(this::retry);
+            return;
+        }
+        written.forEach((key, watermark) -> flushed.asMap().merge(key, watermark,
+                (old, candidate) -> candidate.isAfter(old) ? candidate : old));
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        flushSizeSummary.record(receipts.size());
+        conversationSummaryService.markRead(read);
+        offlineDeliveryService.acknowledged(delivered);
+
+        for (Outgoing outgoing : receipts) {
+            messagingTemplate.convertAndSendToUser(outgoing.peer, RECEIPTS_QUEUE, outgoing.receipt);
+        }
+    }
+
+    // Both participants' watermarks, plus how many messages to user1 are still unread
+    public ConversationReceiptsDTO getReceipts(String user1, String user2) {
+        String conversationId = ChatMessage.conversationIdOf(user1, user2);
+        List<ConversationReceipt> receipts = mongoTemplate.find(
+                new Query(Criteria.where("conversationId").is(conversationId)), ConversationReceipt.class);
+
+        Watermark read = null;
+        for (ConversationReceipt receipt : receipts) {
+            if (receipt.getUsername().equals(user1)) {
+                read = receipt.getRead();
+            }
+        }
+
+        Criteria unread = Criteria.where("conversationId").is(conversationId).and("sender").is(user2);
+        if (read != null) {
+            unread.orOperator(
+                    Criteria.where("timestamp").gt(read.getTimestamp()),
+                    Criteria.where("timestamp").is(read.getTimestamp()).and("_id").gt(new ObjectId(read.getMessageId())));
+        }
+        // Capped, so a long-abandoned conversation does not turn into a full scan
+        long count = mongoTemplate.count(new Query(unread).limit(unreadCountCap), ChatMessage.class);
+
+        return new ConversationReceiptsDTO(receipts, count);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    // Back into pending for the next flush, unless a newer ack is already there or it has had its attempts
+    private void retry(PendingAck ack) {
+        if (ack.attempts + 1 >= MAX_ATTEMPTS) {
+            rejectedCounter.increment();
+            logger.warn("Dropping {} ack of {} for {} after {} attempts", ack.key.type, ack.key.username, ack.messageId,
+                    MAX_ATTEMPTS);
+            return;
+        }
+        pending.merge(ack.key, new PendingAck(ack.key, ack.messageId, ack.attempts + 1), ReceiptService::later);
+    }
+
+    // Acks are cumulative, so of two for the same key the later message wins whatever order they came in
+    private static PendingAck later(PendingAck current, PendingAck candidate) {
+        return new ObjectId(candidate.messageId).compareTo(new ObjectId(current.messageId)) > 0 ? candidate : current;
+    }
+
+    private Map<String, ChatMessage> findMessages(List<PendingAck> acks) {
+        Set<ObjectId> ids = new HashSet<>();
+        for (PendingAck ack : acks) {
+            ids.add(new ObjectId(ack.messageId));
+        }
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("conversationId").include("timestamp");
+
+        Map<String, ChatMessage> messages = new HashMap<>();
+        for (ChatMessage message : mongoTemplate.find(query, ChatMessage.class)) {
+            messages.put(message.getId(), message);
+        }
+        return messages;
+    }
+
+    private Document toMongo(Watermark watermark) {
+        return new Document("timestamp", mongoTemplate.getConverter().convertToMongoType(watermark.getTimestamp()))
+                .append("messageId", watermark.getMessageId());
+    }
+
+    private record AckKey(String username, String peer, ConversationReceipt.Type type) {
+    }
+
+    private record PendingAck(AckKey key, String messageId, int attempts) {
+    }
+
+    private record Outgoing(String peer, ReceiptDTO receipt) {
+    }
+}
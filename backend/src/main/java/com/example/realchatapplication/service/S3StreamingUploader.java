@@ -0,0 +1,247 @@
+package com.example.realchatapplication.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams uploads to S3 without holding whole files in the heap. Small objects go up as a
+ * single streamed PUT; larger ones as a multipart upload whose parts are read into pooled
+ * buffers and uploaded in parallel. The pool caps part buffers for all uploads together,
+ * so heap use stays flat however large or numerous the uploads are.
+ */
+@Component
+public class S3StreamingUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3StreamingUploader.class);
+
+    private final S3Client s3Client;
+
+    private final long multipartThreshold;
+
+    private final int partSize;
+
+    private final int maxPartsInFlightPerUpload;
+
+    private final Semaphore bufferPermits;
+
+    private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    private final ExecutorService partUploadExecutor;
+
+    private final MeterRegistry meterRegistry;
+
+    private final DistributionSummary putBytes;
+
+    private final DistributionSummary multipartBytes;
+
+    public S3StreamingUploader(S3Client s3Client,
+                               MeterRegistry meterRegistry,
+                               @Value("${aws.s3.upload.multipart-threshold:16MB}") DataSize multipartThreshold,
+                               @Value("${aws.s3.upload.part-size:8MB}") DataSize partSize,
+                               @Value("${aws.s3.upload.max-parts-in-flight:4}") int maxPartsInFlightPerUpload,
+                               @Value("${aws.s3.upload.max-buffers:16}") int maxBuffers,
+                               @Value("${aws.s3.upload.part-threads:8}") int partThreads) {
+        this.s3Client = s3Client;
+        this.multipartThreshold = multipartThreshold.toBytes();
+        this.partSize = Math.toIntExact(partSize.toBytes());
+        this.maxPartsInFlightPerUpload = maxPartsInFlightPerUpload;
+        this.bufferPermits = new Semaphore(maxBuffers);
+        this.meterRegistry = meterRegistry;
+        this.putBytes = uploadBytes(meterRegistry, "put");
+        this.multipartBytes = uploadBytes(meterRegistry, "multipart");
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.partUploadExecutor = Executors.newFixedThreadPool(partThreads, runnable -> {
+            Thread thread = new Thread(runnable, "s3-part-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void upload(String bucket, String key, String contentType, InputStream content, long size) throws IOException {
+        boolean put = size >= 0 && size <= multipartThreshold;
+        String outcome = "failure";
+        long start = System.nanoTime();
+        try {
+            if (put) {
+                PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .acl(ObjectCannedACL.PUBLIC_READ)
+                        .contentType(contentType)
+                        .contentLength(size)
+                        .build();
+                s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(content, size));
+                putBytes.record(size);
+            } else {
+                multipartBytes.record(multipartUpload(bucket, key, contentType, content));
+            }
+            outcome = "success";
+        } finally {
+            Timer.builder("s3.upload.duration")
+                    .tag("method", put ? "put" : "multipart")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Returns the number of bytes uploaded
+    private long multipartUpload(String bucket, String key, String contentType, InputStream content) throws IOException {
+        String uploadId = s3Client.createMultipartUpload(builder -> builder
+                .bucket(bucket)
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(contentType))
+                .uploadId();
+
+        Semaphore inFlight = new Semaphore(maxPartsInFlightPerUpload);
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        // Set by the first failed part; stops reading and skips parts that have not started yet
+        AtomicBoolean failed = new AtomicBoolean();
+        long bytes = 0;
+        try {
+            int partNumber = 1;
+            while (true) {
+                inFlight.acquireUninterruptibly();
+                if (failed.get()) {
+                    inFlight.release();
+                    break;
+                }
+                byte[] buffer = acquireBuffer();
+                int length;
+                try {
+                    length = content.readNBytes(buffer, 0, partSize);
+                } catch (IOException e) {
+                    releaseBuffer(buffer);
+                    inFlight.release();
+                    throw e;
+                }
+                if (length == 0 && partNumber > 1) {
+                    releaseBuffer(buffer);
+                    inFlight.release();
+                    break;
+                }
+
+                int number = partNumber++;
+                bytes += length;
+                parts.add(CompletableFuture
+                        .supplyAsync(() -> {
+                            if (failed.get()) {
+                                throw new CancellationException("Multipart upload " + uploadId + " already failed");
+                            }
+                            return uploadPart(bucket, key, uploadId, number, buffer, length);
+                        }, partUploadExecutor)
+                        .whenComplete((part, error) -> {
+                            if (error != null) {
+                                failed.set(true);
+                            }
+                            releaseBuffer(buffer);
+                            inFlight.release();
+                        }));
+
+                if (length < partSize) {
+                    break;
+                }
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+            completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+
+            s3Client.completeMultipartUpload(builder -> builder
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build()));
+            return bytes;
+        } catch (IOException | RuntimeException e) {
+            failed.set(true);
+            // S3 may keep parts that finish after the abort, so wait until none are running
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                    .handle((ignored, error) -> null)
+                    .join();
+            abort(bucket, key, uploadId);
+            if (e instanceof CompletionException && e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletedPart uploadPart(String bucket, String key, String uploadId, int partNumber, byte[] buffer, int length) {
+        // Streams straight from the pooled buffer instead of copying it into the request
+        String eTag = s3Client.uploadPart(builder -> builder
+                        .bucket(bucket)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) length),
+                RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, length), length, "application/octet-stream"))
+                .eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(builder -> builder.bucket(bucket).key(key).uploadId(uploadId));
+        } catch (RuntimeException abortError) {
+            logger.warn("Failed to abort multipart upload {} for {}", uploadId, key, abortError);
+        }
+    }
+
+    private byte[] acquireBuffer() {
+        bufferPermits.acquireUninterruptibly();
+        byte[] buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new byte[partSize];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        freeBuffers.offer(buffer);
+        bufferPermits.release();
+    }
+
+    private static DistributionSummary uploadBytes(MeterRegistry meterRegistry, String method) {
+        return DistributionSummary.builder("s3.upload.bytes")
+                .baseUnit("bytes")
+                .tag("method", method)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partUploadExecutor.shutdown();
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.TypingMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Typing state per sender→recipient pair. Clients report typing on every keystroke; only the
+ * started and stopped transitions are forwarded to the recipient. A pair that stops reporting
+ * is expired by a timer wheel, so a lost "stopped" event or a closed tab cannot leave the
+ * indicator on. Start events are rate limited per session with a token bucket.
+ */
+@Service
+public class TypingTracker {
+
+    public static final String TYPING_QUEUE = "/queue/typing";
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    // Pairs currently shown as typing
+    private final Map<TypingPair, TypingState> typing = new ConcurrentHashMap<>();
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    // Slot i holds the pairs due to expire at a tick congruent to i; entries may be stale
+    private final Set<TypingPair>[] wheel;
+
+    private final long tickNanos;
+
+    private final long timeoutTicks;
+
+    // System.nanoTime outside of tests
+    private final LongSupplier nanoClock;
+
+    private final long startedAt;
+
+    // Last tick whose slot was swept; only the scheduler thread touches it
+    private long sweptTick;
+
+    private final double ratePerSecond;
+
+    private final double burst;
+
+    private final Counter forwardedCounter;
+
+    private final Counter coalescedCounter;
+
+    private final Counter rateLimitedCounter;
+
+    private final Counter expiredCounter;
+
+    @Autowired
+    public TypingTracker(SimpMessageSendingOperations messagingTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${chat.typing.timeout:5s}") Duration timeout,
+                         @Value("${chat.typing.tick:250ms}") Duration tick,
+                         @Value("${chat.typing.rate-limit.per-second:4}") double ratePerSecond,
+                         @Value("${chat.typing.rate-limit.burst:8}") double burst) {
+        this(messagingTemplate, meterRegistry, timeout, tick, ratePerSecond, burst, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    TypingTracker(SimpMessageSendingOperations messagingTemplate, MeterRegistry meterRegistry, Duration timeout,
+                  Duration tick, double ratePerSecond, double burst, LongSupplier nanoClock) {
+        this.messagingTemplate = messagingTemplate;
+        this.nanoClock = nanoClock;
+        this.startedAt = nanoClock.getAsLong();
+        this.tickNanos = tick.toNanos();
+        this.timeoutTicks = Math.max(1, timeout.toNanos() / tickNanos);
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+
+        // One spare slot so a new deadline never lands in the slot being swept
+        this.wheel = new Set[(int) timeoutTicks + 2];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+
+        this.forwardedCounter = counter(meterRegistry, "forwarded");
+        this.coalescedCounter = counter(meterRegistry, "coalesced");
+        this.rateLimitedCounter = counter(meterRegistry, "rate-limited");
+        this.expiredCounter = counter(meterRegistry, "expired");
+        Gauge.builder("chat.typing.active", typing, Map::size).register(meterRegistry);
+    }
+
+    public void onTyping(String sessionId, String sender, String recipient, boolean isTyping) {
+        TypingPair pair = new TypingPair(sender, recipient);
+        if (!isTyping) {
+            // Stops are bounded by starts, so they are never rate limited
+            if (typing.remove(pair) != null) {
+                forward(pair, false);
+            } else {
+                coalescedCounter.increment();
+            }
+            return;
+        }
+
+        long now = nanoClock.getAsLong();
+        if (!buckets.computeIfAbsent(sessionId, id -> new TokenBucket(burst, now)).tryAcquire(now, ratePerSecond, burst)) {
+            rateLimitedCounter.increment();
+            return;
+        }
+
+        long deadline = currentTick() + timeoutTicks;
+        boolean[] started = new boolean[1];
+        typing.compute(pair, (p, state) -> {
+            started[0] = state == null;
+            return new TypingState(sessionId, deadline);
+        });
+        wheel[slot(deadline)].add(pair);
+
+        if (started[0]) {
+            forward(pair, true);
+        } else {
+            coalescedCounter.increment();
+        }
+    }
+
+    // Anything the session was typing stops with it
+    public void sessionClosed(String sessionId) {
+        buckets.remove(sessionId);
+        typing.forEach((pair, state) -> {
+            if (state.sessionId.equals(sessionId) && typing.remove(pair, state)) {
+                forward(pair, false);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.tick:250ms}")
+    public void expire() {
+        long now = currentTick();
+        while (sweptTick < now) {
+            long tick = ++sweptTick;
+            Set<TypingPair> slot = wheel[slot(tick)];
+            for (TypingPair pair : slot) {
+                slot.remove(pair);
+                TypingState state = typing.get(pair);
+                if (state == null) {
+                    continue;
+                }
+                if (state.deadline > tick) {
+                    // Refreshed since it was filed here; it is already in its new slot too
+                    wheel[slot(state.deadline)].add(pair);
+                } else if (typing.remove(pair, state)) {
+                    expiredCounter.increment();
+                    forward(pair, false);
+                }
+            }
+        }
+    }
+
+    private void forward(TypingPair pair, boolean isTyping) {
+        forwardedCounter.increment();
+        messagingTemplate.convertAndSendToUser(pair.recipient, TYPING_QUEUE,
+                new TypingMessage(pair.sender, pair.recipient, isTyping));
+    }
+
+    private long currentTick() {
+        return (nanoClock.getAsLong() - startedAt) / tickNanos;
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % wheel.length);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("chat.typing.events").tag("outcome", outcome).register(meterRegistry);
+    }
+
+    private record TypingPair(String sender, String recipient) {
+    }
+
+    private record TypingState(String sessionId, long deadline) {
+    }
+
+    private static class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        private synchronized boolean tryAcquire(long now, double ratePerSecond, double burst) {
+            // Concurrent callers may pass slightly older readings; never refill backwards
+            tokens = Math.min(burst, tokens + Math.max(0, now - refilledAt) / 1e9 * ratePerSecond);
+            refilledAt = Math.max(refilledAt, now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
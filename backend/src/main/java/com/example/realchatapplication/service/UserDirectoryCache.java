@@ -0,0 +1,166 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers "does this username exist" and "who is user X" from memory. Known and unknown
+ * usernames are kept in separate bounded caches so that a flood of bad names cannot evict
+ * real users, and entries are kept in step with the users collection through Mongo
+ * lifecycle events.
+ */
+@Component
+public class UserDirectoryCache extends AbstractMongoEventListener<User> {
+
+    private final UserRepository userRepository;
+
+    private final Cache<String, Boolean> knownUsernames;
+
+    private final Cache<String, Boolean> unknownUsernames;
+
+    // Authenticated principals by id, so JWT-authenticated requests skip findById
+    private final Cache<String, User> usersById;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    // Bumped on every user write, so a lookup that raced a signup does not cache "unknown"
+    private final AtomicLong userWrites = new AtomicLong();
+
+    public UserDirectoryCache(UserRepository userRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.user-cache.max-size:10000}") long maxSize,
+                              @Value("${chat.user-cache.ttl:10m}") Duration ttl,
+                              @Value("${chat.user-cache.negative-max-size:1000}") long negativeMaxSize,
+                              @Value("${chat.user-cache.negative-ttl:30s}") Duration negativeTtl) {
+        this.userRepository = userRepository;
+        this.knownUsernames = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.unknownUsernames = Caffeine.newBuilder()
+                .maximumSize(negativeMaxSize)
+                .expireAfterWrite(negativeTtl)
+                .build();
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+
+        FunctionCounter.builder("chat.user.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.user.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("chat.user.cache.size", knownUsernames, Cache::estimatedSize)
+                .register(meterRegistry);
+    }
+
+    public boolean exists(String username) {
+        if (username == null) {
+            return false;
+        }
+        if (knownUsernames.getIfPresent(username) != null) {
+            hits.incrementAndGet();
+            return true;
+        }
+        if (unknownUsernames.getIfPresent(username) != null) {
+            hits.incrementAndGet();
+            return false;
+        }
+
+        misses.incrementAndGet();
+        long writesBefore = userWrites.get();
+        boolean exists = userRepository.existsByUsername(username);
+        if (exists) {
+            knownUsernames.put(username, Boolean.TRUE);
+        } else if (userWrites.get() == writesBefore) {
+            unknownUsernames.put(username, Boolean.TRUE);
+        }
+        return exists;
+    }
+
+    public Optional<User> findById(String userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        User cached = usersById.getIfPresent(userId);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return Optional.of(cached);
+        }
+
+        misses.incrementAndGet();
+        Optional<User> user = userRepository.findById(userId);
+        user.ifPresent(found -> usersById.put(userId, found));
+        return user;
+    }
+
+    public void markExists(String username) {
+        userWrites.incrementAndGet();
+        unknownUsernames.invalidate(username);
+        knownUsernames.put(username, Boolean.TRUE);
+    }
+
+    public void invalidate(String username) {
+        userWrites.incrementAndGet();
+        knownUsernames.invalidate(username);
+        unknownUsernames.invalidate(username);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Covers signup and profile updates; renames must also invalidate the old name
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        User user = event.getSource();
+        if (user.getUsername() != null) {
+            markExists(user.getUsername());
+        }
+        if (user.getId() != null) {
+            usersById.invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        Document query = event.getSource();
+        Object id = query.get("_id");
+        if (id != null) {
+            usersById.invalidate(id.toString());
+        } else {
+            usersById.invalidateAll();
+        }
+
+        Object username = query.get("username");
+        if (username instanceof String) {
+            invalidate((String) username);
+        } else {
+            // Deletes by id do not tell us the username, and they are rare enough to start over
+            knownUsernames.invalidateAll();
+        }
+    }
+}
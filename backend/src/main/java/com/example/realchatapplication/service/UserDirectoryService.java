@@ -0,0 +1,139 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.UserDirectoryPageDTO;
+import com.example.realchatapplication.dto.UserSummaryDTO;
+import com.example.realchatapplication.mapper.UserMapper;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paged, projected listing of registered users for the sidebar. The first page without a
+ * search prefix is what almost every client asks for, so it is served from a snapshot that
+ * is refreshed in the background instead of querying Mongo per request. Any write to a user
+ * drops the snapshot, and Mongo answers until the next refresh.
+ */
+@Service
+public class UserDirectoryService extends AbstractMongoEventListener<User> {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDirectoryService.class);
+
+    private final UserRepository userRepository;
+
+    private final OnlineUserService onlineUserService;
+
+    private final UserMapper userMapper;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    private final int snapshotSize;
+
+    // First snapshotSize + 2 users by name, shared by every caller: one extra to tell whether
+    // there are more, and one to spare for the caller, who is left out of their own page
+    private volatile List<User> firstPageSnapshot;
+
+    public UserDirectoryService(UserRepository userRepository,
+                                OnlineUserService onlineUserService,
+                                UserMapper userMapper,
+                                @Value("${chat.directory.default-page-size:50}") int defaultPageSize,
+                                @Value("${chat.directory.max-page-size:200}") int maxPageSize,
+                                @Value("${chat.directory.snapshot-size:200}") int snapshotSize) {
+        this.userRepository = userRepository;
+        this.onlineUserService = onlineUserService;
+        this.userMapper = userMapper;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.snapshotSize = snapshotSize;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.directory.snapshot-refresh:15s}")
+    public void refreshSnapshot() {
+        try {
+            firstPageSnapshot = userRepository.findDirectoryPage("^", "", "", PageRequest.of(0, snapshotSize + 2));
+        } catch (Exception e) {
+            logger.warn("Failed to refresh user directory snapshot", e);
+        }
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        firstPageSnapshot = null;
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        firstPageSnapshot = null;
+    }
+
+    /**
+     * One page of users ordered by username, excluding the caller. Online flags are taken
+     * from the presence registry at request time, so they are always current.
+     */
+    public UserDirectoryPageDTO getPage(String currentUsername, String prefix, String after, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        boolean firstPage = (prefix == null || prefix.isEmpty()) && (after == null || after.isEmpty());
+
+        List<User> snapshot = firstPageSnapshot;
+        List<User> rows;
+        if (firstPage && snapshot != null && pageSize <= snapshotSize) {
+            rows = new ArrayList<>(pageSize + 1);
+            for (User user : snapshot) {
+                if (rows.size() > pageSize) {
+                    break;
+                }
+                if (!user.getUsername().equals(currentUsername)) {
+                    rows.add(user);
+                }
+            }
+        } else {
+            rows = userRepository.findDirectoryPage(prefixRegex(prefix), after == null ? "" : after,
+                    currentUsername == null ? "" : currentUsername, PageRequest.of(0, pageSize + 1));
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<User> pageRows = hasMore ? rows.subList(0, pageSize) : rows;
+
+        List<UserSummaryDTO> users = new ArrayList<>(pageRows.size());
+        for (User user : pageRows) {
+            users.add(userMapper.toSummary(user, onlineUserService.isOnline(user.getUsername())));
+        }
+
+        String nextCursor = hasMore ? pageRows.get(pageRows.size() - 1).getUsername() : null;
+        return new UserDirectoryPageDTO(users, hasMore, nextCursor);
+    }
+
+    // Weak validator over everything the client renders, online flags included
+    public String etagOf(UserDirectoryPageDTO page) {
+        return "W/\"" + DigestUtils.md5DigestAsHex(page.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    // Anchored and escaped, so Mongo can turn it into a range scan on the username index
+    private static String prefixRegex(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return "^";
+        }
+        StringBuilder regex = new StringBuilder("^");
+        for (char c : prefix.toCharArray()) {
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                regex.append('\\');
+            }
+            regex.append(c);
+        }
+        return regex.toString();
+    }
+}
@@ -2,20 +2,25 @@ package com.example.realchatapplication.service;
 
 import com.example.realchatapplication.dto.EditProfileDto;
 import com.example.realchatapplication.dto.UserDTO;
+import com.example.realchatapplication.mapper.UserMapper;
 import com.example.realchatapplication.model.User;
 import com.example.realchatapplication.repository.UserRepository;
-import org.modelmapper.ModelMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class UserService {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
 
 
@@ -23,36 +28,44 @@ public class UserService {
 
     private final ImageService imageService;
 
-    private final ModelMapper modelMapper;
+    private final UserMapper userMapper;
 
-    public UserService(UserRepository userRepository,ImageService imageService,ModelMapper modelMapper){
+    private final UserDirectoryCache userDirectoryCache;
+
+    private final OnlineUserService onlineUserService;
+
+    private final ProfileImageProcessor profileImageProcessor;
+
+    public UserService(UserRepository userRepository,ImageService imageService,UserMapper userMapper,UserDirectoryCache userDirectoryCache,OnlineUserService onlineUserService,ProfileImageProcessor profileImageProcessor){
         this.userRepository=userRepository;
         this.imageService=imageService;
-        this.modelMapper=modelMapper;
+        this.userMapper=userMapper;
+        this.userDirectoryCache=userDirectoryCache;
+        this.onlineUserService=onlineUserService;
+        this.profileImageProcessor=profileImageProcessor;
     }
 
     public boolean userExists(String username){
-        return userRepository.existsByUsername(username);
+        return userDirectoryCache.exists(username);
     }
 
-    public void setUserOnlineStatus(String username, boolean isOnline){
-        userRepository.updateUserOnlineStatus(username, isOnline);
-    }
     public List<String> getOnlineUsers() {
-        List<User> onlineUsers = userRepository.findByIsOnlineTrue();
-        return onlineUsers.stream()
-                .map(User::getUsername)
-                .collect(Collectors.toList());
+        return new ArrayList<>(onlineUserService.getOnlineUsers());
     }
 
 
-    public UserDTO updateUser(String email, EditProfileDto editProfileDTO) {
+    /**
+     * Validates the edit on the calling thread (bad input throws straight away), then
+     * completes once any new profile image has been uploaded and the user saved.
+     */
+    public CompletableFuture<UserDTO> updateUser(String email, EditProfileDto editProfileDTO) {
 
         // ✅ Safely fetch user by email
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found with email: " + email));
 
         // Update username if changed
+        String previousUsername = user.getUsername();
         String newUsername = editProfileDTO.getUsername();
         if (newUsername != null && !newUsername.trim().equals(user.getUsername())) {
             newUsername = newUsername.trim();
@@ -64,6 +77,7 @@ public class UserService {
 
         // Update profile image if provided
         MultipartFile profileImage = editProfileDTO.getProfileImage();
+        CompletableFuture<User> imageUpdate = CompletableFuture.completedFuture(user);
         if (profileImage != null && !profileImage.isEmpty()) {
 
             // Validate MIME type
@@ -83,16 +97,35 @@ public class UserService {
                 throw new RuntimeException("Invalid file type. Allowed: png, jpg, jpeg, gif");
             }
 
-            // Upload and save URL
-            String imageUrl = imageService.uploadFile(profileImage);
-            user.setImageUrl(imageUrl);
+            // Upload the original and render the resized variants in parallel, then save both URLs
+            imageUpdate = imageService.uploadFileAsync(profileImage)
+                    .thenCombine(resizedVariants(profileImage), (imageUrl, variants) -> {
+                        user.setImageUrl(imageUrl);
+                        user.setImageVariants(variants);
+                        return user;
+                    });
         }
 
+        return imageUpdate.thenApply(pendingUser -> saveUpdatedUser(pendingUser, previousUsername));
+    }
+
+    // Variants are an optimisation: if they cannot be made, clients fall back to the original
+    private CompletableFuture<Map<String, String>> resizedVariants(MultipartFile profileImage) {
+        return profileImageProcessor.createVariantsAsync(profileImage).exceptionally(error -> {
+            logger.warn("Could not create profile image variants", error);
+            return Map.of();
+        });
+    }
+
+    private UserDTO saveUpdatedUser(User user, String previousUsername) {
         // Save updated user
         User updatedUser = userRepository.save(user);
+        if (!updatedUser.getUsername().equals(previousUsername)) {
+            userDirectoryCache.invalidate(previousUsername);
+        }
 
         // Convert to DTO
-        return modelMapper.map(updatedUser, UserDTO.class);
+        return userMapper.toUserDTO(updatedUser, onlineUserService.isOnline(updatedUser.getUsername()));
     }
 
 
@@ -0,0 +1,277 @@
+package com.example.realchatapplication;
+
+import com.example.realchatapplication.dto.GroupRequest;
+import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.model.ConversationReceipt;
+import com.example.realchatapplication.model.ConversationSummary;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import com.example.realchatapplication.service.ChatRoomService;
+import com.example.realchatapplication.service.OnlineUserService;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Two application nodes behind one embedded Artemis STOMP broker, with users connected to
+ * different nodes. Everything runs in this JVM; no external broker or database is needed.
+ */
+class BrokerRelayClusterTests {
+
+    private static EmbeddedActiveMQ broker;
+
+    private static MongoServer mongoServer;
+
+    private static ConfigurableApplicationContext nodeA;
+
+    private static ConfigurableApplicationContext nodeB;
+
+    private static WebSocketStompClient stompClient;
+
+    // Shared by both nodes, so a token issued by one is accepted by the other
+    private static final String JWT_SECRET = "Y2x1c3Rlci1jbHVzdGVyLWNsdXN0ZXItY2x1c3Rlci1jbHVzdGVyLWNsdXN0ZXI=";
+
+    // CONNECT is authenticated with the same JWT the REST API takes
+    private static final Map<String, String> tokens = new HashMap<>();
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        int stompPort = freePort();
+        broker = new EmbeddedActiveMQ().setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("stomp", "tcp://127.0.0.1:" + stompPort
+                        + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/"));
+        broker.start();
+
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        String mongoUri = mongoServer.bindAndGetConnectionString();
+
+        nodeA = startNode("a", stompPort, mongoUri);
+        nodeB = startNode("b", stompPort, mongoUri);
+
+        UserRepository userRepository = nodeA.getBean(UserRepository.class);
+        JwtService jwtService = nodeA.getBean(JwtService.class);
+        for (String username : List.of("alice", "bob", "carol")) {
+            User user = new User();
+            user.setUsername(username);
+            user.setEmail(username + "@example.com");
+            user.setPassword("unused");
+            tokens.put(username, jwtService.generateToken(userRepository.save(user)));
+        }
+
+        await().atMost(Duration.ofSeconds(20)).until(() ->
+                nodeA.getBean(StompBrokerRelayMessageHandler.class).isBrokerAvailable()
+                        && nodeB.getBean(StompBrokerRelayMessageHandler.class).isBrokerAvailable());
+
+        stompClient = new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        ThreadPoolTaskScheduler receiptScheduler = new ThreadPoolTaskScheduler();
+        receiptScheduler.initialize();
+        stompClient.setTaskScheduler(receiptScheduler);
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        if (nodeA != null) nodeA.close();
+        if (nodeB != null) nodeB.close();
+        if (mongoServer != null) mongoServer.shutdownNow();
+        if (broker != null) broker.stop();
+    }
+
+    @Test
+    void privateMessagesTypingAndPresenceCrossNodes() throws Exception {
+        StompSession alice = connect(nodeA, "alice");
+        StompSession bob = connect(nodeB, "bob");
+
+        BlockingQueue<Map<String, Object>> bobPrivate = subscribe(bob, "/user/queue/private");
+        BlockingQueue<Map<String, Object>> bobTyping = subscribe(bob, "/user/queue/typing");
+        BlockingQueue<Map<String, Object>> bobPresence = subscribe(bob, "/topic/presence");
+        BlockingQueue<Map<String, Object>> alicePrivate = subscribe(alice, "/user/queue/private");
+        BlockingQueue<Map<String, Object>> aliceReceipts = subscribe(alice, "/user/queue/receipts");
+
+        // Presence: alice joins on node A, bob's client and node B both learn about it
+        alice.send("/app/chat.addUser", Map.of("sender", "alice", "type", "JOIN"));
+        Map<String, Object> delta = poll(bobPresence);
+        assertThat(delta.get("node")).asString().startsWith("a-");
+        assertThat(delta.get("joined")).isEqualTo(List.of("alice"));
+        await().atMost(Duration.ofSeconds(10)).until(() -> nodeB.getBean(OnlineUserService.class).isOnline("alice"));
+
+        // Private message from node A to a user on node B, echoed to the sender on node A
+        alice.send("/app/chat.sendPrivateMessage", Map.of(
+                "sender", "alice", "recipient", "bob", "content", "hello from node A", "type", "PRIVATE_MESSAGE"));
+        Map<String, Object> received = poll(bobPrivate);
+        assertThat(received.get("content")).isEqualTo("hello from node A");
+        assertThat(poll(alicePrivate).get("content")).isEqualTo("hello from node A");
+
+        // Bob reads it on node B, alice gets the receipt on node A and the watermark is stored
+        bob.send("/app/chat.ack", Map.of("peer", "alice", "messageId", received.get("id"), "type", "READ"));
+        Map<String, Object> receipt = poll(aliceReceipts);
+        assertThat(receipt.get("username")).isEqualTo("bob");
+        assertThat(receipt.get("type")).isEqualTo("READ");
+        assertThat(receipt.get("messageId")).isEqualTo(received.get("id"));
+        ConversationReceipt stored = nodeA.getBean(MongoTemplate.class)
+                .findById(ConversationReceipt.idOf("alice:bob", "bob"), ConversationReceipt.class);
+        assertThat(stored.getRead().getMessageId()).isEqualTo(received.get("id"));
+        assertThat(stored.getDelivered()).isEqualTo(stored.getRead());
+        assertThat(nodeA.getBean(MongoTemplate.class).findById(
+                ConversationSummary.idOf("alice:bob", "bob"), ConversationSummary.class).getUnreadCount()).isZero();
+
+        // Typing indicator across nodes
+        alice.send("/app/chat.typing", Map.of("sender", "alice", "recipient", "bob", "isTyping", true));
+        Map<String, Object> typing = poll(bobTyping);
+        assertThat(typing.get("sender")).isEqualTo("alice");
+        assertThat(typing.get("isTyping")).isEqualTo(true);
+
+        alice.disconnect();
+        bob.disconnect();
+    }
+
+    @Test
+    void roomMessagesFanOutToMembersOnEveryNode() throws Exception {
+        ChatRoom room = nodeA.getBean(ChatRoomService.class)
+                .create("alice", new GroupRequest("team", null, List.of("bob")));
+
+        StompSession alice = connect(nodeA, "alice");
+        StompSession bob = connect(nodeB, "bob");
+        StompSession carol = connect(nodeB, "carol");
+        BlockingQueue<Map<String, Object>> aliceRoom = subscribe(alice, ChatRoom.topicOf(room.getId()));
+        BlockingQueue<Map<String, Object>> bobRoom = subscribe(bob, ChatRoom.topicOf(room.getId()));
+
+        // Carol is not a member: her subscription is dropped, so there is no receipt to wait for
+        BlockingQueue<Object> carolRoom = new LinkedBlockingQueue<>();
+        carol.setAutoReceipt(false);
+        carol.subscribe(ChatRoom.topicOf(room.getId()), new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                carolRoom.add(payload);
+            }
+        });
+
+        alice.send("/app/room.send", Map.of("chatRoomId", room.getId(), "content", "hello team"));
+        Map<String, Object> received = poll(bobRoom);
+        assertThat(received.get("content")).isEqualTo("hello team");
+        assertThat(received.get("sender")).isEqualTo("alice");
+        assertThat(poll(aliceRoom).get("id")).isEqualTo(received.get("id"));
+        assertThat(carolRoom.poll(1, TimeUnit.SECONDS)).isNull();
+
+        // Stored once, under the room's conversation
+        assertThat(nodeB.getBean(ChatRoomService.class).getHistory(room.getId(), "bob", null, null, null).getMessages())
+                .extracting(ChatMessage::getId).containsExactly((String) received.get("id"));
+
+        // Removing bob on node A reaches node B's membership cache
+        ChatRoomService nodeBRooms = nodeB.getBean(ChatRoomService.class);
+        assertThat(nodeBRooms.isMember(room.getId(), "bob")).isTrue();
+        nodeA.getBean(ChatRoomService.class).removeMember(room.getId(), "alice", "bob");
+        await().atMost(Duration.ofSeconds(10)).until(() -> !nodeBRooms.isMember(room.getId(), "bob"));
+
+        // and closes the subscription bob already holds there
+        alice.send("/app/room.send", Map.of("chatRoomId", room.getId(), "content", "after bob left"));
+        assertThat(poll(aliceRoom).get("content")).isEqualTo("after bob left");
+        assertThat(bobRoom.poll(1, TimeUnit.SECONDS)).isNull();
+
+        alice.disconnect();
+        bob.disconnect();
+        carol.disconnect();
+    }
+
+    private static ConfigurableApplicationContext startNode(String name, int stompPort, String mongoUri) {
+        // Command line arguments, so they win over application.properties
+        return new SpringApplicationBuilder(RealchatapplicationApplication.class).run(
+                "--server.port=0",
+                "--management.server.port=0",
+                "--spring.data.mongodb.uri=" + mongoUri + "/chat",
+                "--spring.data.mongodb.database=chat",
+                "--chat.broker.mode=relay",
+                "--chat.broker.relay.host=127.0.0.1",
+                "--chat.broker.relay.port=" + stompPort,
+                "--chat.node-id=" + name,
+                "--jwt.secret=" + JWT_SECRET,
+                "--chat.presence.cluster.state-interval=1s");
+    }
+
+    private static StompSession connect(ConfigurableApplicationContext node, String username) throws Exception {
+        int port = ((WebServerApplicationContext) node).getWebServer().getPort();
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + tokens.get(username));
+        StompSession session = stompClient.connectAsync("http://127.0.0.1:" + port + "/ws",
+                new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+        session.setAutoReceipt(true);
+        return session;
+    }
+
+    // Returns once the broker has confirmed the subscription, so nothing sent afterwards is missed
+    private static BlockingQueue<Map<String, Object>> subscribe(StompSession session, String destination) throws InterruptedException {
+        BlockingQueue<Map<String, Object>> received = new LinkedBlockingQueue<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        session.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((Map<String, Object>) payload);
+            }
+        }).addReceiptTask(subscribed::countDown);
+        assertThat(subscribed.await(10, TimeUnit.SECONDS)).isTrue();
+        return received;
+    }
+
+    private static Map<String, Object> poll(BlockingQueue<Map<String, Object>> queue) throws InterruptedException {
+        Map<String, Object> message = queue.poll(10, TimeUnit.SECONDS);
+        assertThat(message).isNotNull();
+        return message;
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
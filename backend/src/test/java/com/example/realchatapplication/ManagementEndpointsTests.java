@@ -0,0 +1,93 @@
+package com.example.realchatapplication;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prometheus scrapes carry no token, so metrics must only be reachable on the actuator's own
+ * port, never on the public one.
+ */
+class ManagementEndpointsTests {
+
+    private static final HttpClient http = HttpClient.newHttpClient();
+
+    private static MongoServer mongoServer;
+
+    private static String mongoUri;
+
+    @BeforeAll
+    static void startMongo() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoUri = mongoServer.bindAndGetConnectionString();
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        if (mongoServer != null) mongoServer.shutdownNow();
+    }
+
+    @Test
+    void metricsAreServedOnTheManagementPortOnly() throws Exception {
+        try (ConfigurableApplicationContext context = start("0", "0")) {
+            int publicPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+            int managementPort = context.getEnvironment().getRequiredProperty("local.management.port", Integer.class);
+            assertThat(managementPort).isNotEqualTo(publicPort);
+
+            HttpResponse<String> scrape = get(managementPort, "/actuator/prometheus");
+            assertThat(scrape.statusCode()).isEqualTo(200);
+            assertThat(scrape.body()).contains("jvm_memory_used_bytes");
+            assertThat(get(managementPort, "/actuator/health").statusCode()).isEqualTo(200);
+
+            HttpResponse<String> publicScrape = get(publicPort, "/actuator/prometheus");
+            assertThat(publicScrape.statusCode()).isNotEqualTo(200);
+            assertThat(publicScrape.body()).doesNotContain("jvm_memory_used_bytes");
+        }
+    }
+
+    @Test
+    void metricsOnASharedPortNeedAToken() throws Exception {
+        String port = String.valueOf(freePort());
+        try (ConfigurableApplicationContext context = start(port, port)) {
+            assertThat(get(Integer.parseInt(port), "/actuator/prometheus").statusCode()).isIn(401, 403);
+            assertThat(get(Integer.parseInt(port), "/actuator/health").statusCode()).isEqualTo(200);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String serverPort, String managementPort) {
+        return new SpringApplicationBuilder(RealchatapplicationApplication.class).run(
+                "--server.port=" + serverPort,
+                "--management.server.port=" + managementPort,
+                "--spring.data.mongodb.uri=" + mongoUri + "/management",
+                "--spring.data.mongodb.database=management",
+                "--jwt.secret=bWFuYWdlbWVudC1tYW5hZ2VtZW50LW1hbmFnZW1lbnQtbWFuYWdlbWVudA==",
+                // The in-memory server cannot answer the Mongo health check
+                "--management.health.mongo.enabled=false",
+                "--logging.level.root=WARN");
+    }
+
+    private static HttpResponse<String> get(int port, String path) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
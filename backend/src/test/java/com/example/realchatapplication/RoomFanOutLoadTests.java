@@ -0,0 +1,211 @@
+package com.example.realchatapplication;
+
+import com.example.realchatapplication.dto.GroupRequest;
+import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import com.example.realchatapplication.service.ChatRoomService;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Fan-out latency of room messages for rooms of 10, 100 and 1000 members, on one node with the
+ * simple broker. Every member has its own STOMP session subscribed to the room topic; one member
+ * sends, and the next message goes out once every member has the previous one. Reports the
+ * latency of single deliveries and of the last member to receive each message. Client and server
+ * share one JVM, so absolute numbers are pessimistic on small machines.
+ * <p>
+ * Opt-in: {@code mvn test -Dtest=RoomFanOutLoadTests -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class RoomFanOutLoadTests {
+
+    private static final int[] ROOM_SIZES = {10, 100, 1000};
+
+    private static final int MESSAGES = Integer.getInteger("benchmark.room-messages", 50);
+
+    private static final int WARMUP_MESSAGES = 10;
+
+    @Test
+    void fanOutLatencyByRoomSize() throws Exception {
+        MongoServer mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        String mongoUri = mongoServer.bindAndGetConnectionString();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RealchatapplicationApplication.class).run(
+                "--server.port=0",
+                "--management.server.port=0",
+                "--spring.data.mongodb.uri=" + mongoUri + "/bench",
+                "--spring.data.mongodb.database=bench",
+                "--jwt.secret=YmVuY2gtYmVuY2gtYmVuY2gtYmVuY2gtYmVuY2gtYmVuY2gtYmVuY2g=",
+                "--logging.level.root=WARN")) {
+            int members = Arrays.stream(ROOM_SIZES).max().orElseThrow();
+            List<String> tokens = seedUsers(context, members);
+            List<StompSession> sessions = connectAll(context, tokens);
+
+            System.out.printf("%n%-8s %10s %14s %14s %14s%n", "members", "messages", "p50 ms", "p99 ms", "last p50 ms");
+            for (int size : ROOM_SIZES) {
+                System.out.println(run(context.getBean(ChatRoomService.class), context.getBean(SimpUserRegistry.class),
+                        sessions.subList(0, size)));
+            }
+            sessions.forEach(StompSession::disconnect);
+        } finally {
+            mongoServer.shutdownNow();
+        }
+    }
+
+    private static Result run(ChatRoomService chatRoomService, SimpUserRegistry userRegistry,
+                              List<StompSession> sessions) throws Exception {
+        List<String> others = new ArrayList<>();
+        for (int i = 1; i < sessions.size(); i++) {
+            others.add("member" + i);
+        }
+        ChatRoom room = chatRoomService.create("member0", new GroupRequest("room of " + sessions.size(), null, others));
+
+        AtomicReference<Round> current = new AtomicReference<>();
+        List<StompSession.Subscription> subscriptions = new ArrayList<>();
+        for (StompSession session : sessions) {
+            StompSession.Subscription subscription = session.subscribe(ChatRoom.topicOf(room.getId()), new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return Map.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    Round round = current.get();
+                    if (round != null && round.id.equals(((Map<?, ?>) payload).get("content"))) {
+                        round.delivered(System.nanoTime());
+                    }
+                }
+            });
+            subscriptions.add(subscription);
+        }
+        // The simple broker sends no RECEIPT for SUBSCRIBE, so wait until the server has them all
+        String topic = ChatRoom.topicOf(room.getId());
+        await().atMost(Duration.ofSeconds(30)).until(() ->
+                userRegistry.findSubscriptions(s -> s.getDestination().equals(topic)).size() == sessions.size());
+
+        long[] deliveries = new long[MESSAGES * sessions.size()];
+        long[] lastDeliveries = new long[MESSAGES];
+        int recorded = 0;
+        for (int i = 0; i < WARMUP_MESSAGES + MESSAGES; i++) {
+            Round round = new Round(room.getId() + "-" + i, sessions.size());
+            current.set(round);
+            sessions.get(0).send("/app/room.send", Map.of("chatRoomId", room.getId(), "content", round.id));
+            boolean complete = round.done.await(i < WARMUP_MESSAGES ? 5 : 30, TimeUnit.SECONDS);
+
+            if (i >= WARMUP_MESSAGES) {
+                assertThat(complete).as("every member received message " + i).isTrue();
+                System.arraycopy(round.latencies, 0, deliveries, recorded * sessions.size(), sessions.size());
+                lastDeliveries[recorded++] = Arrays.stream(round.latencies).max().orElseThrow();
+            }
+        }
+        subscriptions.forEach(StompSession.Subscription::unsubscribe);
+
+        Arrays.sort(deliveries);
+        Arrays.sort(lastDeliveries);
+        return new Result(sessions.size(), MESSAGES, percentile(deliveries, 0.5), percentile(deliveries, 0.99),
+                percentile(lastDeliveries, 0.5));
+    }
+
+    // Returns a token per member, in order
+    private static List<String> seedUsers(ConfigurableApplicationContext context, int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setUsername("member" + i);
+            user.setEmail("member" + i + "@example.com");
+            user.setPassword("unused");
+            users.add(user);
+        }
+        JwtService jwtService = context.getBean(JwtService.class);
+        return context.getBean(UserRepository.class).saveAll(users).stream().map(jwtService::generateToken).toList();
+    }
+
+    private static List<StompSession> connectAll(ConfigurableApplicationContext context, List<String> tokens) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        stompClient.setTaskScheduler(scheduler);
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        List<StompSession> sessions = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization", "Bearer " + tokens.get(i));
+            StompSession session = stompClient.connectAsync("http://127.0.0.1:" + port + "/ws",
+                    new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+    // One message on its way to every member
+    private static final class Round {
+        private final String id;
+        private final long sentAt = System.nanoTime();
+        private final long[] latencies;
+        private final AtomicInteger received = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Round(String id, int members) {
+            this.id = id;
+            this.latencies = new long[members];
+        }
+
+        private void delivered(long at) {
+            int n = received.getAndIncrement();
+            if (n < latencies.length) {
+                latencies[n] = at - sentAt;
+                if (n == latencies.length - 1) {
+                    done.countDown();
+                }
+            }
+        }
+    }
+
+    private record Result(int members, int messages, double p50Millis, double p99Millis, double lastP50Millis) {
+        @Override
+        public String toString() {
+            return String.format("%-8d %10d %14.1f %14.1f %14.1f", members, messages, p50Millis, p99Millis, lastP50Millis);
+        }
+    }
+}
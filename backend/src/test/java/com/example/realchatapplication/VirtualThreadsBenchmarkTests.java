@@ -0,0 +1,226 @@
+package com.example.realchatapplication;
+
+import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Platform threads against virtual threads for a blocking request path: every call to
+ * /api/messages/private/history runs Mongo queries, and a proxy in front of the in-memory
+ * Mongo adds network-like latency to each reply. The client keeps more requests in flight than
+ * Tomcat has platform threads. Everything shares one JVM, so run it on a machine with a few
+ * cores or the CPU, not the thread model, sets the ceiling.
+ * <p>
+ * Opt-in, needs Java 21: {@code mvn test -Dtest=VirtualThreadsBenchmarkTests -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadsBenchmarkTests {
+
+    private static final Duration MONGO_LATENCY = Duration.ofMillis(Long.getLong("benchmark.mongo-latency-ms", 20));
+
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 800);
+
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 8000);
+
+    // Tomcat's platform pool size; virtual mode ignores it
+    private static final int PLATFORM_THREADS = Integer.getInteger("benchmark.platform-threads", 200);
+
+    private static final int WARMUP_REQUESTS = 1000;
+
+    @Test
+    void compareThreadingModes() throws Exception {
+        MongoServer mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        InetSocketAddress mongoAddress = mongoServer.bind();
+        try (LatencyProxy proxy = new LatencyProxy(mongoAddress.getPort(), MONGO_LATENCY)) {
+            String mongoUri = "mongodb://127.0.0.1:" + proxy.getPort() + "/bench?maxPoolSize=" + (CONCURRENCY + 100) + "&maxConnecting=100";
+
+            Result platform = run(mongoUri, false);
+            Result virtual = run(mongoUri, true);
+
+            System.out.printf("%n%-10s %12s %10s %10s%n", "threads", "requests/s", "p50 ms", "p99 ms");
+            System.out.println(platform);
+            System.out.println(virtual);
+        } finally {
+            mongoServer.shutdownNow();
+        }
+    }
+
+    private static Result run(String mongoUri, boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RealchatapplicationApplication.class).run(
+                "--server.port=0",
+                "--management.server.port=0",
+                "--spring.data.mongodb.uri=" + mongoUri,
+                "--spring.data.mongodb.database=bench",
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--server.tomcat.threads.max=" + PLATFORM_THREADS,
+                "--jwt.secret=YmVuY2htYXJrLWJlbmNobWFyay1iZW5jaG1hcmstYmVuY2htYXJrLWJlbmNobWFyaw==",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.data.mongodb.core.MongoTemplate=WARN")) {
+            String token = seedUsers(context);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI uri = URI.create("http://127.0.0.1:" + port + "/api/messages/private/history?with=bench1");
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            load(client, uri, token, WARMUP_REQUESTS);
+            long start = System.nanoTime();
+            long[] latencies = load(client, uri, token, REQUESTS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            return new Result(virtualThreads ? "virtual" : "platform", REQUESTS / seconds,
+                    latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6);
+        }
+    }
+
+    private static String seedUsers(ConfigurableApplicationContext context) {
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        userRepository.deleteAll();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            User user = new User();
+            user.setUsername("bench" + i);
+            user.setEmail("bench" + i + "@example.com");
+            user.setPassword("unused");
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+        return context.getBean(JwtService.class).generateToken(users.get(0));
+    }
+
+    // CONCURRENCY client workers, each sending its next request as soon as the last one returns;
+    // gives back each request's latency in nanoseconds
+    private static long[] load(HttpClient client, URI uri, String token, int requests) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        HttpRequest request = HttpRequest.newBuilder(uri).header("Authorization", "Bearer " + token).build();
+        ExecutorService workers = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            for (int w = 0; w < CONCURRENCY; w++) {
+                workers.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                        long sent = System.nanoTime();
+                        try {
+                            if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                });
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.MINUTES);
+        }
+        assertThat(failures.get()).isZero();
+        return latencies;
+    }
+
+    private record Result(String mode, double throughput, double p50Millis, double p99Millis) {
+        @Override
+        public String toString() {
+            return String.format("%-10s %12.0f %10.1f %10.1f", mode, throughput, p50Millis, p99Millis);
+        }
+    }
+
+    // Forwards TCP to Mongo, holding back every reply for the given delay
+    private static final class LatencyProxy implements AutoCloseable {
+
+        private final ServerSocket serverSocket;
+
+        private final Duration delay;
+
+        LatencyProxy(int targetPort, Duration delay) throws IOException {
+            this.serverSocket = new ServerSocket(0);
+            this.delay = delay;
+            daemon(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket client = serverSocket.accept();
+                        Socket upstream = new Socket("127.0.0.1", targetPort);
+                        client.setTcpNoDelay(true);
+                        upstream.setTcpNoDelay(true);
+                        daemon(() -> pump(client, upstream, Duration.ZERO));
+                        daemon(() -> pump(upstream, client, this.delay));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private static void pump(Socket from, Socket to, Duration delay) {
+            byte[] buffer = new byte[16 * 1024];
+            try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (!delay.isZero()) {
+                        Thread.sleep(delay.toMillis());
+                    }
+                    out.write(buffer, 0, read);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // connection closed by either side
+            } finally {
+                try {
+                    from.close();
+                    to.close();
+                } catch (IOException ignored) {
+                    // already closed
+                }
+            }
+        }
+
+        private static void daemon(Runnable task) {
+            Thread thread = new Thread(task, "latency-proxy");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.realchatapplication.controller;
+
+import com.example.realchatapplication.dto.LoginRequestDTO;
+import com.example.realchatapplication.dto.RegisterRequestDTO;
+import com.example.realchatapplication.service.AuthenticationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthControllerTests {
+
+    private final AuthenticationService authenticationService = mock(AuthenticationService.class);
+
+    private final AuthController authController = new AuthController();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(authController, "authenticationService", authenticationService);
+    }
+
+    @Test
+    void inputErrorsAreShownToTheClient() {
+        when(authenticationService.signup(any())).thenThrow(new IllegalArgumentException("Username is already in use"));
+
+        ResponseEntity<?> response = authController.signup(new RegisterRequestDTO()).join();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody()).isEqualTo(Map.of("success", false, "message", "Username is already in use"));
+    }
+
+    @Test
+    void unexpectedErrorsAreNotShownToTheClient() {
+        when(authenticationService.login(any())).thenReturn(
+                CompletableFuture.failedFuture(new IllegalStateException("Timed out connecting to mongo-7:27017")));
+
+        ResponseEntity<?> response = authController.login(new LoginRequestDTO()).join();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(response.getBody().toString()).doesNotContain("mongo-7");
+    }
+
+    @Test
+    void failedAndRefusedLoginsHaveTheirOwnStatus() {
+        when(authenticationService.login(any()))
+                .thenReturn(CompletableFuture.failedFuture(new BadCredentialsException("Invalid email or password")))
+                .thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException()));
+
+        assertThat(authController.login(new LoginRequestDTO()).join().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(authController.login(new LoginRequestDTO()).join().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
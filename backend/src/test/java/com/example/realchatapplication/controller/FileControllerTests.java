@@ -0,0 +1,66 @@
+package com.example.realchatapplication.controller;
+
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.service.ImageService;
+import com.example.realchatapplication.service.MessagePersistenceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileControllerTests {
+
+    private final ImageService imageService = mock(ImageService.class);
+
+    private final MessagePersistenceService messagePersistenceService = mock(MessagePersistenceService.class);
+
+    private final FileController fileController = new FileController(imageService);
+
+    private final MockMultipartFile file = new MockMultipartFile("file", "plan.pdf", "application/pdf", new byte[]{1});
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(fileController, "messagePersistenceService", messagePersistenceService);
+    }
+
+    @Test
+    void uploadIsSentByTheAuthenticatedUser() {
+        when(imageService.uploadFileAsync(any())).thenReturn(CompletableFuture.completedFuture("https://bucket/plan.pdf"));
+
+        fileController.uploadFile(file, "carol", null, user("alice")).join();
+
+        ArgumentCaptor<ChatMessage> stored = ArgumentCaptor.forClass(ChatMessage.class);
+        verify(messagePersistenceService).persist(stored.capture());
+        assertThat(stored.getValue().getSender()).isEqualTo("alice");
+        assertThat(stored.getValue().getConversationId()).isEqualTo(ChatMessage.conversationIdOf("alice", "carol"));
+    }
+
+    @Test
+    void unexpectedErrorsAreNotShownToTheClient() {
+        when(imageService.uploadFileAsync(any())).thenReturn(
+                CompletableFuture.failedFuture(new IllegalStateException("Access denied to bucket chat-prod-uploads")));
+
+        ResponseEntity<String> response = fileController.uploadFile(file, "carol", null, user("alice")).join();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(response.getBody()).doesNotContain("chat-prod-uploads");
+    }
+
+    private static User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        return user;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.realchatapplication.listener;
+
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.service.ChatRoomService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoomSubscriptionInterceptorTests {
+
+    private final ChatRoomService chatRoomService = mock(ChatRoomService.class);
+
+    private final MessageChannel brokerChannel = mock(MessageChannel.class);
+
+    private final MessageChannel inbound = mock(MessageChannel.class);
+
+    private final RoomSubscriptionInterceptor interceptor = new RoomSubscriptionInterceptor(chatRoomService, brokerChannel);
+
+    @Test
+    void onlyMembersMaySubscribeToARoom() {
+        when(chatRoomService.canSubscribe("r1", "alice")).thenReturn(true);
+
+        assertThat(interceptor.preSend(frame(StompCommand.SUBSCRIBE, "alice", "sub-1", ChatRoom.topicOf("r1")), inbound)).isNotNull();
+        assertThat(interceptor.preSend(frame(StompCommand.SUBSCRIBE, "mallory", "sub-1", ChatRoom.topicOf("r1")), inbound)).isNull();
+        assertThat(interceptor.preSend(frame(StompCommand.SEND, "alice", null, ChatRoom.topicOf("r1")), inbound)).isNull();
+    }
+
+    @Test
+    void clientsMaySendOnlyToApplicationDestinations() {
+        // Fake presence on either topic would hide an online user, or make an offline one look reachable
+        for (String destination : new String[]{"/topic/presence", "/topic/cluster.presence", "/topic/public",
+                "/queue/private", "/user/bob/queue/private"}) {
+            assertThat(interceptor.preSend(frame(StompCommand.SEND, "mallory", null, destination), inbound))
+                    .as(destination).isNull();
+        }
+        assertThat(interceptor.preSend(frame(StompCommand.SEND, "alice", null, "/app/chat.sendPrivateMessage"), inbound)).isNotNull();
+    }
+
+    @Test
+    void wildcardSubscriptionsAreRefused() {
+        when(chatRoomService.canSubscribe(any(), any())).thenReturn(true);
+
+        for (String destination : new String[]{"/topic/room.*", "/topic/**", "/topic/room.?1", "/topic/{room}", "/queue/#"}) {
+            assertThat(interceptor.preSend(frame(StompCommand.SUBSCRIBE, "mallory", "sub-1", destination), inbound))
+                    .as(destination).isNull();
+        }
+        assertThat(interceptor.preSend(frame(StompCommand.SEND, "mallory", null, "/topic/room.*"), inbound)).isNull();
+        assertThat(interceptor.preSend(frame(StompCommand.SUBSCRIBE, "alice", "sub-1", "/topic/public"), inbound)).isNotNull();
+    }
+
+    @Test
+    void removedMemberLosesTheSubscriptionTheyHold() {
+        when(chatRoomService.canSubscribe("r1", "bob")).thenReturn(true);
+        when(chatRoomService.canSubscribe("r1", "carol")).thenReturn(true);
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "bob", "sub-1", ChatRoom.topicOf("r1")), inbound);
+        interceptor.preSend(withSession(frame(StompCommand.SUBSCRIBE, "carol", "sub-1", ChatRoom.topicOf("r1")), "s2"), inbound);
+
+        when(chatRoomService.isMember("r1", "carol")).thenReturn(true);
+        interceptor.revokeNonMembers("r1");
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(brokerChannel).send(sent.capture());
+        StompHeaderAccessor unsubscribe = StompHeaderAccessor.wrap(sent.getValue());
+        assertThat(unsubscribe.getCommand()).isEqualTo(StompCommand.UNSUBSCRIBE);
+        assertThat(unsubscribe.getSessionId()).isEqualTo("s1");
+        assertThat(unsubscribe.getSubscriptionId()).isEqualTo("sub-1");
+
+        // Already gone at the broker, so the client's own UNSUBSCRIBE stops here
+        assertThat(interceptor.preSend(frame(StompCommand.UNSUBSCRIBE, "bob", "sub-1", null), inbound)).isNull();
+        assertThat(interceptor.preSend(withSession(frame(StompCommand.UNSUBSCRIBE, "carol", "sub-1", null), "s2"), inbound))
+                .isNotNull();
+    }
+
+    @Test
+    void disconnectForgetsTheSessionsSubscriptions() {
+        when(chatRoomService.canSubscribe("r1", "bob")).thenReturn(true);
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "bob", "sub-1", ChatRoom.topicOf("r1")), inbound);
+
+        interceptor.preSend(frame(StompCommand.DISCONNECT, "bob", null, null), inbound);
+        interceptor.revokeNonMembers("r1");
+
+        verify(brokerChannel, never()).send(any());
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String username, String subscriptionId, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setUser(() -> username);
+        if (subscriptionId != null) {
+            accessor.setSubscriptionId(subscriptionId);
+        }
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> withSession(Message<byte[]> message, String sessionId) {
+        StompHeaderAccessor.getAccessor(message, StompHeaderAccessor.class).setSessionId(sessionId);
+        return message;
+    }
+}
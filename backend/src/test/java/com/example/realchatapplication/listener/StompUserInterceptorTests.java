@@ -0,0 +1,53 @@
+package com.example.realchatapplication.listener;
+
+import com.example.realchatapplication.jwt.JwtAuthenticator;
+import com.example.realchatapplication.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StompUserInterceptorTests {
+
+    private final JwtAuthenticator jwtAuthenticator = mock(JwtAuthenticator.class);
+
+    private final StompUserInterceptor interceptor = new StompUserInterceptor(jwtAuthenticator);
+
+    @Test
+    void principalIsTheTokensUserNotTheClaimedName() {
+        User alice = new User();
+        alice.setUsername("alice");
+        when(jwtAuthenticator.authenticate("alice-token")).thenReturn(alice);
+
+        Message<?> connected = interceptor.preSend(connect("Bearer alice-token", "bob"), mock(MessageChannel.class));
+
+        assertThat(StompHeaderAccessor.wrap(connected).getUser().getName()).isEqualTo("alice");
+    }
+
+    @Test
+    void connectWithoutAValidTokenIsRefused() {
+        assertThatThrownBy(() -> interceptor.preSend(connect(null, "alice"), mock(MessageChannel.class)))
+                .isInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> interceptor.preSend(connect("Bearer forged", "alice"), mock(MessageChannel.class)))
+                .isInstanceOf(BadCredentialsException.class);
+    }
+
+    private static Message<byte[]> connect(String authorization, String username) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        if (authorization != null) {
+            accessor.addNativeHeader("Authorization", authorization);
+        }
+        accessor.addNativeHeader("username", username);
+        accessor.setSessionId("s1");
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.config.SecurityConfig;
+import com.example.realchatapplication.dto.LoginRequestDTO;
+import com.example.realchatapplication.dto.LoginResponseDTO;
+import com.example.realchatapplication.jwt.JwtService;
+import com.example.realchatapplication.mapper.UserMapperImpl;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class AuthenticationServiceTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final PasswordEncoder passwordEncoder = SecurityConfig.passwordEncoder("bcrypt", 4, 1024, 1, 1);
+
+    private final ExecutorService completionExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "completion"));
+
+    private PasswordHashingService passwordHashingService;
+
+    private MongoServer mongoServer;
+
+    private MongoClient mongoClient;
+
+    private UserRepository userRepository;
+
+    private CustomUserDetails userDetailsService;
+
+    private AuthenticationService authenticationService;
+
+    @BeforeEach
+    void setUp() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString());
+        MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, "auth");
+        userRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(UserRepository.class);
+
+        userDetailsService = spy(new CustomUserDetails());
+        ReflectionTestUtils.setField(userDetailsService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userDetailsService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(userDetailsService, "meterRegistry", meterRegistry);
+
+        JwtService jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", "YXV0aC1hdXRoLWF1dGgtYXV0aC1hdXRoLWF1dGgtYXV0aC1hdXRoLWF1dGg=");
+        ReflectionTestUtils.setField(jwtService, "jwtexpiration", 60_000L);
+
+        passwordHashingService = new PasswordHashingService(meterRegistry, 1, 10, completionExecutor);
+        authenticationService = new AuthenticationService();
+        ReflectionTestUtils.setField(authenticationService, "userMapper", new UserMapperImpl());
+        ReflectionTestUtils.setField(authenticationService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(authenticationService, "passwordEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(authenticationService, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(authenticationService, "jwtService", jwtService);
+        ReflectionTestUtils.setField(authenticationService, "onlineUserService", mock(OnlineUserService.class));
+        ReflectionTestUtils.setField(authenticationService, "passwordHashingService", passwordHashingService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHashingService.shutdown();
+        mongoClient.close();
+        mongoServer.shutdown();
+    }
+
+    @Test
+    void legacyBcryptHashLogsInAndIsRehashed() {
+        // Stored before hashes carried an {algorithm} prefix
+        String legacyHash = new BCryptPasswordEncoder(4).encode("secret");
+        saveUser("alice", legacyHash);
+
+        LoginResponseDTO response = authenticationService.login(login("alice@example.com", "secret")).join();
+
+        assertThat(response.getToken()).isNotBlank();
+        assertThat(response.getUserDTO().getUsername()).isEqualTo("alice");
+        String stored = userRepository.findByEmail("alice@example.com").orElseThrow().getPassword();
+        assertThat(stored).startsWith("{bcrypt}").isNotEqualTo(legacyHash);
+        assertThat(passwordEncoder.matches("secret", stored)).isTrue();
+        assertThat(meterRegistry.get("auth.password.rehashes").counter().count()).isEqualTo(1);
+        // The user loaded for the password check is reused for the rehash
+        verify(userDetailsService, never()).loadUserByUsername(any());
+
+        // Current now, so the next login leaves it alone
+        authenticationService.login(login("alice@example.com", "secret")).join();
+        assertThat(userRepository.findByEmail("alice@example.com").orElseThrow().getPassword()).isEqualTo(stored);
+        assertThat(meterRegistry.get("auth.password.rehashes").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void wrongPasswordAndUnknownEmailFailAlike() {
+        String legacyHash = new BCryptPasswordEncoder(4).encode("secret");
+        saveUser("alice", legacyHash);
+
+        assertThatThrownBy(() -> authenticationService.login(login("alice@example.com", "guess")).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> authenticationService.login(login("nobody@example.com", "secret")).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(BadCredentialsException.class);
+        // A failed login never rehashes
+        assertThat(userRepository.findByEmail("alice@example.com").orElseThrow().getPassword()).isEqualTo(legacyHash);
+    }
+
+    @Test
+    void onlyTheHashingRunsOnTheHashingPool() {
+        String thread = passwordHashingService.submit(() -> Thread.currentThread().getName())
+                .thenApply(hashedOn -> hashedOn + " then " + Thread.currentThread().getName())
+                .join();
+
+        assertThat(thread).isEqualTo("password-hash-1 then completion");
+    }
+
+    private void saveUser(String username, String passwordHash) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword(passwordHash);
+        userRepository.save(user);
+    }
+
+    private static LoginRequestDTO login(String email, String password) {
+        LoginRequestDTO request = new LoginRequestDTO();
+        request.setEmail(email);
+        request.setPassword(password);
+        return request;
+    }
+}
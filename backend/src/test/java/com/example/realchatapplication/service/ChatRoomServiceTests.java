@@ -0,0 +1,94 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.GroupRequest;
+import com.example.realchatapplication.listener.RoomSubscriptionInterceptor;
+import com.example.realchatapplication.model.ChatRoom;
+import com.example.realchatapplication.repository.ChatRoomRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatRoomServiceTests {
+
+    private final UserDirectoryCache userDirectoryCache = mock(UserDirectoryCache.class);
+
+    private final RoomSubscriptionInterceptor roomSubscriptionInterceptor = mock(RoomSubscriptionInterceptor.class);
+
+    private MongoServer mongoServer;
+
+    private MongoClient mongoClient;
+
+    private ChatRoomRepository chatRoomRepository;
+
+    private ChatRoomService chatRoomService;
+
+    @BeforeEach
+    void setUp() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString());
+        MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, "rooms");
+        chatRoomRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(ChatRoomRepository.class);
+        when(userDirectoryCache.exists(anyString())).thenReturn(true);
+        chatRoomService = new ChatRoomService(chatRoomRepository, mongoTemplate, mock(MessagePersistenceService.class),
+                mock(MessageService.class), userDirectoryCache, mock(SimpMessageSendingOperations.class),
+                roomSubscriptionInterceptor, mock(ListableBeanFactory.class), new SimpleMeterRegistry(),
+                3, 100, Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoClient.close();
+        mongoServer.shutdown();
+    }
+
+    @Test
+    void batchLargerThanTheRoomIsRejected() {
+        ChatRoom room = chatRoomService.create("alice", new GroupRequest("team", null, List.of()));
+
+        assertThatThrownBy(() -> chatRoomService.addMembers(room.getId(), "alice", List.of("bob", "carol", "dave", "erin")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> chatRoomService.addMembers(room.getId(), "alice", List.of("bob", "carol", "dave")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(chatRoomRepository.findById(room.getId()).orElseThrow().getMembers()).containsExactly("alice");
+    }
+
+    @Test
+    void membersAreAddedUpToTheLimit() {
+        ChatRoom room = chatRoomService.create("alice", new GroupRequest("team", null, List.of("bob")));
+
+        assertThat(chatRoomService.addMembers(room.getId(), "bob", List.of("carol")).getMembers())
+                .containsExactlyInAnyOrder("alice", "bob", "carol");
+        assertThatThrownBy(() -> chatRoomService.addMembers(room.getId(), "alice", List.of("dave")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void removingAMemberRevokesTheirOpenSubscriptions() {
+        ChatRoom room = chatRoomService.create("alice", new GroupRequest("team", null, List.of("bob")));
+
+        chatRoomService.removeMember(room.getId(), "alice", "bob");
+
+        assertThat(chatRoomService.isMember(room.getId(), "bob")).isFalse();
+        verify(roomSubscriptionInterceptor).revokeNonMembers(room.getId());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ConversationSummary;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+class ConversationSummaryServiceTests {
+
+    private MongoServer mongoServer;
+
+    private MongoClient mongoClient;
+
+    private MongoTemplate mongoTemplate;
+
+    private ConversationSummaryService conversationSummaryService;
+
+    // Mongo keeps milliseconds, so the test clock does too
+    private LocalDateTime clock = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @BeforeEach
+    void setUp() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString());
+        mongoTemplate = spy(new MongoTemplate(mongoClient, "summaries"));
+        conversationSummaryService = new ConversationSummaryService(mongoTemplate, new SimpleMeterRegistry(), 80, 30, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoClient.close();
+        mongoServer.shutdown();
+    }
+
+    @Test
+    void bothSidesSeeTheMessageAndOnlyTheRecipientHasItUnread() {
+        conversationSummaryService.record(List.of(message("alice", "carol", "while you were away")));
+
+        ConversationSummary carolsView = summary("carol");
+        assertThat(carolsView.getCounterpart()).isEqualTo("alice");
+        assertThat(carolsView.getLastMessagePreview()).isEqualTo("while you were away");
+        assertThat(carolsView.getUnreadCount()).isEqualTo(1);
+        assertThat(summary("alice").getCounterpart()).isEqualTo("carol");
+        assertThat(summary("alice").getUnreadCount()).isZero();
+    }
+
+    @Test
+    void lateBatchDoesNotMoveTheLastMessageBack() {
+        ChatMessage older = message("alice", "carol", "older");
+        ChatMessage newer = message("alice", "carol", "newer");
+
+        // Write-behind batches from two nodes can land out of order
+        conversationSummaryService.record(List.of(newer));
+        conversationSummaryService.record(List.of(older));
+
+        ConversationSummary carolsView = summary("carol");
+        assertThat(carolsView.getLastMessageId()).isEqualTo(newer.getId());
+        assertThat(carolsView.getLastMessagePreview()).isEqualTo("newer");
+        assertThat(carolsView.getLastMessageAt()).isEqualTo(newer.getTimestamp());
+        assertThat(carolsView.getUnreadCount()).isEqualTo(2);
+    }
+
+    @Test
+    void newestMessageOfABatchWinsWhateverItsPosition() {
+        ChatMessage older = message("alice", "carol", "older");
+        ChatMessage newer = message("carol", "alice", "newer");
+
+        // The newer message comes first, and this batch creates the summaries
+        conversationSummaryService.record(List.of(newer, older));
+
+        for (String owner : List.of("alice", "carol")) {
+            ConversationSummary view = summary(owner);
+            assertThat(view.getLastMessageId()).as(owner).isEqualTo(newer.getId());
+            assertThat(view.getLastMessagePreview()).as(owner).isEqualTo("newer");
+            assertThat(view.getLastMessageAt()).as(owner).isEqualTo(newer.getTimestamp());
+        }
+    }
+
+    @Test
+    void fileMessagesWithoutContentPreviewTheFileName() {
+        ChatMessage file = message("alice", "carol", null);
+        file.setType(ChatMessage.MessageType.FILE);
+        file.setFileUrl("https://bucket.s3.amazonaws.com/uploads/1718000000000_holiday%20plan.pdf");
+
+        conversationSummaryService.record(List.of(file));
+
+        assertThat(summary("carol").getLastMessagePreview()).isEqualTo("holiday plan.pdf");
+    }
+
+    @Test
+    void backfillKeepsUnreadCountsOfLiveConversations() {
+        mongoTemplate.insert(message("alice", "bob", "from before the summaries"));
+        ChatMessage live = message("alice", "carol", "sent while backfilling");
+        mongoTemplate.insert(live);
+
+        // A live message lands after the backfill has checked that the collection is empty
+        conversationSummaryService.record(List.of(live));
+        doReturn(false).when(mongoTemplate).exists(any(Query.class), eq(ConversationSummary.class));
+        conversationSummaryService.backfill();
+
+        assertThat(summary("carol").getUnreadCount()).isEqualTo(1);
+        assertThat(summary("bob").getLastMessagePreview()).isEqualTo("from before the summaries");
+        assertThat(summary("bob").getUnreadCount()).isZero();
+        assertThat(summary("alice").getUnreadCount()).isZero();
+    }
+
+    private ConversationSummary summary(String owner) {
+        return conversationSummaryService.getPage(owner, null, null).getConversations().get(0);
+    }
+
+    private ChatMessage message(String sender, String recipient, String content) {
+        clock = clock.plusSeconds(1);
+        ChatMessage message = new ChatMessage();
+        message.setId(new ObjectId().toHexString());
+        message.setSender(sender);
+        message.setRecipient(recipient);
+        message.setContent(content);
+        message.setType(ChatMessage.MessageType.PRIVATE_MESSAGE);
+        message.setTimestamp(clock);
+        message.setConversationId(ChatMessage.conversationIdOf(sender, recipient));
+        return message;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.PresignUploadRequest;
+import com.example.realchatapplication.dto.PresignUploadResponse;
+import com.example.realchatapplication.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DirectUploadServiceTests {
+
+    private final UserService userService = mock(UserService.class);
+
+    private final S3Presigner s3Presigner = S3Presigner.builder()
+            .region(Region.US_EAST_1)
+            .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+            .build();
+
+    private final DirectUploadService directUploadService = new DirectUploadService(s3Presigner,
+            mock(S3Client.class), userService, mock(MessagePersistenceService.class),
+            mock(SimpMessagingTemplate.class), mock(OfflineDeliveryService.class), new SimpleMeterRegistry(),
+            Duration.ofMinutes(5), Duration.ofMinutes(30), 100, DataSize.ofMegabytes(100),
+            List.of("image/*", "application/pdf"));
+
+    @Test
+    void signedUploadIsPublicLikeTheStoredFileUrl() {
+        ReflectionTestUtils.setField(directUploadService, "bucketName", "bucket");
+        when(userService.userExists("bob")).thenReturn(true);
+        User alice = new User();
+        alice.setId("alice-id");
+        PresignUploadRequest request = new PresignUploadRequest();
+        request.setFileName("report.pdf");
+        request.setContentType("application/pdf");
+        request.setSize(1024);
+        request.setRecipient("bob");
+
+        PresignUploadResponse response = directUploadService.presign(alice, request);
+
+        assertThat(response.getHeaders()).containsEntry("x-amz-acl", "public-read");
+        assertThat(response.getUploadUrl()).contains("X-Amz-SignedHeaders=").contains("x-amz-acl");
+        assertThat(response.getHeaders()).doesNotContainKeys("host", "content-length");
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.repository.ChatMessageRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessagePersistenceServiceTests {
+
+    private final ChatMessageRepository chatMessageRepository = mock(ChatMessageRepository.class);
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    // Ids of every message that reached Mongo, batched or inline
+    private final Set<String> stored = ConcurrentHashMap.newKeySet();
+
+    // A small queue and slow batch writes, so senders are blocked in the enqueue when stop() runs
+    private final MessagePersistenceService service = new MessagePersistenceService(chatMessageRepository, mongoTemplate,
+            mock(ConversationSummaryService.class), new SimpleMeterRegistry(),
+            "write-behind", 10, 5, Duration.ofMillis(5), Duration.ofMillis(100));
+
+    MessagePersistenceServiceTests() {
+        when(mongoTemplate.insert(anyCollection(), eq(ChatMessage.class))).thenAnswer(invocation -> {
+            Thread.sleep(1);
+            Collection<ChatMessage> batch = invocation.getArgument(0);
+            batch.forEach(message -> stored.add(message.getId()));
+            return batch;
+        });
+        when(chatMessageRepository.save(any(ChatMessage.class))).thenAnswer(invocation -> {
+            ChatMessage message = invocation.getArgument(0);
+            if (message.getId() == null) {
+                message.setId(new ObjectId().toHexString());
+            }
+            stored.add(message.getId());
+            return message;
+        });
+    }
+
+    @Test
+    void queuedMessagesAreWrittenOnStop() {
+        service.start();
+        List<ChatMessage> sent = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sent.add(service.persist(message(i)));
+        }
+        service.stop();
+
+        assertThat(stored).containsExactlyInAnyOrderElementsOf(sent.stream().map(ChatMessage::getId).toList());
+    }
+
+    @Test
+    void messagesAfterStopAreWrittenInline() {
+        service.start();
+        service.stop();
+
+        ChatMessage saved = service.persist(message(0));
+
+        assertThat(stored).containsExactly(saved.getId());
+    }
+
+    @Test
+    void noMessageIsLostWhileStopping() throws Exception {
+        service.start();
+        List<Thread> senders = new ArrayList<>();
+        Set<String> sent = ConcurrentHashMap.newKeySet();
+        for (int t = 0; t < 4; t++) {
+            Thread sender = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    sent.add(service.persist(message(i)).getId());
+                }
+            });
+            senders.add(sender);
+            sender.start();
+        }
+
+        Thread.sleep(20);
+        service.stop();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        assertThat(sent).hasSize(2000);
+        assertThat(stored).containsAll(sent);
+    }
+
+    @Test
+    void clientSuppliedIdCannotOverwriteAnotherMessage() {
+        MongoServer mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        try (MongoClient mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString())) {
+            MongoTemplate template = spy(new MongoTemplate(mongoClient, "persistence"));
+            ChatMessage original = template.insert(message(0));
+            MessagePersistenceService writeBehind = new MessagePersistenceService(chatMessageRepository, template,
+                    mock(ConversationSummaryService.class), new SimpleMeterRegistry(),
+                    "write-behind", 10, 5, Duration.ofMillis(5), Duration.ofMillis(100));
+
+            writeBehind.start();
+            ChatMessage forged = message(1);
+            forged.setId(original.getId());
+            ChatMessage accepted = writeBehind.persist(forged);
+            writeBehind.stop();
+
+            assertThat(accepted.getId()).isNotEqualTo(original.getId());
+            assertThat(template.findById(original.getId(), ChatMessage.class).getContent()).isEqualTo("message 0");
+            assertThat(template.findById(accepted.getId(), ChatMessage.class).getContent()).isEqualTo("message 1");
+        } finally {
+            mongoServer.shutdown();
+        }
+    }
+
+    @Test
+    void failedBatchIsRetriedWithoutOverwriting() {
+        MongoServer mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        try (MongoClient mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString())) {
+            MongoTemplate template = spy(new MongoTemplate(mongoClient, "persistence"));
+            // The batch fails after storing its first message
+            doAnswer(invocation -> {
+                Collection<ChatMessage> batch = invocation.getArgument(0);
+                template.insert(batch.iterator().next());
+                throw new DuplicateKeyException("E11000 duplicate key error");
+            }).when(template).insert(anyCollection(), eq(ChatMessage.class));
+            MessagePersistenceService writeBehind = new MessagePersistenceService(chatMessageRepository, template,
+                    mock(ConversationSummaryService.class), new SimpleMeterRegistry(),
+                    "write-behind", 10, 5, Duration.ofMillis(50), Duration.ofMillis(100));
+
+            writeBehind.start();
+            List<String> sent = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                sent.add(writeBehind.persist(message(i)).getId());
+            }
+            writeBehind.stop();
+
+            assertThat(template.findAll(ChatMessage.class)).extracting(ChatMessage::getId).containsExactlyInAnyOrderElementsOf(sent);
+            verify(template, never()).save(any(ChatMessage.class));
+        } finally {
+            mongoServer.shutdown();
+        }
+    }
+
+    private static ChatMessage message(int i) {
+        ChatMessage message = new ChatMessage();
+        message.setSender("alice");
+        message.setRecipient("bob");
+        message.setContent("message " + i);
+        return message;
+    }
+}
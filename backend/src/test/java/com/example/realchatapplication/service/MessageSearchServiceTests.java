@@ -0,0 +1,132 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.MessageSearchHitDTO;
+import com.example.realchatapplication.dto.MessageSearchHitDTO.Highlight;
+import com.example.realchatapplication.dto.MessageSearchPageDTO;
+import com.example.realchatapplication.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageSearchServiceTests {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    private final MessageSearchService searchService = new MessageSearchService(mongoTemplate, mock(ChatRoomService.class),
+            new SimpleMeterRegistry(), 2, 50, 200, 20, Duration.ofSeconds(2));
+
+    @Test
+    void termsArePhrasesAndWordsButNotNegatedWords() {
+        List<Pattern> terms = MessageSearchService.highlightTerms("\"release notes\" deploy -staging friday deploy");
+
+        assertThat(terms).hasSize(3);
+        assertThat(matches(terms, "Release Notes")).isTrue();
+        assertThat(matches(terms, "DEPLOY")).isTrue();
+        assertThat(matches(terms, "friday")).isTrue();
+        assertThat(matches(terms, "staging")).isFalse();
+        // Whole words only
+        assertThat(matches(terms, "redeployed")).isFalse();
+    }
+
+    @Test
+    void regexCharactersInTheQueryAreMatchedLiterally() {
+        List<Pattern> terms = MessageSearchService.highlightTerms("\"a.b (c)\"");
+
+        assertThat(matches(terms, "a.b (c)")).isTrue();
+        assertThat(matches(terms, "axb (c)")).isFalse();
+    }
+
+    @Test
+    void highlightsAreOffsetsIntoTheSnippet() {
+        MessageSearchHitDTO hit = searchService.hit(message("deploy the release notes"),
+                MessageSearchService.highlightTerms("\"release notes\" release deploy"));
+
+        assertThat(hit.getSnippet()).isEqualTo("deploy the release n…");
+        // The phrase runs past the window, so only the word is highlighted there
+        assertThat(hit.getHighlights()).containsExactly(new Highlight(0, 6), new Highlight(11, 18));
+        assertThat(text(hit, hit.getHighlights().get(1))).isEqualTo("release");
+    }
+
+    @Test
+    void phraseWinsOverItsOwnFirstWord() {
+        MessageSearchHitDTO hit = searchService.hit(message("release notes"),
+                MessageSearchService.highlightTerms("release \"release notes\""));
+
+        assertThat(hit.getSnippet()).isEqualTo("release notes");
+        assertThat(hit.getHighlights()).containsExactly(new Highlight(0, 13));
+    }
+
+    @Test
+    void snippetStartsShortlyBeforeALateMatch() {
+        MessageSearchHitDTO hit = searchService.hit(message("a long introduction before we finally deploy it"),
+                MessageSearchService.highlightTerms("deploy"));
+
+        assertThat(hit.getSnippet()).startsWith("…").contains("deploy");
+        assertThat(hit.getHighlights()).singleElement().satisfies(h -> assertThat(text(hit, h)).isEqualTo("deploy"));
+    }
+
+    @Test
+    void messageWithoutContentHasAnEmptySnippet() {
+        MessageSearchHitDTO hit = searchService.hit(message(null), MessageSearchService.highlightTerms("deploy"));
+
+        assertThat(hit.getSnippet()).isEmpty();
+        assertThat(hit.getHighlights()).isEmpty();
+    }
+
+    @Test
+    void extraRowMeansAnotherPageFromTheLastHit() {
+        ChatMessage first = message("deploy one");
+        ChatMessage second = message("deploy two");
+        when(mongoTemplate.find(any(Query.class), eq(ChatMessage.class)))
+                .thenReturn(List.of(first, second, message("deploy three")));
+
+        MessageSearchPageDTO page = searchService.search("alice", "deploy", "bob", null, null, null, null, null, null);
+
+        assertThat(page.getHits()).extracting(MessageSearchHitDTO::getMessage).containsExactly(first, second);
+        assertThat(page.isHasMore()).isTrue();
+        assertThat(page.getNextCursor()).isEqualTo(second.getId());
+    }
+
+    @Test
+    void invalidRequestsAreRejected() {
+        assertThatThrownBy(() -> searchService.search("alice", " ", null, null, null, null, null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchService.search("alice", "deploy", "bob", "r1", null, null, null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchService.search("alice", "deploy", null, null, null, "yesterday", null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> searchService.search("alice", "deploy", null, null, null, null, null, "not-an-id", null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static boolean matches(List<Pattern> terms, String text) {
+        return terms.stream().anyMatch(term -> term.matcher(text).find());
+    }
+
+    private static String text(MessageSearchHitDTO hit, Highlight highlight) {
+        return hit.getSnippet().substring(highlight.getStart(), highlight.getEnd());
+    }
+
+    private static ChatMessage message(String content) {
+        ChatMessage message = new ChatMessage();
+        message.setId(new ObjectId().toHexString());
+        message.setSender("bob");
+        message.setRecipient("alice");
+        message.setContent(content);
+        message.setType(ChatMessage.MessageType.PRIVATE_MESSAGE);
+        return message;
+    }
+}
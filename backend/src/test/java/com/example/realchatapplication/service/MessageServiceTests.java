@@ -0,0 +1,168 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.MessagePageDTO;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.repository.ChatMessageRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageServiceTests {
+
+    private MongoServer mongoServer;
+
+    private MongoClient mongoClient;
+
+    private MongoTemplate mongoTemplate;
+
+    private MessageService messageService;
+
+    // Mongo keeps milliseconds, so the test clock does too
+    private LocalDateTime clock = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @BeforeEach
+    void setUp() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString());
+        mongoTemplate = new MongoTemplate(mongoClient, "history");
+        ChatMessageRepository repository = new MongoRepositoryFactory(mongoTemplate).getRepository(ChatMessageRepository.class);
+        messageService = new MessageService(repository);
+        ReflectionTestUtils.setField(messageService, "defaultPageSize", 3);
+        ReflectionTestUtils.setField(messageService, "maxPageSize", 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoClient.close();
+        mongoServer.shutdown();
+    }
+
+    @Test
+    void latestPageIsNewestFirstWithCursorsAtBothEnds() {
+        List<ChatMessage> sent = send(5);
+        send("alice", "dave", 1);
+
+        MessagePageDTO page = messageService.getPrivateHistory("carol", "alice", null, null, null);
+
+        assertThat(ids(page)).containsExactly(sent.get(4).getId(), sent.get(3).getId(), sent.get(2).getId());
+        assertThat(page.isHasMore()).isTrue();
+        assertThat(page.getPrevCursor()).isEqualTo(sent.get(4).getId());
+        assertThat(page.getNextCursor()).isEqualTo(sent.get(2).getId());
+    }
+
+    @Test
+    void idCursorsPageBothWaysWithoutOverlap() {
+        List<ChatMessage> sent = send(5);
+
+        MessagePageDTO older = messageService.getPrivateHistory("alice", "carol", sent.get(2).getId(), null, null);
+        assertThat(ids(older)).containsExactly(sent.get(1).getId(), sent.get(0).getId());
+        assertThat(older.isHasMore()).isFalse();
+
+        // "after" pages come back newest first too, starting right past the cursor
+        MessagePageDTO newer = messageService.getPrivateHistory("alice", "carol", null, sent.get(0).getId(), 2);
+        assertThat(ids(newer)).containsExactly(sent.get(2).getId(), sent.get(1).getId());
+        assertThat(newer.isHasMore()).isTrue();
+    }
+
+    @Test
+    void messagesSharingATimestampAreOrderedAndPagedById() {
+        List<ChatMessage> sameInstant = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            sameInstant.add(save("alice", "carol", clock));
+        }
+
+        MessagePageDTO first = messageService.getPrivateHistory("alice", "carol", null, null, 2);
+        assertThat(ids(first)).containsExactly(sameInstant.get(3).getId(), sameInstant.get(2).getId());
+
+        MessagePageDTO second = messageService.getPrivateHistory("alice", "carol", first.getNextCursor(), null, 2);
+        assertThat(ids(second)).containsExactly(sameInstant.get(1).getId(), sameInstant.get(0).getId());
+        assertThat(second.isHasMore()).isFalse();
+    }
+
+    @Test
+    void timestampCursorsIncludeNothingAtThatInstant() {
+        List<ChatMessage> sent = send(3);
+        LocalDateTime middle = sent.get(1).getTimestamp();
+        ChatMessage sameInstant = save("alice", "carol", middle);
+
+        // The sentinel ids put a bare timestamp before every id at that instant going back, and after every id going forward
+        MessagePageDTO before = messageService.getPrivateHistory("alice", "carol", middle.toString(), null, null);
+        assertThat(ids(before)).containsExactly(sent.get(0).getId());
+
+        MessagePageDTO after = messageService.getPrivateHistory("alice", "carol", null, middle.toString(), null);
+        assertThat(ids(after)).containsExactly(sent.get(2).getId());
+        assertThat(ids(after)).doesNotContain(sameInstant.getId());
+    }
+
+    @Test
+    void limitFallsBackToTheDefaultAndIsCappedAtTheMaximum() {
+        send(6);
+
+        assertThat(messageService.getPrivateHistory("alice", "carol", null, null, 0).getMessages()).hasSize(3);
+        assertThat(messageService.getPrivateHistory("alice", "carol", null, null, -1).getMessages()).hasSize(3);
+        assertThat(messageService.getPrivateHistory("alice", "carol", null, null, 2).getMessages()).hasSize(2);
+        assertThat(messageService.getPrivateHistory("alice", "carol", null, null, 500).getMessages()).hasSize(4);
+    }
+
+    @Test
+    void invalidCursorsAreRefused() {
+        List<ChatMessage> sent = send(2);
+        ChatMessage elsewhere = send("alice", "dave", 1).get(0);
+
+        assertThatThrownBy(() -> messageService.getPrivateHistory("alice", "carol", "yesterday", null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> messageService.getPrivateHistory("alice", "carol", new ObjectId().toHexString(), null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        // A message from another conversation must not leak its position
+        assertThatThrownBy(() -> messageService.getPrivateHistory("alice", "carol", elsewhere.getId(), null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> messageService.getPrivateHistory("alice", "carol", sent.get(1).getId(), sent.get(0).getId(), null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<String> ids(MessagePageDTO page) {
+        return page.getMessages().stream().map(ChatMessage::getId).toList();
+    }
+
+    private List<ChatMessage> send(int count) {
+        return send("alice", "carol", count);
+    }
+
+    private List<ChatMessage> send(String sender, String recipient, int count) {
+        List<ChatMessage> sent = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            clock = clock.plusSeconds(1);
+            sent.add(save(sender, recipient, clock));
+        }
+        return sent;
+    }
+
+    private ChatMessage save(String sender, String recipient, LocalDateTime timestamp) {
+        ChatMessage message = new ChatMessage();
+        message.setId(new ObjectId().toHexString());
+        message.setSender(sender);
+        message.setRecipient(recipient);
+        message.setContent("hello");
+        message.setType(ChatMessage.MessageType.PRIVATE_MESSAGE);
+        message.setTimestamp(timestamp);
+        message.setConversationId(ChatMessage.conversationIdOf(sender, recipient));
+        return mongoTemplate.insert(message);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.AckRequest;
+import com.example.realchatapplication.dto.OfflineSyncBatch;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ConversationReceipt;
+import com.example.realchatapplication.model.ConversationReceipt.Watermark;
+import com.example.realchatapplication.model.PendingDelivery;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OfflineDeliveryServiceTests {
+
+    private final OnlineUserService onlineUserService = mock(OnlineUserService.class);
+
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MongoServer mongoServer;
+
+    private MongoClient mongoClient;
+
+    private MongoTemplate mongoTemplate;
+
+    private OfflineDeliveryService offlineDeliveryService;
+
+    // Mongo keeps milliseconds, so the test clock does too
+    private LocalDateTime clock = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @BeforeEach
+    void setUp() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString());
+        mongoTemplate = new MongoTemplate(mongoClient, "offline");
+        offlineDeliveryService = new OfflineDeliveryService(mongoTemplate, onlineUserService, messagingTemplate,
+                meterRegistry, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoClient.close();
+        mongoServer.shutdown();
+    }
+
+    @Test
+    void onlyMessagesToOfflineUsersAreRecorded() {
+        when(onlineUserService.isOnline("bob")).thenReturn(true);
+
+        offlineDeliveryService.recordIfOffline(message("alice", "bob", "live"));
+        offlineDeliveryService.recordIfOffline(message("alice", "carol", "while you were away"));
+
+        assertThat(mongoTemplate.findAll(PendingDelivery.class))
+                .extracting(PendingDelivery::getRecipient).containsExactly("carol");
+    }
+
+    @Test
+    void syncPagesThroughEverythingAndKeepsItUntilAcknowledged() {
+        for (int i = 0; i < 5; i++) {
+            offlineDeliveryService.recordIfOffline(message("alice", "carol", "m" + i));
+        }
+
+        assertThat(offlineDeliveryService.sync("carol")).isEqualTo(5);
+        List<OfflineSyncBatch> batches = sentBatches();
+        assertThat(batches).extracting(OfflineSyncBatch::isHasMore).containsExactly(true, true, false);
+        assertThat(batches).flatExtracting(OfflineSyncBatch::getMessages).extracting(ChatMessage::getContent)
+                .containsExactly("m0", "m1", "m2", "m3", "m4");
+
+        // The batches may never have reached the client; the next join gets them again
+        assertThat(mongoTemplate.count(new Query(), PendingDelivery.class)).isEqualTo(5);
+        assertThat(offlineDeliveryService.sync("carol")).isEqualTo(5);
+    }
+
+    @Test
+    void acknowledgementRemovesOnlyWhatTheWatermarkCovers() {
+        ChatMessage first = message("alice", "carol", "first");
+        ChatMessage second = message("alice", "carol", "second");
+        ChatMessage fromBob = message("bob", "carol", "other conversation");
+        for (ChatMessage message : List.of(first, second, fromBob)) {
+            offlineDeliveryService.recordIfOffline(message);
+        }
+
+        offlineDeliveryService.acknowledged(List.of(delivered("carol", first)));
+
+        assertThat(mongoTemplate.findAll(PendingDelivery.class)).extracting(d -> d.getMessage().getContent())
+                .containsExactlyInAnyOrder("second", "other conversation");
+        assertThat(meterRegistry.get("chat.offline.acknowledged").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void deliveredAckFlushedByReceiptServiceClearsTheSyncedMessages() {
+        ChatMessage first = message("alice", "carol", "first");
+        ChatMessage second = message("alice", "carol", "second");
+        mongoTemplate.insert(first);
+        mongoTemplate.insert(second);
+        offlineDeliveryService.recordIfOffline(first);
+        offlineDeliveryService.recordIfOffline(second);
+        ReceiptService receiptService = new ReceiptService(mongoTemplate, messagingTemplate,
+                mock(ConversationSummaryService.class), offlineDeliveryService, meterRegistry, 1000, 100);
+
+        offlineDeliveryService.sync("carol");
+        receiptService.ack("carol", new AckRequest("alice", second.getId(), ConversationReceipt.Type.DELIVERED));
+        receiptService.flush();
+
+        assertThat(mongoTemplate.count(new Query(), PendingDelivery.class)).isZero();
+    }
+
+    private ChatMessage message(String sender, String recipient, String content) {
+        clock = clock.plusSeconds(1);
+        ChatMessage message = new ChatMessage();
+        message.setId(new ObjectId().toHexString());
+        message.setSender(sender);
+        message.setRecipient(recipient);
+        message.setContent(content);
+        message.setType(ChatMessage.MessageType.PRIVATE_MESSAGE);
+        message.setTimestamp(clock);
+        message.setConversationId(ChatMessage.conversationIdOf(sender, recipient));
+        return message;
+    }
+
+    private static ConversationReceipt delivered(String username, ChatMessage upTo) {
+        return new ConversationReceipt(ConversationReceipt.idOf(upTo.getConversationId(), username),
+                upTo.getConversationId(), username, new Watermark(upTo.getTimestamp(), upTo.getId()), null, null);
+    }
+
+    private List<OfflineSyncBatch> sentBatches() {
+        ArgumentCaptor<OfflineSyncBatch> captor = ArgumentCaptor.forClass(OfflineSyncBatch.class);
+        verify(messagingTemplate, atLeast(1)).convertAndSendToUser(eq("carol"), eq(OfflineDeliveryService.SYNC_QUEUE), captor.capture());
+        return captor.getAllValues();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.event.PresenceChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class OnlineUserServiceTests {
+
+    private final List<PresenceChangedEvent> events = new CopyOnWriteArrayList<>();
+
+    private final OnlineUserService onlineUserService = new OnlineUserService(
+            event -> events.add((PresenceChangedEvent) event), mock(ClusterPresenceTracker.class),
+            new SimpleMeterRegistry(), Duration.ofSeconds(60));
+
+    @Test
+    void userIsOnlineWhileAnySessionIsOpen() {
+        onlineUserService.sessionOpened("s1", false);
+        onlineUserService.sessionOpened("s2", false);
+        onlineUserService.userJoined("alice", "s1");
+        onlineUserService.userJoined("alice", "s2");
+
+        onlineUserService.sessionClosed("s1");
+        assertThat(onlineUserService.isOnline("alice")).isTrue();
+        onlineUserService.sessionClosed("s2");
+        assertThat(onlineUserService.isOnline("alice")).isFalse();
+
+        assertThat(events).extracting(PresenceChangedEvent::isOnline).containsExactly(true, false);
+        assertThat(events.get(1).getVersion()).isGreaterThan(events.get(0).getVersion());
+    }
+
+    @Test
+    void joinAfterDisconnectIsIgnored() {
+        onlineUserService.sessionOpened("s1", true);
+        onlineUserService.sessionClosed("s1");
+
+        assertThat(onlineUserService.userJoined("alice", "s1")).isFalse();
+        assertThat(onlineUserService.isOnline("alice")).isFalse();
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void concurrentJoinAndDisconnectNeverLeaveTheUserOnline() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            String sessionId = "s" + i;
+            onlineUserService.sessionOpened(sessionId, false);
+            Thread join = new Thread(() -> onlineUserService.userJoined("alice", sessionId));
+            join.start();
+            onlineUserService.sessionClosed(sessionId);
+            join.join();
+
+            assertThat(onlineUserService.isOnline("alice")).isFalse();
+        }
+        // Every online event is followed by an offline one
+        assertThat(events.size() % 2).isZero();
+    }
+}
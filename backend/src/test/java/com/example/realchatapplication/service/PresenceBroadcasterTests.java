@@ -0,0 +1,75 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.config.ClusterNode;
+import com.example.realchatapplication.dto.PresenceDelta;
+import com.example.realchatapplication.event.PresenceChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PresenceBroadcasterTests {
+
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+
+    private final OnlineUserService onlineUserService = mock(OnlineUserService.class);
+
+    private final PresenceBroadcaster broadcaster = new PresenceBroadcaster(
+            messagingTemplate, new ClusterNode("test"), onlineUserService, "simple");
+
+    @Test
+    void eventsDeliveredOutOfOrderStillAnnounceTheCurrentState() {
+        when(onlineUserService.isOnlineHere("alice")).thenReturn(true);
+
+        // The later join arrives before the earlier leave
+        broadcaster.onPresenceChanged(new PresenceChangedEvent("alice", true, 2));
+        broadcaster.onPresenceChanged(new PresenceChangedEvent("alice", false, 1));
+        broadcaster.flush();
+
+        PresenceDelta delta = sentDeltas(1).get(0);
+        assertThat(delta.getJoined()).containsExactly("alice");
+        assertThat(delta.getLeft()).isEmpty();
+        assertThat(broadcaster.snapshot().getOnlineUsers()).containsExactly("alice");
+    }
+
+    @Test
+    void reconnectInsideTheWindowSendsNothing() {
+        when(onlineUserService.isOnlineHere("alice")).thenReturn(true);
+        broadcaster.onPresenceChanged(new PresenceChangedEvent("alice", true, 1));
+        broadcaster.flush();
+
+        broadcaster.onPresenceChanged(new PresenceChangedEvent("alice", false, 2));
+        broadcaster.onPresenceChanged(new PresenceChangedEvent("alice", true, 3));
+        broadcaster.flush();
+
+        sentDeltas(1);
+    }
+
+    @Test
+    void userWhoLeftIsAnnouncedOnce() {
+        when(onlineUserService.isOnlineHere("alice")).thenReturn(true, false);
+        broadcaster.onPresenceChanged(new PresenceChangedEvent("alice", true, 1));
+        broadcaster.flush();
+        broadcaster.onPresenceChanged(new PresenceChangedEvent("alice", false, 2));
+        broadcaster.flush();
+        broadcaster.flush();
+
+        List<PresenceDelta> deltas = sentDeltas(2);
+        assertThat(deltas.get(1).getLeft()).containsExactly("alice");
+        assertThat(deltas.get(1).getVersion()).isEqualTo(deltas.get(0).getVersion() + 1);
+    }
+
+    private List<PresenceDelta> sentDeltas(int expected) {
+        ArgumentCaptor<PresenceDelta> captor = ArgumentCaptor.forClass(PresenceDelta.class);
+        verify(messagingTemplate, times(expected)).convertAndSend(eq(PresenceBroadcaster.PRESENCE_TOPIC), captor.capture());
+        return captor.getAllValues();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.AckRequest;
+import com.example.realchatapplication.dto.ReceiptDTO;
+import com.example.realchatapplication.model.ChatMessage;
+import com.example.realchatapplication.model.ConversationReceipt;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class ReceiptServiceTests {
+
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+
+    private MongoServer mongoServer;
+
+    private MongoClient mongoClient;
+
+    private MongoTemplate mongoTemplate;
+
+    private ReceiptService receiptService;
+
+    private LocalDateTime clock = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @BeforeEach
+    void setUp() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString());
+        mongoTemplate = spy(new MongoTemplate(mongoClient, "receipts"));
+        receiptService = new ReceiptService(mongoTemplate, messagingTemplate, mock(ConversationSummaryService.class),
+                mock(OfflineDeliveryService.class), new SimpleMeterRegistry(), 1000, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoClient.close();
+        mongoServer.shutdown();
+    }
+
+    @Test
+    void ackForAnEarlierMessageArrivingLastDoesNotWin() {
+        ChatMessage first = stored("alice", "bob");
+        ChatMessage second = stored("alice", "bob");
+
+        receiptService.ack("bob", new AckRequest("alice", second.getId(), ConversationReceipt.Type.READ));
+        receiptService.ack("bob", new AckRequest("alice", first.getId(), ConversationReceipt.Type.READ));
+        receiptService.flush();
+
+        assertThat(storedReceipt("bob").getRead().getMessageId()).isEqualTo(second.getId());
+        assertThat(sentReceipt().getMessageId()).isEqualTo(second.getId());
+    }
+
+    @Test
+    void failedBulkWriteIsRetriedOnTheNextFlush() {
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            BulkOperations bulk = spy((BulkOperations) invocation.callRealMethod());
+            if (failNext.getAndSet(false)) {
+                doAnswer(execute -> {
+                    throw new IllegalStateException("primary stepped down");
+                }).when(bulk).execute();
+            }
+            return bulk;
+        }).when(mongoTemplate).bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(ConversationReceipt.class));
+        ChatMessage message = stored("alice", "bob");
+
+        receiptService.ack("bob", new AckRequest("alice", message.getId(), ConversationReceipt.Type.DELIVERED));
+        receiptService.flush();
+        assertThat(storedReceipt("bob")).isNull();
+        verify(messagingTemplate, never()).convertAndSendToUser(any(), any(), any());
+
+        receiptService.flush();
+        assertThat(storedReceipt("bob").getDelivered().getMessageId()).isEqualTo(message.getId());
+        assertThat(sentReceipt().getMessageId()).isEqualTo(message.getId());
+    }
+
+    @Test
+    void staleAckNeverMovesTheStoredWatermarkBack() {
+        ChatMessage first = stored("alice", "bob");
+        ChatMessage second = stored("alice", "bob");
+
+        receiptService.ack("bob", new AckRequest("alice", second.getId(), ConversationReceipt.Type.DELIVERED));
+        receiptService.flush();
+        receiptService.ack("bob", new AckRequest("alice", first.getId(), ConversationReceipt.Type.DELIVERED));
+        receiptService.flush();
+
+        assertThat(storedReceipt("bob").getDelivered().getMessageId()).isEqualTo(second.getId());
+    }
+
+    private ChatMessage stored(String sender, String recipient) {
+        clock = clock.plusSeconds(1);
+        ChatMessage message = new ChatMessage();
+        message.setId(new ObjectId().toHexString());
+        message.setSender(sender);
+        message.setRecipient(recipient);
+        message.setContent("hello");
+        message.setType(ChatMessage.MessageType.PRIVATE_MESSAGE);
+        message.setTimestamp(clock);
+        message.setConversationId(ChatMessage.conversationIdOf(sender, recipient));
+        return mongoTemplate.insert(message);
+    }
+
+    private ConversationReceipt storedReceipt(String username) {
+        return mongoTemplate.findById(ConversationReceipt.idOf("alice:bob", username), ConversationReceipt.class);
+    }
+
+    private ReceiptDTO sentReceipt() {
+        ArgumentCaptor<ReceiptDTO> captor = ArgumentCaptor.forClass(ReceiptDTO.class);
+        verify(messagingTemplate).convertAndSendToUser(eq("alice"), eq(ReceiptService.RECEIPTS_QUEUE), captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.realchatapplication.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the uploader against a minimal in-process S3 stand-in that only speaks the multipart
+ * calls, so the order of part uploads and the abort can be observed.
+ */
+class S3StreamingUploaderTests {
+
+    private static final int PART_SIZE = 1024;
+
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+
+    private HttpServer server;
+
+    private S3Client s3Client;
+
+    private S3StreamingUploader uploader;
+
+    private final Map<Integer, byte[]> storedParts = new ConcurrentHashMap<>();
+
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+
+    private final AtomicBoolean aborted = new AtomicBoolean();
+
+    private final AtomicBoolean partAfterAbort = new AtomicBoolean();
+
+    private final AtomicInteger partsInFlightAtAbort = new AtomicInteger(-1);
+
+    private volatile int failingPart = -1;
+
+    private byte[] completedObject;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        s3Client = S3Client.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .endpointOverride(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+                .forcePathStyle(true)
+                .build();
+        uploader = new S3StreamingUploader(s3Client, new SimpleMeterRegistry(), DataSize.ofBytes(PART_SIZE),
+                DataSize.ofBytes(PART_SIZE), 4, 8, 4);
+    }
+
+    @AfterEach
+    void stopServer() {
+        uploader.shutdown();
+        s3Client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void partsAreReassembledInOrder() throws IOException {
+        byte[] content = content(10 * PART_SIZE + 100);
+
+        uploader.upload("bucket", "file.bin", "application/octet-stream", new ByteArrayInputStream(content), -1);
+
+        assertThat(completedObject).isEqualTo(content);
+        assertThat(aborted).isFalse();
+    }
+
+    @Test
+    void failedPartAbortsOnlyAfterOutstandingPartsFinish() {
+        failingPart = 1;
+        byte[] content = content(10 * PART_SIZE);
+
+        assertThatThrownBy(() -> uploader.upload("bucket", "file.bin", "application/octet-stream",
+                new ByteArrayInputStream(content), -1))
+                .isInstanceOf(S3Exception.class);
+
+        assertThat(aborted).isTrue();
+        assertThat(partsInFlightAtAbort).hasValue(0);
+        assertThat(partAfterAbort).isFalse();
+        assertThat(completedObject).isNull();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        String method = exchange.getRequestMethod();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+
+        if ("POST".equals(method) && query.startsWith("uploads")) {
+            respond(exchange, 200, "<InitiateMultipartUploadResult><Bucket>bucket</Bucket><Key>file.bin</Key>"
+                    + "<UploadId>upload-1</UploadId></InitiateMultipartUploadResult>");
+        } else if ("PUT".equals(method) && query.contains("partNumber=")) {
+            uploadPart(exchange, query, body);
+        } else if ("POST".equals(method)) {
+            completedObject = reassemble();
+            respond(exchange, 200, "<CompleteMultipartUploadResult><Bucket>bucket</Bucket><Key>file.bin</Key>"
+                    + "<ETag>\"done\"</ETag></CompleteMultipartUploadResult>");
+        } else if ("DELETE".equals(method)) {
+            partsInFlightAtAbort.set(partsInFlight.get());
+            aborted.set(true);
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        } else {
+            respond(exchange, 400, "<Error><Code>NotImplemented</Code><Message>" + method + "</Message></Error>");
+        }
+    }
+
+    private void uploadPart(HttpExchange exchange, String query, byte[] body) throws IOException {
+        if (aborted.get()) {
+            partAfterAbort.set(true);
+        }
+        int partNumber = Integer.parseInt(query.replaceAll(".*partNumber=(\\d+).*", "$1"));
+        partsInFlight.incrementAndGet();
+        try {
+            if (partNumber == failingPart) {
+                respond(exchange, 400, "<Error><Code>InvalidPart</Code><Message>rejected</Message></Error>");
+                return;
+            }
+            // Keeps the other parts running while the failure is handled
+            Thread.sleep(failingPart > 0 ? 200 : 5);
+            storedParts.put(partNumber, decode(exchange, body));
+            exchange.getResponseHeaders().add("ETag", "\"part-" + partNumber + "\"");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            partsInFlight.decrementAndGet();
+        }
+    }
+
+    // The SDK may send the payload aws-chunked with a trailing checksum
+    private static byte[] decode(HttpExchange exchange, byte[] body) {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if (encoding == null || !encoding.contains("aws-chunked")) {
+            return body;
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        int position = 0;
+        while (true) {
+            int lineEnd = indexOfCrlf(body, position);
+            String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int length = Integer.parseInt(header.split(";")[0].trim(), 16);
+            position = lineEnd + 2;
+            if (length == 0) {
+                return decoded.toByteArray();
+            }
+            decoded.write(body, position, length);
+            position += length + 2;
+        }
+    }
+
+    private static int indexOfCrlf(byte[] body, int from) {
+        for (int i = from; i < body.length - 1; i++) {
+            if (body[i] == '\r' && body[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Malformed chunked body");
+    }
+
+    private byte[] reassemble() {
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        for (int partNumber = 1; storedParts.containsKey(partNumber); partNumber++) {
+            object.writeBytes(storedParts.get(partNumber));
+        }
+        return object.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+}
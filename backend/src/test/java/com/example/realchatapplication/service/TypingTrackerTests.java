@@ -0,0 +1,147 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.TypingMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class TypingTrackerTests {
+
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Starts away from zero so nothing depends on the clock's origin
+    private final AtomicLong nanos = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    // 1s timeout on 100ms ticks; 4 starts per second with a burst of 8
+    private final TypingTracker tracker = new TypingTracker(messagingTemplate, meterRegistry,
+            Duration.ofSeconds(1), Duration.ofMillis(100), 4, 8, nanos::get);
+
+    @Test
+    void onlyStartedAndStoppedTransitionsAreForwarded() {
+        for (int i = 0; i < 5; i++) {
+            tracker.onTyping("s1", "alice", "bob", true);
+            advance(50);
+        }
+        tracker.onTyping("s1", "alice", "bob", false);
+        tracker.onTyping("s1", "alice", "bob", false);
+
+        assertThat(forwarded()).containsExactly("alice>bob:true", "alice>bob:false");
+        assertThat(events("coalesced")).isEqualTo(5);
+    }
+
+    @Test
+    void silentPairExpiresOnItsTick() {
+        tracker.onTyping("s1", "alice", "bob", true);
+
+        advance(900);
+        tracker.expire();
+        assertThat(forwarded()).containsExactly("alice>bob:true");
+
+        advance(100);
+        tracker.expire();
+        assertThat(forwarded()).containsExactly("alice>bob:true", "alice>bob:false");
+        assertThat(events("expired")).isEqualTo(1);
+    }
+
+    @Test
+    void refreshMovesTheDeadline() {
+        tracker.onTyping("s1", "alice", "bob", true);
+        advance(500);
+        tracker.onTyping("s1", "alice", "bob", true);
+
+        // The slot of the first deadline is swept, but the pair was refreshed since
+        advance(900);
+        tracker.expire();
+        assertThat(forwarded()).containsExactly("alice>bob:true");
+
+        advance(100);
+        tracker.expire();
+        assertThat(forwarded()).containsExactly("alice>bob:true", "alice>bob:false");
+    }
+
+    @Test
+    void expiryCatchesUpAfterAPauseLongerThanTheWheel() {
+        tracker.onTyping("s1", "alice", "bob", true);
+        advance(500);
+        tracker.onTyping("s1", "alice", "carol", true);
+
+        advance(10_000);
+        tracker.expire();
+
+        assertThat(forwarded()).containsExactlyInAnyOrder(
+                "alice>bob:true", "alice>carol:true", "alice>bob:false", "alice>carol:false");
+    }
+
+    @Test
+    void startsAreRateLimitedPerSession() {
+        for (int i = 0; i < 10; i++) {
+            tracker.onTyping("s1", "alice", "user" + i, true);
+        }
+        assertThat(events("forwarded")).isEqualTo(8);
+        assertThat(events("rate-limited")).isEqualTo(2);
+
+        // Another session has its own bucket
+        tracker.onTyping("s2", "bob", "alice", true);
+        assertThat(events("forwarded")).isEqualTo(9);
+
+        // One token back every 250ms
+        advance(200);
+        tracker.onTyping("s1", "alice", "user8", true);
+        advance(50);
+        tracker.onTyping("s1", "alice", "user9", true);
+        assertThat(events("rate-limited")).isEqualTo(3);
+        assertThat(forwarded()).contains("alice>user9:true").doesNotContain("alice>user8:true");
+    }
+
+    @Test
+    void stopsAreNeverRateLimited() {
+        for (int i = 0; i < 8; i++) {
+            tracker.onTyping("s1", "alice", "user" + i, true);
+        }
+        for (int i = 0; i < 8; i++) {
+            tracker.onTyping("s1", "alice", "user" + i, false);
+        }
+        assertThat(events("forwarded")).isEqualTo(16);
+    }
+
+    @Test
+    void closingTheSessionStopsItsPairs() {
+        tracker.onTyping("s1", "alice", "bob", true);
+        tracker.onTyping("s2", "carol", "bob", true);
+
+        tracker.sessionClosed("s1");
+
+        assertThat(forwarded()).containsExactly("alice>bob:true", "carol>bob:true", "alice>bob:false");
+    }
+
+    private void advance(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private double events(String outcome) {
+        return meterRegistry.get("chat.typing.events").tag("outcome", outcome).counter().count();
+    }
+
+    private List<String> forwarded() {
+        ArgumentCaptor<TypingMessage> captor = ArgumentCaptor.forClass(TypingMessage.class);
+        verify(messagingTemplate, atLeast(0)).convertAndSendToUser(anyString(), eq(TypingTracker.TYPING_QUEUE), captor.capture());
+        return captor.getAllValues().stream()
+                .map(message -> message.getSender() + ">" + message.getRecipient() + ":" + message.isTyping())
+                .toList();
+    }
+}
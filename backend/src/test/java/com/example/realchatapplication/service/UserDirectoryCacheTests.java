@@ -0,0 +1,63 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserDirectoryCacheTests {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+
+    private final UserDirectoryCache cache = new UserDirectoryCache(userRepository, new SimpleMeterRegistry(),
+            100, Duration.ofMinutes(10), 100, Duration.ofMinutes(10));
+
+    @Test
+    void unknownUsernamesAreCached() {
+        when(userRepository.existsByUsername("nobody")).thenReturn(false);
+
+        assertThat(cache.exists("nobody")).isFalse();
+        assertThat(cache.exists("nobody")).isFalse();
+        verify(userRepository, times(1)).existsByUsername("nobody");
+    }
+
+    @Test
+    void signupClearsTheCachedUnknownEntry() {
+        when(userRepository.existsByUsername("dave")).thenReturn(false);
+        assertThat(cache.exists("dave")).isFalse();
+
+        cache.onAfterSave(saved("dave"));
+
+        assertThat(cache.exists("dave")).isTrue();
+    }
+
+    @Test
+    void lookupRacingASignupDoesNotCacheUnknown() {
+        // The signup is saved (and its known entry evicted) while the lookup that missed it is in flight
+        when(userRepository.existsByUsername(anyString())).thenAnswer(invocation -> {
+            cache.onAfterSave(saved("erin"));
+            cache.invalidate("erin");
+            return false;
+        }).thenReturn(true);
+
+        assertThat(cache.exists("erin")).isFalse();
+        assertThat(cache.exists("erin")).isTrue();
+    }
+
+    private static AfterSaveEvent<User> saved(String username) {
+        User user = new User();
+        user.setUsername(username);
+        return new AfterSaveEvent<>(user, new Document(), "users");
+    }
+}
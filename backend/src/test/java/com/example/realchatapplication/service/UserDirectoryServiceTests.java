@@ -0,0 +1,87 @@
+package com.example.realchatapplication.service;
+
+import com.example.realchatapplication.dto.UserDirectoryPageDTO;
+import com.example.realchatapplication.dto.UserSummaryDTO;
+import com.example.realchatapplication.mapper.UserMapperImpl;
+import com.example.realchatapplication.model.User;
+import com.example.realchatapplication.repository.UserRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.ServerVersion;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class UserDirectoryServiceTests {
+
+    private MongoServer mongoServer;
+
+    private MongoClient mongoClient;
+
+    private UserDirectoryService directory;
+
+    @BeforeEach
+    void setUp() {
+        mongoServer = new MongoServer(new MemoryBackend().version(ServerVersion.MONGO_5_0));
+        mongoClient = MongoClients.create(mongoServer.bindAndGetConnectionString());
+        MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, "directory");
+        UserRepository userRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(UserRepository.class);
+        for (String name : List.of("alice", "bob", "carol", "dave", "erin")) {
+            User user = new User();
+            user.setUsername(name);
+            user.setEmail(name + "@example.com");
+            userRepository.save(user);
+        }
+        directory = new UserDirectoryService(userRepository, mock(OnlineUserService.class), new UserMapperImpl(), 2, 10, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoClient.close();
+        mongoServer.shutdown();
+    }
+
+    @Test
+    void callerIsLeftOutWithoutShorteningPages() {
+        assertThat(walk("bob", null)).containsExactly(List.of("alice", "carol"), List.of("dave", "erin"));
+    }
+
+    @Test
+    void firstPageFromTheSnapshotLeavesOutTheCaller() {
+        directory.refreshSnapshot();
+
+        assertThat(walk("alice", null)).containsExactly(List.of("bob", "carol"), List.of("dave", "erin"));
+        assertThat(walk("bob", null)).containsExactly(List.of("alice", "carol"), List.of("dave", "erin"));
+    }
+
+    @Test
+    void callerSortingLastOrMatchingThePrefixIsLeftOut() {
+        assertThat(walk("erin", null)).containsExactly(List.of("alice", "bob"), List.of("carol", "dave"));
+        assertThat(walk("carol", "c")).isEmpty();
+    }
+
+    // Follows next cursors to the end and returns the usernames of each page
+    private List<List<String>> walk(String caller, String prefix) {
+        List<List<String>> pages = new ArrayList<>();
+        String after = null;
+        do {
+            UserDirectoryPageDTO page = directory.getPage(caller, prefix, after, null);
+            List<String> names = page.getUsers().stream().map(UserSummaryDTO::getUsername).toList();
+            if (!names.isEmpty()) {
+                pages.add(names);
+            }
+            after = page.getNextCursor();
+        } while (after != null);
+        return pages;
+    }
+}
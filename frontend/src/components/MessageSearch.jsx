@@ -0,0 +1,79 @@
+import React, { useState } from 'react';
+import { authService } from '../services/authService';
+
+// Renders a snippet with the server's [start, end) highlight ranges marked
+const Snippet = ({ text, highlights = [] }) => {
+  const parts = [];
+  let position = 0;
+  highlights.forEach(({ start, end }, i) => {
+    if (start > position) parts.push(text.slice(position, start));
+    parts.push(
+      <mark key={i} className="bg-yellow-200 rounded px-0.5">
+        {text.slice(start, end)}
+      </mark>
+    );
+    position = end;
+  });
+  parts.push(text.slice(position));
+  return <span>{parts}</span>;
+};
+
+// Server-side search within one conversation (`scope` is { with } or { roomId })
+const MessageSearch = ({ scope }) => {
+  const [query, setQuery] = useState('');
+  const [hits, setHits] = useState([]);
+  const [cursor, setCursor] = useState(null);
+  const [searched, setSearched] = useState(false);
+
+  const search = async (before) => {
+    if (!query.trim()) return;
+    try {
+      const page = await authService.searchMessages({ q: query.trim(), ...scope, before });
+      setHits((prev) => (before ? [...prev, ...(page.hits || [])] : page.hits || []));
+      setCursor(page.hasMore ? page.nextCursor : null);
+      setSearched(true);
+    } catch (error) {
+      console.error('Error searching messages:', error);
+    }
+  };
+
+  return (
+    <div className="border-b border-gray-200 bg-white px-4 py-2 text-gray-900">
+      <form
+        onSubmit={(e) => {
+          e.preventDefault();
+          search();
+        }}
+      >
+        <input
+          type="text"
+          value={query}
+          onChange={(e) => setQuery(e.target.value)}
+          placeholder='Search messages (use "quotes" for phrases)'
+          className="w-full px-3 py-2 text-sm border rounded-lg focus:outline-none focus:ring-2 focus:ring-indigo-500"
+        />
+      </form>
+      {searched && (
+        <div className="max-h-60 overflow-y-auto mt-2 space-y-2">
+          {hits.length === 0 && <p className="text-sm text-gray-500">No messages found.</p>}
+          {hits.map(({ message, snippet, highlights }) => (
+            <div key={message.id} className="text-sm border-b border-gray-100 pb-1">
+              <div className="flex justify-between text-xs text-gray-500">
+                <span>{message.sender}</span>
+                <span>{new Date(message.timestamp).toLocaleString()}</span>
+              </div>
+              <Snippet text={snippet} highlights={highlights} />
+            </div>
+          ))}
+          {cursor && (
+            <button onClick={() => search(cursor)} className="w-full text-sm text-indigo-600 py-1">
+              More results
+            </button>
+          )}
+        </div>
+      )}
+    </div>
+  );
+};
+
+export default MessageSearch;
@@ -82,7 +82,7 @@ const Navbar = () => {
                                     >
                                         {currentUserState?.imageUrl ? (
                                             <img
-                                                src={currentUserState.imageUrl}
+                                                src={currentUserState.imageVariants?.["48"] || currentUserState.imageUrl}
                                                 alt="Profile"
                                                 className="w-8 h-8 rounded-full object-cover shadow-sm"
                                             />
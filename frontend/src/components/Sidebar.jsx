@@ -5,6 +5,16 @@ import { useNavigate } from 'react-router-dom';
 const Sidebar = ({
   username,
   allUsers = [],
+  userSearch,
+  onUserSearch,
+  hasMoreUsers = false,
+  onLoadMoreUsers,
+  conversations = [],
+  groups = [],
+  openGroup,
+  onCreateGroup,
+  hasMoreConversations = false,
+  onLoadMoreConversations,
   onlineUsers,
   unreadMessages,
   setUnreadMessages,
@@ -65,6 +75,82 @@ const Sidebar = ({
         </div>
       </div>
 
+      {/* Search (prefix match on username, done server-side) */}
+      {onUserSearch && (
+        <div className="px-5 pt-4">
+          <input
+            type="text"
+            value={userSearch}
+            onChange={(e) => onUserSearch(e.target.value)}
+            placeholder="Search users"
+            className="w-full px-3 py-2 text-sm border rounded-lg focus:outline-none focus:ring-2 focus:ring-blue-500"
+          />
+        </div>
+      )}
+
+      {/* Groups */}
+      {openGroup && (
+        <div className="px-5 pt-4 space-y-1 border-b border-gray-200 pb-3">
+          <div className="flex items-center justify-between">
+            <h4 className="text-xs font-semibold uppercase text-gray-500">Groups</h4>
+            {onCreateGroup && (
+              <button onClick={onCreateGroup} className="text-xs text-blue-600 hover:text-blue-700">
+                + New
+              </button>
+            )}
+          </div>
+          {groups.map((g) => (
+            <div
+              key={g.id}
+              onClick={() => openGroup(g)}
+              className="flex items-center justify-between p-2 rounded-xl cursor-pointer hover:bg-gray-100 transition"
+            >
+              <span className="truncate font-medium text-sm text-gray-900">{g.name}</span>
+              <span className="text-xs text-gray-400">{g.members?.length || 0}</span>
+            </div>
+          ))}
+        </div>
+      )}
+
+      {/* Recent conversations */}
+      {conversations.length > 0 && !userSearch && (
+        <div className="px-5 pt-4 space-y-1 max-h-72 overflow-y-auto border-b border-gray-200 pb-3">
+          <h4 className="text-xs font-semibold uppercase text-gray-500">Recent</h4>
+          {conversations.map((c) => (
+            <div
+              key={c.counterpart}
+              onClick={() =>
+                handleUserClick(
+                  allUsers.find((u) => u.username === c.counterpart) || { username: c.counterpart }
+                )
+              }
+              className="flex items-center justify-between p-2 rounded-xl cursor-pointer hover:bg-gray-100 transition"
+            >
+              <div className="flex flex-col min-w-0">
+                <span className="truncate font-medium text-sm text-gray-900">{c.counterpart}</span>
+                <span className="truncate text-xs text-gray-500">
+                  {c.lastSender === username ? 'You: ' : ''}
+                  {c.lastMessageType === 'FILE' ? '📎 File' : c.lastMessagePreview}
+                </span>
+              </div>
+              {unreadMessages.has(c.counterpart) && (
+                <span className="bg-red-500 text-xs font-semibold text-white rounded-full px-2 py-0.5 shadow">
+                  {unreadMessages.get(c.counterpart)}
+                </span>
+              )}
+            </div>
+          ))}
+          {hasMoreConversations && onLoadMoreConversations && (
+            <button
+              onClick={onLoadMoreConversations}
+              className="w-full text-sm text-blue-600 hover:text-blue-700 py-1"
+            >
+              Load more
+            </button>
+          )}
+        </div>
+      )}
+
       {/* User List */}
       <div className="flex-1 overflow-y-auto p-5 space-y-3">
         {allUsers.length === 0 ? (
@@ -92,7 +178,7 @@ const Sidebar = ({
                   >
                     {u.imageUrl ? (
                       <img
-                        src={u.imageUrl }
+                        src={u.imageVariants?.["48"] || u.imageUrl}
                         alt={u.username}
                         className="w-full h-full object-cover"
                       />
@@ -124,6 +210,15 @@ const Sidebar = ({
               </div>
             ))
         )}
+
+        {hasMoreUsers && onLoadMoreUsers && (
+          <button
+            onClick={onLoadMoreUsers}
+            className="w-full text-sm text-blue-600 hover:text-blue-700 py-2"
+          >
+            Load more
+          </button>
+        )}
       </div>
 
     </div>
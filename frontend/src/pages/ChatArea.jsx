@@ -3,7 +3,12 @@ import { useNavigate } from 'react-router-dom';
 import SockJS from 'sockjs-client';
 import { Stomp } from '@stomp/stompjs';
 import { authService } from '../services/authService';
+import { subscribePresence } from '../services/presenceService';
+import { sendReceipt } from '../services/receiptService';
+import { fetchGroups } from '../services/groupService';
 import PrivateChat from './PrivateChat';
+import GroupChat from './GroupChat';
+import CreateGroupModal from '../components/CreateGroupModal';
 import Sidebar from '../components/Sidebar';
 import { Menu } from 'lucide-react';
 import { ChevronRight } from 'lucide-react';
@@ -20,10 +25,17 @@ const ChatArea = () => {
   const { username, color: userColor } = currentUser || {};
 
   const [allUsers, setAllUsers] = useState([]);
+  const [usersCursor, setUsersCursor] = useState(null);
+  const [userSearch, setUserSearch] = useState('');
   const [onlineUsers, setOnlineUsers] = useState(new Set());
   const [sidebarOpen, setSidebarOpen] = useState(false);
   const [activeChatUser, setActiveChatUser] = useState(null);
   const [unreadMessages, setUnreadMessages] = useState(new Map());
+  const [conversations, setConversations] = useState([]);
+  const [groups, setGroups] = useState([]);
+  const [activeGroup, setActiveGroup] = useState(null);
+  const [createGroupOpen, setCreateGroupOpen] = useState(false);
+  const [conversationsCursor, setConversationsCursor] = useState(null);
 
 
   // console.log(activeChatUser.imageUrl)
@@ -45,19 +57,86 @@ const ChatArea = () => {
     privateMessageHandlers.current.delete(otherUser);
   }, []);
 
-  // Fetch all users once
+  // Fetch the first page of users, again whenever the search prefix changes
   useEffect(() => {
+    let cancelled = false;
     const fetchUsers = async () => {
       try {
-        const data = await authService.fetchAllUsers();
-
+        const data = await authService.fetchAllUsers({ prefix: userSearch });
+        if (cancelled) return;
         setAllUsers(data.users || []);
+        setUsersCursor(data.hasMore ? data.nextCursor : null);
       } catch (error) {
         console.error('Error fetching users:', error);
       }
     };
-    fetchUsers();
-  }, []);
+    const timer = setTimeout(fetchUsers, userSearch ? 250 : 0);
+    return () => {
+      cancelled = true;
+      clearTimeout(timer);
+    };
+  }, [userSearch]);
+
+  const loadMoreUsers = async () => {
+    if (!usersCursor) return;
+    try {
+      const data = await authService.fetchAllUsers({ prefix: userSearch, after: usersCursor });
+      setAllUsers((prev) => [...prev, ...(data.users || [])]);
+      setUsersCursor(data.hasMore ? data.nextCursor : null);
+    } catch (error) {
+      console.error('Error fetching users:', error);
+    }
+  };
+
+  // Recent conversations; their unread counts seed the badges
+  useEffect(() => {
+    if (!username) return;
+    authService
+      .fetchConversations()
+      .then((data) => {
+        const page = data.conversations || [];
+        setConversations(page);
+        setConversationsCursor(data.hasMore ? data.nextCursor : null);
+        setUnreadMessages((prev) => {
+          const updated = new Map(prev);
+          page.forEach((c) => {
+            if (c.unreadCount > 0 && !updated.has(c.counterpart)) {
+              updated.set(c.counterpart, c.unreadCount);
+            }
+          });
+          return updated;
+        });
+      })
+      .catch((error) => console.error('Error fetching conversations:', error));
+  }, [username]);
+
+  const loadMoreConversations = async () => {
+    if (!conversationsCursor) return;
+    try {
+      const data = await authService.fetchConversations({ before: conversationsCursor });
+      setConversations((prev) => [...prev, ...(data.conversations || [])]);
+      setConversationsCursor(data.hasMore ? data.nextCursor : null);
+    } catch (error) {
+      console.error('Error fetching conversations:', error);
+    }
+  };
+
+  useEffect(() => {
+    if (!username) return;
+    fetchGroups()
+      .then((rooms) => setGroups(rooms || []))
+      .catch((error) => console.error('Error fetching groups:', error));
+  }, [username]);
+
+  // A room we were added to, changed, or removed from
+  const handleGroupUpdate = useCallback((room) => {
+    const isMember = room.members?.includes(username);
+    setGroups((prev) => {
+      const others = prev.filter((g) => g.id !== room.id);
+      return isMember ? [...others, room].sort((a, b) => a.name.localeCompare(b.name)) : others;
+    });
+    setActiveGroup((prev) => (prev?.id !== room.id ? prev : isMember ? room : null));
+  }, [username]);
 
   // Setup WebSocket + STOMP
   useEffect(() => {
@@ -67,45 +146,95 @@ const ChatArea = () => {
 
     const client = Stomp.over(socket);
     stompClient.current = client;
+    let presence = null;
 
+    // The server names the session after the token's user, not anything we claim here
     client.connect(
-      { username },
+      { Authorization: `Bearer ${localStorage.getItem('token')}` },
       () => {
         console.log('Connected via STOMP');
 
-        client.subscribe(`/user/${username}/queue/private`, (msg) => {
+        const handlePrivateMessage = (privateMessage, acknowledge = true) => {
+          const otherUser =
+            privateMessage.sender === username
+              ? privateMessage.recipient
+              : privateMessage.sender;
+
+          if (acknowledge && privateMessage.sender !== username) {
+            sendReceipt(client, otherUser, privateMessage.id, 'DELIVERED');
+          }
+
+          // Move the conversation to the top of the recent list
+          setConversations((prev) => [
+            {
+              counterpart: otherUser,
+              lastMessageId: privateMessage.id,
+              lastSender: privateMessage.sender,
+              lastMessageType: privateMessage.type,
+              lastMessagePreview: privateMessage.content,
+              lastMessageAt: privateMessage.timestamp,
+            },
+            ...prev.filter((c) => c.counterpart !== otherUser),
+          ]);
+
+          const handler = privateMessageHandlers.current.get(otherUser);
+          if (handler) {
+            handler(privateMessage);
+          } else if (privateMessage.recipient === username) {
+            setUnreadMessages((prev) => {
+              const updated = new Map(prev);
+              const count = updated.get(otherUser) || 0;
+              updated.set(otherUser, count + 1);
+              return updated;
+            });
+          }
+        };
+
+        client.subscribe('/user/queue/private', (msg) => {
           try {
-            const privateMessage = JSON.parse(msg.body);
-            const otherUser =
-              privateMessage.sender === username
-                ? privateMessage.recipient
-                : privateMessage.sender;
-
-            const handler = privateMessageHandlers.current.get(otherUser);
-            if (handler) {
-              handler(privateMessage);
-            } else if (privateMessage.recipient === username) {
-              setUnreadMessages((prev) => {
-                const updated = new Map(prev);
-                const count = updated.get(otherUser) || 0;
-                updated.set(otherUser, count + 1);
-                return updated;
-              });
-            }
+            handlePrivateMessage(JSON.parse(msg.body));
           } catch (err) {
             console.error('Invalid private message format', err);
           }
         });
 
-        client.subscribe('/topic/onlineUsers', (msg) => {
+        // Messages that arrived while we were offline, in batches after chat.addUser
+        client.subscribe('/user/queue/sync', (msg) => {
           try {
-            const onlineList = JSON.parse(msg.body);
-            setOnlineUsers(new Set(onlineList));
+            const batch = JSON.parse(msg.body);
+            const latestBySender = new Map();
+            (batch.messages || []).forEach((privateMessage) => {
+              handlePrivateMessage(privateMessage, false);
+              latestBySender.set(privateMessage.sender, privateMessage.id);
+            });
+            // Receipts are cumulative, one per conversation covers the whole batch
+            latestBySender.forEach((messageId, sender) =>
+              sendReceipt(client, sender, messageId, 'DELIVERED')
+            );
           } catch (err) {
-            console.error('Invalid online users message', err);
+            console.error('Invalid sync batch format', err);
           }
         });
 
+        client.subscribe('/user/queue/receipts', (msg) => {
+          try {
+            const receipt = JSON.parse(msg.body);
+            privateMessageHandlers.current.get(`${receipt.username}-receipts`)?.(receipt);
+          } catch (err) {
+            console.error('Invalid receipt format', err);
+          }
+        });
+
+        client.subscribe('/user/queue/rooms', (msg) => {
+          try {
+            handleGroupUpdate(JSON.parse(msg.body));
+          } catch (err) {
+            console.error('Invalid room update format', err);
+          }
+        });
+
+        presence = subscribePresence(client, setOnlineUsers);
+
         client.send(
           '/app/chat.addUser',
           {},
@@ -116,15 +245,17 @@ const ChatArea = () => {
     );
 
     return () => {
+      presence?.unsubscribe();
       if (client?.connected) client.disconnect();
       stompClient.current = null;
     };
-  }, [username, userColor]);
+  }, [username, userColor, handleGroupUpdate]);
 
 
   // Open private chat
   const handleOpenPrivateChat = (user) => {
     setActiveChatUser(user);
+    setActiveGroup(null);
 
 
     setUnreadMessages((prev) => {
@@ -137,6 +268,12 @@ const ChatArea = () => {
     setSidebarOpen(false);
   };
 
+  const handleOpenGroup = (group) => {
+    setActiveGroup(group);
+    setActiveChatUser(null);
+    setSidebarOpen(false);
+  };
+
   // Logout
   const handleDisconnect = async () => {
     if (stompClient.current?.connected) stompClient.current.disconnect();
@@ -151,6 +288,16 @@ const ChatArea = () => {
         username={username}
         userColor={userColor}
         allUsers={allUsers}
+        userSearch={userSearch}
+        onUserSearch={setUserSearch}
+        hasMoreUsers={!!usersCursor}
+        onLoadMoreUsers={loadMoreUsers}
+        conversations={conversations}
+        groups={groups}
+        openGroup={handleOpenGroup}
+        onCreateGroup={() => setCreateGroupOpen(true)}
+        hasMoreConversations={!!conversationsCursor}
+        onLoadMoreConversations={loadMoreConversations}
         onlineUsers={onlineUsers}
         unreadMessages={unreadMessages}
         setUnreadMessages={setUnreadMessages}
@@ -171,7 +318,18 @@ const ChatArea = () => {
           <ChevronRight size={15} />
         </button>
 
-        {activeChatUser ? (
+        {activeGroup ? (
+          <div className="flex-1 p-2 md:p-4">
+            <GroupChat
+              key={activeGroup.id}
+              group={activeGroup}
+              currentUser={username}
+              stompClient={stompClient}
+              onClose={() => setActiveGroup(null)}
+              onLeft={() => setActiveGroup(null)}
+            />
+          </div>
+        ) : activeChatUser ? (
           <div className="flex-1 p-2 md:p-4">
             <PrivateChat
               key={activeChatUser.username}
@@ -183,8 +341,8 @@ const ChatArea = () => {
               registerPrivateMessageHandler={registerPrivateMessageHandler}
               unregisterPrivateMessageHandler={unregisterPrivateMessageHandler}
               onlineUsers={onlineUsers}
-              currentUserImageUrl={currentUser.imageUrl}
-              recipientImageUrl={activeChatUser.imageUrl}
+              currentUserImageUrl={currentUser.imageVariants?.['48'] || currentUser.imageUrl}
+              recipientImageUrl={activeChatUser.imageVariants?.['48'] || activeChatUser.imageUrl}
             />
 
 
@@ -197,6 +355,14 @@ const ChatArea = () => {
           </div>
         )}
       </div>
+
+      <CreateGroupModal
+        isOpen={createGroupOpen}
+        onClose={() => setCreateGroupOpen(false)}
+        user={currentUser}
+        allUsers={allUsers}
+        onGroupCreated={handleGroupUpdate}
+      />
     </div>
 
   );
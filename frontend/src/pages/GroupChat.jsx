@@ -0,0 +1,101 @@
+import React, { useState, useEffect, useRef } from 'react';
+import { X } from 'lucide-react';
+import MessageList from '../components/MessageList';
+import MessageInput from '../components/MessageInput';
+import MessageSearch from '../components/MessageSearch';
+import { fetchGroupHistory, subscribeGroup, sendGroupMessage, removeMember } from '../services/groupService';
+
+const GroupChat = ({ group, currentUser, stompClient, onClose, onLeft }) => {
+  const [messages, setMessages] = useState([]);
+  const [cursor, setCursor] = useState(null);
+  const [message, setMessage] = useState('');
+  const [searchOpen, setSearchOpen] = useState(false);
+  const messagesEndRef = useRef(null);
+
+  // Latest page, oldest first for display
+  useEffect(() => {
+    fetchGroupHistory(group.id)
+      .then((page) => {
+        setMessages([...(page.messages || [])].reverse());
+        setCursor(page.hasMore ? page.nextCursor : null);
+      })
+      .catch((error) => console.error('Error fetching group history:', error));
+  }, [group.id]);
+
+  // One subscription to the room topic, shared by every member
+  useEffect(() => {
+    const client = stompClient.current;
+    if (!client?.connected) return;
+    const subscription = subscribeGroup(client, group.id, (roomMessage) =>
+      setMessages((prev) => (prev.some((m) => m.id === roomMessage.id) ? prev : [...prev, roomMessage]))
+    );
+    return () => subscription.unsubscribe();
+  }, [group.id, stompClient]);
+
+  useEffect(() => {
+    messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
+  }, [messages.length]);
+
+  const loadOlder = async () => {
+    if (!cursor) return;
+    try {
+      const page = await fetchGroupHistory(group.id, { before: cursor });
+      setMessages((prev) => [...[...(page.messages || [])].reverse(), ...prev]);
+      setCursor(page.hasMore ? page.nextCursor : null);
+    } catch (error) {
+      console.error('Error fetching group history:', error);
+    }
+  };
+
+  const sendMessage = (e) => {
+    e.preventDefault();
+    if (!message.trim()) return;
+    sendGroupMessage(stompClient.current, group.id, message.trim());
+    setMessage('');
+  };
+
+  const leave = async () => {
+    try {
+      await removeMember(group.id, currentUser);
+      onLeft?.(group.id);
+    } catch (error) {
+      console.error('Error leaving group:', error);
+    }
+  };
+
+  return (
+    <div className="flex flex-col h-full bg-gray-900 text-white rounded-xl shadow-lg overflow-hidden">
+      <div className="flex items-center justify-between p-3 border-b border-gray-700">
+        <div className="flex flex-col">
+          <span className="font-semibold">{group.name}</span>
+          <span className="text-xs text-gray-400">{group.members?.length || 0} members</span>
+        </div>
+        <div className="flex items-center space-x-3">
+          <button onClick={() => setSearchOpen((open) => !open)} className="text-sm" title="Search messages">
+            🔍
+          </button>
+          <button onClick={leave} className="text-xs text-red-400 hover:text-red-300">
+            Leave
+          </button>
+          <button onClick={onClose} className="text-gray-400 hover:text-white" title="Close">
+            <X size={20} />
+          </button>
+        </div>
+      </div>
+
+      {searchOpen && <MessageSearch scope={{ roomId: group.id }} />}
+
+      {cursor && (
+        <button onClick={loadOlder} className="text-sm text-indigo-400 hover:text-indigo-300 py-2">
+          Load older messages
+        </button>
+      )}
+
+      <MessageList messages={messages} currentUser={currentUser} messagesEndRef={messagesEndRef} />
+
+      <MessageInput message={message} setMessage={setMessage} sendMessage={sendMessage} toggleEmojiPicker={() => {}} />
+    </div>
+  );
+};
+
+export default GroupChat;
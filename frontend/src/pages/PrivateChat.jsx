@@ -1,6 +1,8 @@
 import React, { useState, useEffect, useRef } from "react";
 import { FiSend, FiPaperclip } from "react-icons/fi";
 import { authService } from "../services/authService";
+import { sendReceipt, isCovered } from "../services/receiptService";
+import MessageSearch from "../components/MessageSearch";
 
 const PrivateChat = ({
   currentUser,
@@ -18,9 +20,13 @@ const PrivateChat = ({
   const [message, setMessage] = useState("");
   const [isLoading, setIsLoading] = useState(true);
   const [isRecipientTyping, setIsRecipientTyping] = useState(false);
+  // How far the recipient has received and read this conversation
+  const [peerReceipt, setPeerReceipt] = useState({ delivered: null, read: null });
+  const [searchOpen, setSearchOpen] = useState(false);
   const messagesEndRef = useRef(null);
   const messageIdsRef = useRef(new Set());
   const typingTimeoutRef = useRef(null);
+  const lastReadAckRef = useRef(null);
 
   console.log(messages)
 
@@ -32,6 +38,15 @@ const PrivateChat = ({
     scrollToBottom();
   }, [messages]);
 
+  // The chat is open, so everything the recipient sent so far has been read
+  useEffect(() => {
+    const lastIncoming = [...messages].reverse().find((msg) => msg.sender === recipientUser);
+    if (lastIncoming && lastIncoming.id !== lastReadAckRef.current) {
+      lastReadAckRef.current = lastIncoming.id;
+      sendReceipt(stompClient.current, recipientUser, lastIncoming.id, "READ");
+    }
+  }, [messages, recipientUser, stompClient]);
+
   const createMessageId = (msg) =>
     `${msg.sender}-${msg.recipient}-${msg.content || msg.fileUrl}`.replace(
       /\s+/g,
@@ -58,6 +73,15 @@ const PrivateChat = ({
     }
   };
 
+  const handleReceipt = (receipt) => {
+    const watermark = { timestamp: receipt.timestamp, messageId: receipt.messageId };
+    // A read receipt also moves the delivered watermark
+    setPeerReceipt((prev) => ({
+      delivered: watermark,
+      read: receipt.type === "READ" ? watermark : prev.read,
+    }));
+  };
+
   useEffect(() => {
     let isMounted = true;
 
@@ -80,6 +104,15 @@ const PrivateChat = ({
           messageIdsRef.current.add(msg.id)
         );
         setMessages(processedHistory);
+
+        // Ticks are optional, a failed lookup must not hide the history
+        const { receipts = [] } = await authService
+          .fetchReceipts(recipientUser)
+          .catch(() => ({}));
+        const peer = receipts.find((r) => r.username === recipientUser);
+        if (isMounted && peer) {
+          setPeerReceipt({ delivered: peer.delivered, read: peer.read });
+        }
       } catch (error) {
         console.error("Error loading message history:", error);
       } finally {
@@ -87,6 +120,7 @@ const PrivateChat = ({
           setIsLoading(false);
           registerPrivateMessageHandler(recipientUser, handleIncomingPrivateMessage);
           registerPrivateMessageHandler(`${recipientUser}-typing`, handleTypingMessage);
+          registerPrivateMessageHandler(`${recipientUser}-receipts`, handleReceipt);
         }
       }
     };
@@ -97,6 +131,7 @@ const PrivateChat = ({
       isMounted = false;
       unregisterPrivateMessageHandler(recipientUser);
       unregisterPrivateMessageHandler(`${recipientUser}-typing`);
+      unregisterPrivateMessageHandler(`${recipientUser}-receipts`);
     };
   }, [
     currentUser,
@@ -175,27 +210,8 @@ const PrivateChat = ({
     if (!file || !stompClient.current?.connected) return;
 
     try {
-      const fileUrl = await authService.uploadFile(
-        file,
-        currentUser,
-        recipientUser,
-        userColor
-      );
-      const privateMessage = {
-        sender: currentUser,
-        recipient: recipientUser,
-        content: file.name,
-        fileUrl,
-        type: "FILE",
-        color: userColor,
-        timestamp: new Date(),
-      };
-
-      stompClient.current.send(
-        "/app/chat.sendPrivateMessage",
-        {},
-        JSON.stringify(privateMessage)
-      );
+      // The server stores the FILE message and pushes it to both of us on /queue/private
+      await authService.uploadFile(file, recipientUser, userColor);
     } catch (err) {
       console.error("File upload failed:", err);
     } finally {
@@ -232,6 +248,14 @@ const PrivateChat = ({
 
   const isRecipientOnline = onlineUsers.has(recipientUser);
 
+  // Receipt status is shown under our latest message only
+  const lastOwnMessage = [...messages].reverse().find((msg) => msg.sender === currentUser);
+  const lastOwnStatus = isCovered(peerReceipt.read, lastOwnMessage)
+    ? "Seen"
+    : isCovered(peerReceipt.delivered, lastOwnMessage)
+      ? "Delivered"
+      : null;
+
   if (isLoading) {
     return (
       <div className="flex flex-col w-full h-full bg-white rounded-lg shadow-lg overflow-hidden">
@@ -274,15 +298,26 @@ const PrivateChat = ({
             </span>
           </div>
         </div>
-        <button
-          onClick={onClose}
-          className="text-xl hover:text-red-400 transition"
-          title="Close chat"
-        >
-          ✕
-        </button>
+        <div className="flex items-center space-x-3">
+          <button
+            onClick={() => setSearchOpen((open) => !open)}
+            className="text-lg hover:text-indigo-200 transition"
+            title="Search messages"
+          >
+            🔍
+          </button>
+          <button
+            onClick={onClose}
+            className="text-xl hover:text-red-400 transition"
+            title="Close chat"
+          >
+            ✕
+          </button>
+        </div>
       </div>
 
+      {searchOpen && <MessageSearch scope={{ with: recipientUser }} />}
+
       {/* Messages */}
       <div className="flex-1 overflow-y-auto px-4 py-3 space-y-3 bg-gray-50">
         {messages.length === 0 ? (
@@ -393,6 +428,12 @@ const PrivateChat = ({
                 ) : (
                   <div className="break-words">{msg.content}</div>
                 )}
+
+                {msg === lastOwnMessage && lastOwnStatus && (
+                  <div className="text-[10px] text-right text-indigo-100 mt-1">
+                    {lastOwnStatus}
+                  </div>
+                )}
               </div>
 
               {/* Avatar for sender */}
@@ -1,6 +1,8 @@
 import React, { useState, useEffect, useRef } from "react";
 import { useNavigate } from "react-router-dom";
 import { authService } from "../services/authService.js";
+import { subscribePresence } from "../services/presenceService.js";
+import { sendReceipt } from "../services/receiptService.js";
 import toast, { Toaster } from "react-hot-toast";
 import Sidebar from "../components/Sidebar.jsx";
 import PrivateChat from "./PrivateChat.jsx";
@@ -22,7 +24,7 @@ const Settings = () => {
 
   const [profileImage, setProfileImage] = useState(null);
   const [previewImage, setPreviewImage] = useState(
-    currentUser?.imageUrl || null
+    currentUser?.imageVariants?.["128"] || currentUser?.imageUrl || null
   );
   const [usernameInput, setUsernameInput] = useState(username || "");
   const [email] = useState(currentUser?.email || "");
@@ -55,30 +57,41 @@ const Settings = () => {
     const socket = new SockJS(WS_BASE_URL);
     const client = Stomp.over(socket);
     stompClient.current = client;
+    let presence = null;
 
-    client.connect({ username }, () => {
+    client.connect({ Authorization: `Bearer ${localStorage.getItem("token")}` }, () => {
       console.log("Connected via STOMP");
 
-      client.subscribe(`/user/${username}/queue/private`, (msg) => {
-        const privateMessage = JSON.parse(msg.body);
+      const countUnread = (privateMessage) => {
         const otherUser =
           privateMessage.sender === username
             ? privateMessage.recipient
             : privateMessage.sender;
 
+        if (privateMessage.sender !== username) {
+          sendReceipt(client, otherUser, privateMessage.id, "DELIVERED");
+        }
+
         setUnreadMessages((prev) => {
           const updated = new Map(prev);
           const count = updated.get(otherUser) || 0;
           updated.set(otherUser, count + 1);
           return updated;
         });
+      };
+
+      client.subscribe("/user/queue/private", (msg) => {
+        countUnread(JSON.parse(msg.body));
       });
 
-      client.subscribe("/topic/onlineUsers", (msg) => {
-        const onlineList = JSON.parse(msg.body);
-        setOnlineUsers(new Set(onlineList));
+      // Messages that arrived while we were offline, in batches after chat.addUser
+      client.subscribe("/user/queue/sync", (msg) => {
+        const batch = JSON.parse(msg.body);
+        (batch.messages || []).forEach(countUnread);
       });
 
+      presence = subscribePresence(client, setOnlineUsers);
+
       client.send(
         "/app/chat.addUser",
         {},
@@ -86,7 +99,10 @@ const Settings = () => {
       );
     });
 
-    return () => client?.disconnect();
+    return () => {
+      presence?.unsubscribe();
+      client?.disconnect();
+    };
   }, [username, userColor]);
 
   // Logout and disconnect
@@ -120,7 +136,7 @@ const Settings = () => {
       if (result.success) {
         toast.success("Profile updated successfully!");
         localStorage.setItem("currentUser", JSON.stringify(result.user));
-        setPreviewImage(result.user.imageUrl || previewImage);
+        setPreviewImage(result.user.imageVariants?.["128"] || result.user.imageUrl || previewImage);
         window.dispatchEvent(new Event("userUpdated"));
       } else {
         toast.error(result.message || "Failed to update profile.");
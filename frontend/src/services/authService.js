@@ -147,10 +147,27 @@ export const authService = {
     }
   },
 
-  fetchAllUsers: async () => {
+  fetchPresenceSnapshot: async () => {
+    try {
+      const token = localStorage.getItem('token');
+      const response = await api.get('/api/presence', {
+        headers: { Authorization: `Bearer ${token}` },
+        withCredentials: true
+      });
+      return response.data;
+    } catch (error) {
+      console.error('Fetch presence snapshot error:', error);
+      throw error;
+    }
+  },
+
+  // One page of the directory: { users, hasMore, nextCursor }. Pass nextCursor back as `after`.
+  // The server sends ETags, so the browser revalidates repeat requests and unchanged pages cost a 304.
+  fetchAllUsers: async ({ prefix, after, limit } = {}) => {
     try {
       const token = localStorage.getItem('token');
       const response = await api.get('/auth/all-users', {
+        params: { prefix: prefix || undefined, after: after || undefined, limit },
         headers: { Authorization: `Bearer ${token}` },
         withCredentials: true
       });
@@ -187,25 +204,87 @@ export const authService = {
       throw error;
     }
   },
-  uploadFile: async (file, sender, recipient, color) => {
+  // Current user's conversations, most recent first; pass nextCursor back as `before`
+  fetchConversations: async ({ before, limit } = {}) => {
     try {
       const token = localStorage.getItem('token');
+      const params = new URLSearchParams();
+      if (before) params.set('before', before);
+      if (limit) params.set('limit', limit);
+      const query = params.toString();
+      const response = await api.get(`/api/conversations${query ? `?${query}` : ''}`, {
+        headers: { Authorization: `Bearer ${token}` },
+        withCredentials: true
+      });
+      return response.data;
+    } catch (error) {
+      console.error('Error fetching conversations', error);
+      throw error;
+    }
+  },
 
-      const formData = new FormData();
-      formData.append('file', file);
-      formData.append('sender', sender);
-      formData.append('recipient', recipient);
-      if (color) formData.append('color', color);
+  // Text search over the user's conversations; filters: with, roomId, sender, from, to
+  searchMessages: async ({ q, with: peer, roomId, sender, from, to, before, limit }) => {
+    try {
+      const token = localStorage.getItem('token');
+      const params = new URLSearchParams({ q });
+      Object.entries({ with: peer, roomId, sender, from, to, before, limit }).forEach(([key, value]) => {
+        if (value) params.set(key, value);
+      });
+      const response = await api.get(`/api/messages/search?${params}`, {
+        headers: { Authorization: `Bearer ${token}` },
+        withCredentials: true
+      });
+      return response.data;
+    } catch (error) {
+      console.error('Error searching messages', error);
+      throw error;
+    }
+  },
 
-      const response = await api.post('/api/files/upload', formData, {
-        headers: {
-          Authorization: `Bearer ${token}`,
-          'Content-Type': 'multipart/form-data'
-        },
+  // Both users' delivered/read watermarks and the current user's unread count from peer
+  fetchReceipts: async (peer) => {
+    try {
+      const token = localStorage.getItem('token');
+      const response = await api.get(`/api/messages/private/receipts?peer=${encodeURIComponent(peer)}`, {
+        headers: { Authorization: `Bearer ${token}` },
         withCredentials: true
       });
+      return response.data;
+    } catch (error) {
+      console.error('Error fetching receipts', error);
+      throw error;
+    }
+  },
+  // Direct upload: get a presigned URL, PUT the file straight to storage, then report completion.
+  // The server creates the FILE message and delivers it to both users over STOMP.
+  uploadFile: async (file, recipient, color) => {
+    try {
+      const token = localStorage.getItem('token');
+      const authHeaders = { Authorization: `Bearer ${token}` };
+
+      const { data: presigned } = await api.post(
+        '/api/files/presign',
+        {
+          fileName: file.name,
+          contentType: file.type || 'application/octet-stream',
+          size: file.size,
+          recipient,
+          color
+        },
+        { headers: authHeaders, withCredentials: true }
+      );
+
+      // Plain axios: storage must not receive our JWT or cookies
+      await axios.put(presigned.uploadUrl, file, { headers: presigned.headers });
+
+      const response = await api.post(
+        '/api/files/complete',
+        { key: presigned.key },
+        { headers: authHeaders, withCredentials: true }
+      );
 
-      // returns S3 URL
+      // returns the saved FILE message
       return response.data;
     } catch (error) {
       console.error('File upload failed', error);
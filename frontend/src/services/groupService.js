@@ -0,0 +1,59 @@
+import axios from 'axios';
+import { API_BASE_URL } from '../constants/Constants';
+
+// Group rooms: managed over REST, messages over STOMP. A room message is published once to
+// /topic/room.{id}, which only members may subscribe to.
+const api = axios.create({
+  baseURL: API_BASE_URL,
+  headers: { 'Content-Type': 'application/json' },
+  withCredentials: true
+});
+
+const auth = (token) => ({
+  headers: { Authorization: `Bearer ${token || localStorage.getItem('token')}` }
+});
+
+export const createGroup = async (name, members, token) => {
+  const response = await api.post('/api/rooms', { name, members }, auth(token));
+  return response.data;
+};
+
+export const fetchGroups = async (token) => {
+  const response = await api.get('/api/rooms', auth(token));
+  return response.data;
+};
+
+// Newest first; pass nextCursor back as `before`
+export const fetchGroupHistory = async (roomId, { before, limit } = {}, token) => {
+  const params = new URLSearchParams();
+  if (before) params.set('before', before);
+  if (limit) params.set('limit', limit);
+  const query = params.toString();
+  const response = await api.get(`/api/rooms/${roomId}/history${query ? `?${query}` : ''}`, auth(token));
+  return response.data;
+};
+
+export const addMembers = async (roomId, members, token) => {
+  const response = await api.post(`/api/rooms/${roomId}/members`, members, auth(token));
+  return response.data;
+};
+
+// Leaving is removing yourself
+export const removeMember = async (roomId, member, token) => {
+  const response = await api.delete(`/api/rooms/${roomId}/members/${encodeURIComponent(member)}`, auth(token));
+  return response.data;
+};
+
+export const subscribeGroup = (client, roomId, onMessage) =>
+  client.subscribe(`/topic/room.${roomId}`, (msg) => {
+    try {
+      onMessage(JSON.parse(msg.body));
+    } catch (err) {
+      console.error('Invalid room message format', err);
+    }
+  });
+
+export const sendGroupMessage = (client, roomId, content) => {
+  if (!client?.connected) return;
+  client.send('/app/room.send', {}, JSON.stringify({ chatRoomId: roomId, content }));
+};
@@ -0,0 +1,85 @@
+import { authService } from './authService';
+
+const RESYNC_INTERVAL_MS = 60000;
+const GAP_RESYNC_DELAY_MS = 5000;
+
+// Keeps a Set of online usernames in sync with /topic/presence deltas.
+// Every server node numbers its own deltas, so state is kept per node and a user is online
+// if any node lists them. Deltas that arrive before the snapshot are buffered; a version gap
+// triggers a resync, and a periodic resync drops nodes that have gone away.
+export const subscribePresence = (client, setOnlineUsers) => {
+  let nodes = new Map(); // node -> { version, users: Set }
+  let buffered = null;   // non-null while a snapshot is being fetched
+  let gapTimer = null;
+
+  const publish = () => {
+    const online = new Set();
+    nodes.forEach(({ users }) => users.forEach((u) => online.add(u)));
+    setOnlineUsers(online);
+  };
+
+  const apply = (delta, lenient) => {
+    let state = nodes.get(delta.node);
+    if (state && delta.version <= state.version) return;
+
+    const expected = state ? state.version + 1 : 1;
+    if (delta.version !== expected) {
+      if (!lenient) {
+        resync();
+        return;
+      }
+      // Still missing something right after a resync: apply it and try again shortly
+      if (!gapTimer) gapTimer = setTimeout(resync, GAP_RESYNC_DELAY_MS);
+    }
+
+    if (!state) {
+      state = { version: 0, users: new Set() };
+      nodes.set(delta.node, state);
+    }
+    (delta.joined || []).forEach((u) => state.users.add(u));
+    (delta.left || []).forEach((u) => state.users.delete(u));
+    state.version = delta.version;
+    publish();
+  };
+
+  const resync = async () => {
+    if (buffered) return;
+    buffered = [];
+    clearTimeout(gapTimer);
+    gapTimer = null;
+    try {
+      const snapshot = await authService.fetchPresenceSnapshot();
+      nodes = new Map(
+        (snapshot.nodes || []).map((n) => [n.node, { version: n.version, users: new Set(n.onlineUsers || []) }])
+      );
+      publish();
+    } catch (err) {
+      console.error('Presence resync failed', err);
+    } finally {
+      const pending = buffered;
+      buffered = null;
+      pending.forEach((delta) => apply(delta, true));
+    }
+  };
+
+  const subscription = client.subscribe('/topic/presence', (msg) => {
+    try {
+      const delta = JSON.parse(msg.body);
+      if (buffered) buffered.push(delta);
+      else apply(delta, false);
+    } catch (err) {
+      console.error('Invalid presence message', err);
+    }
+  });
+
+  const resyncTimer = setInterval(resync, RESYNC_INTERVAL_MS);
+  resync();
+
+  return {
+    unsubscribe: () => {
+      clearInterval(resyncTimer);
+      clearTimeout(gapTimer);
+      subscription.unsubscribe();
+    },
+  };
+};
@@ -0,0 +1,26 @@
+// Delivered/read receipts are cumulative: the server keeps one watermark per user and
+// conversation, so acknowledging the newest message covers everything before it.
+const OBJECT_ID = /^[0-9a-f]{24}$/;
+
+export const sendReceipt = (client, peer, messageId, type) => {
+  // Messages without a server id (optimistic or legacy) cannot be acknowledged
+  if (!client?.connected || !peer || !OBJECT_ID.test(messageId || '')) return;
+  client.send('/app/chat.ack', {}, JSON.stringify({ peer, messageId, type }));
+};
+
+const toTime = (timestamp) => {
+  if (Array.isArray(timestamp)) {
+    const [year, month, day, hour = 0, minute = 0, second = 0] = timestamp;
+    return new Date(year, month - 1, day, hour, minute, second).getTime();
+  }
+  return new Date(timestamp).getTime();
+};
+
+// Whether a watermark ({ timestamp, messageId }) has reached a message, in history order
+export const isCovered = (watermark, msg) => {
+  if (!watermark || !msg?.timestamp) return false;
+  const messageTime = toTime(msg.timestamp);
+  const watermarkTime = toTime(watermark.timestamp);
+  if (messageTime !== watermarkTime) return messageTime < watermarkTime;
+  return (msg.id || '') <= watermark.messageId;
+};